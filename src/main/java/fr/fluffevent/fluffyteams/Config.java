@@ -1,8 +1,13 @@
 package fr.fluffevent.fluffyteams;
 
+import java.io.File;
+
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import fr.fluffevent.fluffyteams.models.SpawnSelection;
+
 /**
  * Configuration manager for the FluffyTeams plugin.
  * Handles loading and storing configuration values from config.yml.
@@ -27,6 +32,13 @@ public class Config {
    */
   public static String databasePassword = "";
 
+  /**
+   * Optional read replica connection URI, using the same credentials.
+   * When set, reads that don't need this server's latest writes go to the
+   * replica. Empty to read from the primary only.
+   */
+  public static String databaseReplicaUri = "";
+
   /**
    * Name of the current server instance.
    * Used to manage team spawns across multiple servers.
@@ -47,6 +59,85 @@ public class Config {
    */
   public static boolean overrideAnchorRespawnLocation = false;
 
+  /**
+   * Whether to automatically place players who join without a team in the
+   * team with the fewest members.
+   */
+  public static boolean autoAssign = false;
+
+  /**
+   * How a spawn point is picked when a team has several spawns on this server.
+   */
+  public static SpawnSelection spawnSelection = SpawnSelection.ROUND_ROBIN;
+
+  /**
+   * Whether players respawn at the spawn of their team closest to where they
+   * died, instead of using the spawn selection policy.
+   */
+  public static boolean respawnAtNearestSpawn = false;
+
+  /**
+   * Whether changes are recorded in the shared change feed and the changes
+   * made by other servers are applied to this server's cache.
+   * Must be enabled on every server sharing the database.
+   */
+  public static boolean changeFeed = false;
+
+  /**
+   * Interval between two polls of the change feed, in ticks.
+   */
+  public static long changeFeedInterval = 20;
+
+  /**
+   * Interval between two LuckPerms reconciliations, in seconds.
+   * 0 disables the reconciliation.
+   */
+  public static long luckPermsReconcileInterval = 0;
+
+  /**
+   * Maximum number of writes kept while the database is unavailable, replayed
+   * once it's back. 0 makes writes fail during an outage instead.
+   */
+  public static int writeQueueSize = 10000;
+
+  /**
+   * Whether player UUIDs are derived from their names like offline-mode
+   * servers do, instead of being looked up at Mojang.
+   */
+  public static boolean offlineUuids = false;
+
+  /**
+   * Optional Redis connection URI, e.g. redis://localhost:6379.
+   * Shared by the servers of a network for the features that span servers,
+   * like the online status of team members. Empty to disable.
+   */
+  public static String redisUri = "";
+
+  /**
+   * Where teams are stored: sql (database-uri, the default) or redis
+   * (redis-uri), for networks that don't run a SQL database.
+   */
+  public static String storage = "sql";
+
+  /**
+   * Seconds between two snapshots of the cache, also written on shutdown.
+   * A restarting server loads the snapshot and only fetches the changes made
+   * since, which needs the change feed. 0 to disable.
+   */
+  public static long snapshotInterval = 300;
+
+  /**
+   * Milliseconds of the main thread the plugin may use per tick before the
+   * watchdog reports it. 0 disables the watchdog.
+   */
+  public static long mainThreadBudget = 5;
+
+  /**
+   * Database queries and external calls slower than this many milliseconds
+   * are written to slow-operations.log. 0 disables the log.
+   */
+  public static long slowOperationThreshold = 250;
+
   /**
    * Loads configuration values from config.yml.
    * Creates the default configuration file if it doesn't exist.
@@ -61,8 +152,51 @@ public class Config {
     databaseUri = config.getString("database-uri");
     databaseUsername = config.getString("database-username");
     databasePassword = config.getString("database-password");
+    databaseReplicaUri = config.getString("database-replica-uri", "");
     serverName = config.getString("server-name");
     overrideBedRespawnLocation = config.getBoolean("override-bed-respawn-location", false);
     overrideAnchorRespawnLocation = config.getBoolean("override-anchor-respawn-location", false);
+    autoAssign = config.getBoolean("auto-assign", false);
+    respawnAtNearestSpawn = config.getBoolean("respawn-at-nearest-spawn", false);
+    changeFeed = config.getBoolean("change-feed", false);
+    changeFeedInterval = config.getLong("change-feed-interval", 20);
+    luckPermsReconcileInterval = config.getLong("luckperms-reconcile-interval", 0);
+    writeQueueSize = config.getInt("write-queue-size", 10000);
+    redisUri = config.getString("redis-uri", "");
+    storage = config.getString("storage", "sql");
+    snapshotInterval = config.getLong("snapshot-interval", 300);
+    mainThreadBudget = config.getLong("main-thread-budget-ms", 5);
+    slowOperationThreshold = config.getLong("slow-operation-ms", 250);
+
+    // Servers behind a proxy are in offline mode but get online UUIDs from it
+    String uuids = config.getString("offline-uuids", "auto");
+    offlineUuids = uuids.equalsIgnoreCase("auto") ? !plugin.getServer().getOnlineMode() && !isBehindProxy(plugin)
+        : Boolean.parseBoolean(uuids);
+
+    String selection = config.getString("spawn-selection", "round-robin");
+    try {
+      spawnSelection = SpawnSelection.fromConfig(selection);
+    } catch (IllegalArgumentException e) {
+      plugin.getLogger().warning("Unknown spawn-selection '" + selection + "', using round-robin");
+      spawnSelection = SpawnSelection.ROUND_ROBIN;
+    }
+  }
+
+  // BungeeCord forwarding is set in spigot.yml, Velocity forwarding in
+  // Paper's config (paper-global.yml, or paper.yml before 1.19)
+  private static boolean isBehindProxy(JavaPlugin plugin) {
+    YamlConfiguration spigot = plugin.getServer().spigot().getConfig();
+    if (spigot != null && spigot.getBoolean("settings.bungeecord", false)) {
+      return true;
+    }
+
+    File paperGlobal = new File("config", "paper-global.yml");
+    if (paperGlobal.isFile()
+        && YamlConfiguration.loadConfiguration(paperGlobal).getBoolean("proxies.velocity.enabled", false)) {
+      return true;
+    }
+    File paperLegacy = new File("paper.yml");
+    return paperLegacy.isFile()
+        && YamlConfiguration.loadConfiguration(paperLegacy).getBoolean("settings.velocity-support.enabled", false);
   }
 }
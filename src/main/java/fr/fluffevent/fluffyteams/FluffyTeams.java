@@ -6,10 +6,20 @@ import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.plugin.java.JavaPluginLoader;
 
+import fr.fluffevent.fluffyteams.controllers.PlayerResolver;
+import fr.fluffevent.fluffyteams.controllers.TeamController;
 import fr.fluffevent.fluffyteams.listeners.PlayerLoginListener;
 import fr.fluffevent.fluffyteams.listeners.PlayerRespawnListener;
+import fr.fluffevent.fluffyteams.listeners.PresenceListener;
+import fr.fluffevent.fluffyteams.listeners.WorldListener;
 import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.database.PresenceIndex;
+import fr.fluffevent.fluffyteams.database.RedisManager;
+import fr.fluffevent.fluffyteams.runnables.LuckPermsReconciliation;
+import fr.fluffevent.fluffyteams.runnables.PresenceHeartbeat;
 import fr.fluffevent.fluffyteams.runnables.commands.FluffyTeamsCommand;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import fr.fluffevent.fluffyteams.utils.SlowOperationLog;
 
 /**
  * FluffyTeams - A Minecraft team management plugin.
@@ -63,34 +73,86 @@ public class FluffyTeams extends JavaPlugin {
 
   /**
    * Called when the plugin is enabled.
-   * Sets up the configuration, database connection, event listeners, and
-   * commands.
+   * Sets up the configuration, event listeners, and commands. The database
+   * connection and cache warm-up run asynchronously so they don't delay server
+   * start.
    */
   @Override
   public void onEnable() {
     instance = this;
+    long start = System.nanoTime();
 
     // Setup
     Config.readConfig(this);
+    SlowOperationLog.open(Config.slowOperationThreshold, getDataFolder().toPath(), getLogger());
     DatabaseManager.connect();
 
+    // Writes queued while the database was down are replayed once it's back
+    TeamController replayController = new TeamController();
+    DatabaseManager.getHealth().onRecovery(replayController::replayPendingWrites);
+
+    // Names known to the server, so most names resolve without Mojang
+    getServer().getScheduler().runTaskAsynchronously(this, () -> getLogger().info(
+        "Loaded " + PlayerResolver.loadUserCache() + " player names from usercache.json"));
+
+    // Network-wide online members, kept in Redis when configured
+    if (RedisManager.isConfigured()) {
+      getServer().getScheduler().runTaskAsynchronously(this, () -> {
+        if (RedisManager.connect()) {
+          getLogger().info("Connected to Redis, tracking online team members across servers");
+        }
+      });
+      long interval = PresenceIndex.HEARTBEAT_MS / 50;
+      getServer().getScheduler().runTaskTimer(this, new PresenceHeartbeat(), interval, interval);
+    }
+
+    // Time spent on the main thread, checked every tick
+    MainThreadWatchdog.enable(Config.mainThreadBudget, getLogger());
+    if (Config.mainThreadBudget > 0) {
+      getServer().getScheduler().runTaskTimer(this, MainThreadWatchdog::tick, 1, 1);
+    }
+
     // Game listeners
     PluginManager pluginManager = this.getServer().getPluginManager();
-    pluginManager.registerEvents(new PlayerLoginListener(), instance);
+    PlayerLoginListener playerLoginListener = new PlayerLoginListener();
+    pluginManager.registerEvents(playerLoginListener, instance);
     pluginManager.registerEvents(new PlayerRespawnListener(), instance);
+    pluginManager.registerEvents(new WorldListener(), instance);
+    pluginManager.registerEvents(new PresenceListener(), instance);
+
+    // Players who joined while the database was warming up are checked again
+    // once it is ready
+    DatabaseManager.whenReady().thenRun(() -> getServer().getScheduler().runTask(this,
+        playerLoginListener::checkOnlinePlayers));
+
+    // Repairs LuckPerms groups in the background once teams are loaded
+    if (Config.luckPermsReconcileInterval > 0) {
+      long interval = Config.luckPermsReconcileInterval * 20;
+      DatabaseManager.whenReady().thenRun(() -> getServer().getScheduler().runTaskTimerAsynchronously(this,
+          new LuckPermsReconciliation(), interval, interval));
+    }
 
     // Commands
     FluffyTeamsCommand fluffyTeamsCommand = new FluffyTeamsCommand();
     this.getCommand("fluffyteams").setExecutor(fluffyTeamsCommand);
     this.getCommand("fluffyteams").setTabCompleter(fluffyTeamsCommand);
+
+    getLogger().info("Enabled in " + (System.nanoTime() - start) / 1_000_000 + " ms, loading teams in background");
   }
 
   /**
    * Called when the plugin is disabled.
-   * Cancels all tasks and performs cleanup.
+   * Cancels all tasks, flushes pending database writes and performs cleanup.
    */
   @Override
   public void onDisable() {
     getServer().getScheduler().cancelTasks(this);
+    // Shutting down waits for the database and Redis on purpose
+    MainThreadWatchdog.disable();
+    PlayerResolver.shutdown();
+    PresenceHeartbeat.clear();
+    RedisManager.disconnect();
+    DatabaseManager.disconnect();
+    SlowOperationLog.close();
   }
 }
@@ -0,0 +1,111 @@
+package fr.fluffevent.fluffyteams.caching;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * In-memory index of the player names and UUIDs known to this server.
+ * Filled from the server's usercache.json and kept up to date with the
+ * players who log in, so that most names resolve without any network call.
+ */
+public class PlayerNameIndex {
+
+    private final Map<String, UUID> uuidsByName = new ConcurrentHashMap<>();
+    private final Map<UUID, String> namesByUuid = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the entries of a usercache.json file. Entries already in the
+     * index are kept, they come from players who logged in since.
+     *
+     * @param file The usercache.json file of the server
+     * @return The number of entries read
+     * @throws IOException if the file can't be read
+     */
+    public int load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        JsonArray entries;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            entries = JsonParser.parseReader(reader).getAsJsonArray();
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid user cache " + file, e);
+        }
+
+        int count = 0;
+        // Most recently used first, a name that changed hands keeps its
+        // latest owner
+        for (JsonElement element : entries) {
+            JsonObject entry = element.getAsJsonObject();
+            if (!entry.has("name") || !entry.has("uuid")) {
+                continue;
+            }
+            try {
+                UUID uuid = UUID.fromString(entry.get("uuid").getAsString());
+                String name = entry.get("name").getAsString();
+                uuidsByName.putIfAbsent(name.toLowerCase(Locale.ROOT), uuid);
+                namesByUuid.putIfAbsent(uuid, name);
+                count++;
+            } catch (IllegalArgumentException e) {
+                // Skip malformed UUIDs
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records the current name of a player, e.g. when they log in.
+     *
+     * @param name The player name
+     * @param uuid The player UUID
+     */
+    public void put(String name, UUID uuid) {
+        UUID previous = uuidsByName.put(name.toLowerCase(Locale.ROOT), uuid);
+        String previousName = namesByUuid.put(uuid, name);
+
+        // The player was renamed, or took a name someone else had before
+        if (previousName != null && !previousName.equalsIgnoreCase(name)) {
+            uuidsByName.remove(previousName.toLowerCase(Locale.ROOT), uuid);
+        }
+        if (previous != null && !previous.equals(uuid)) {
+            namesByUuid.remove(previous, name);
+        }
+    }
+
+    /**
+     * Gets the UUID of a player name, ignoring case.
+     *
+     * @param name The player name
+     * @return The UUID, or null if the name isn't known
+     */
+    public UUID getUuid(String name) {
+        return uuidsByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets the last known name of a player.
+     *
+     * @param uuid The player UUID
+     * @return The name, or null if the UUID isn't known
+     */
+    public String getName(UUID uuid) {
+        return namesByUuid.get(uuid);
+    }
+
+    public int size() {
+        return uuidsByName.size();
+    }
+}
@@ -0,0 +1,285 @@
+package fr.fluffevent.fluffyteams.caching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+
+/**
+ * Spatial index of the spawns of this server, used to find the spawn of a
+ * team closest to a location.
+ * Each team gets one uniform grid per world, sized to hold about one spawn
+ * per cell, and a lookup only scans the cells around the location, widening
+ * ring by ring until no closer spawn can exist. Spawns are added, moved and
+ * removed incrementally.
+ */
+public class SpawnIndex {
+
+    // Bounds of the width of a grid cell in blocks
+    private static final int MIN_CELL_SIZE = 16;
+    private static final int MAX_CELL_SIZE = 4096;
+
+    private final Map<GridKey, Grid> grids = new HashMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    /**
+     * Adds a spawn to the index, or moves it if it was already indexed.
+     *
+     * @param spawn The spawn to index
+     */
+    public synchronized void put(Spawn spawn) {
+        remove(spawn);
+
+        Entry entry = new Entry(spawn);
+        entries.put(spawn.id, entry);
+        grids.computeIfAbsent(entry.grid, key -> new Grid()).add(entry);
+    }
+
+    /**
+     * Removes a spawn from the index.
+     *
+     * @param spawn The spawn to remove
+     */
+    public synchronized void remove(Spawn spawn) {
+        Entry entry = entries.remove(spawn.id);
+        if (entry == null) {
+            return;
+        }
+
+        Grid grid = grids.get(entry.grid);
+        if (grid != null && grid.remove(entry) && grid.size() == 0) {
+            grids.remove(entry.grid);
+        }
+    }
+
+    /**
+     * Removes every spawn of a team from the index.
+     *
+     * @param teamId The ID of the team
+     */
+    public synchronized void removeTeam(long teamId) {
+        grids.keySet().removeIf(key -> key.teamId == teamId);
+        entries.values().removeIf(entry -> entry.grid.teamId == teamId);
+    }
+
+    /**
+     * Empties the index.
+     */
+    public synchronized void clear() {
+        grids.clear();
+        entries.clear();
+    }
+
+    /**
+     * Finds the spawn of a team closest to a position.
+     *
+     * @param teamId The ID of the team
+     * @param world  The name of the world of the position
+     * @param x      The X coordinate of the position
+     * @param y      The Y coordinate of the position
+     * @param z      The Z coordinate of the position
+     * @return The closest spawn of the team in that world, or null if the team
+     *         has no spawn there
+     */
+    public synchronized Spawn nearest(long teamId, String world, double x, double y, double z) {
+        Grid grid = grids.get(new GridKey(teamId, world));
+        if (grid == null) {
+            return null;
+        }
+        return grid.nearest(x, y, z);
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xffffffffL);
+    }
+
+    private static class Grid {
+        private final Map<Long, List<Entry>> cells = new HashMap<>();
+        private final Set<Entry> all = new HashSet<>();
+        private int cellSize = MIN_CELL_SIZE;
+        private int rebuildSize = 1;
+
+        // Bounds of the positions ever indexed, they don't shrink on removal
+        private double minX = Double.MAX_VALUE;
+        private double maxX = -Double.MAX_VALUE;
+        private double minZ = Double.MAX_VALUE;
+        private double maxZ = -Double.MAX_VALUE;
+
+        int size() {
+            return all.size();
+        }
+
+        void add(Entry entry) {
+            all.add(entry);
+            minX = Math.min(minX, entry.x);
+            maxX = Math.max(maxX, entry.x);
+            minZ = Math.min(minZ, entry.z);
+            maxZ = Math.max(maxZ, entry.z);
+
+            if (all.size() >= 2 * rebuildSize) {
+                rebuild();
+            } else {
+                addToCell(entry);
+            }
+        }
+
+        boolean remove(Entry entry) {
+            if (!all.remove(entry)) {
+                return false;
+            }
+
+            long key = cellKey(cell(entry.x), cell(entry.z));
+            List<Entry> cell = cells.get(key);
+            if (cell != null) {
+                cell.remove(entry);
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+
+            if (all.size() > 0 && all.size() <= rebuildSize / 4) {
+                rebuild();
+            }
+            return true;
+        }
+
+        Spawn nearest(double x, double y, double z) {
+            int cellX = cell(x);
+            int cellZ = cell(z);
+
+            // Cells outside of the indexed bounds are always empty
+            int fromX = cell(minX) - cellX;
+            int toX = cell(maxX) - cellX;
+            int fromZ = cell(minZ) - cellZ;
+            int toZ = cell(maxZ) - cellZ;
+            int maxRing = Math.max(Math.max(-fromX, toX), Math.max(-fromZ, toZ));
+
+            Entry best = null;
+            double bestDistance = Double.MAX_VALUE;
+
+            for (int ring = 0; ring <= maxRing; ring++) {
+                // Every cell of this ring is at least ring - 1 cells away
+                double ringDistance = (double) Math.max(0, ring - 1) * cellSize;
+                if (best != null && ringDistance * ringDistance > bestDistance) {
+                    break;
+                }
+
+                for (int dx = Math.max(-ring, fromX); dx <= Math.min(ring, toX); dx++) {
+                    if (Math.abs(dx) == ring) {
+                        for (int dz = Math.max(-ring, fromZ); dz <= Math.min(ring, toZ); dz++) {
+                            best = scan(cellX + dx, cellZ + dz, x, y, z, best);
+                        }
+                    } else {
+                        // Only the border of the ring, inner cells were scanned already
+                        if (-ring >= fromZ) {
+                            best = scan(cellX + dx, cellZ - ring, x, y, z, best);
+                        }
+                        if (ring <= toZ) {
+                            best = scan(cellX + dx, cellZ + ring, x, y, z, best);
+                        }
+                    }
+                    if (best != null) {
+                        bestDistance = best.distanceSquared(x, y, z);
+                    }
+                }
+            }
+
+            return best == null ? null : best.spawn;
+        }
+
+        private Entry scan(int cellX, int cellZ, double x, double y, double z, Entry best) {
+            List<Entry> cell = cells.get(cellKey(cellX, cellZ));
+            if (cell == null) {
+                return best;
+            }
+
+            double bestDistance = best == null ? Double.MAX_VALUE : best.distanceSquared(x, y, z);
+            for (Entry entry : cell) {
+                double distance = entry.distanceSquared(x, y, z);
+                if (distance < bestDistance) {
+                    best = entry;
+                    bestDistance = distance;
+                }
+            }
+            return best;
+        }
+
+        private int cell(double coordinate) {
+            return (int) Math.floor(coordinate / cellSize);
+        }
+
+        private void addToCell(Entry entry) {
+            cells.computeIfAbsent(cellKey(cell(entry.x), cell(entry.z)), key -> new ArrayList<>(1)).add(entry);
+        }
+
+        // Resizes the cells so that each one holds about one spawn, whatever
+        // the density. Runs when the number of spawns doubles or drops to a
+        // quarter, so updates stay amortized O(1).
+        private void rebuild() {
+            double extent = Math.max(maxX - minX, maxZ - minZ);
+            double target = extent / Math.sqrt(all.size());
+            int size = MIN_CELL_SIZE;
+            while (size < target && size < MAX_CELL_SIZE) {
+                size <<= 1;
+            }
+
+            cellSize = size;
+            rebuildSize = all.size();
+            cells.clear();
+            all.forEach(this::addToCell);
+        }
+    }
+
+    // Copy of the indexed position, the Spawn object may be updated in place
+    private static class Entry {
+        private final Spawn spawn;
+        private final GridKey grid;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        Entry(Spawn spawn) {
+            this.spawn = spawn;
+            this.grid = new GridKey(spawn.teamId, spawn.world);
+            this.x = spawn.x;
+            this.y = spawn.y;
+            this.z = spawn.z;
+        }
+
+        double distanceSquared(double otherX, double otherY, double otherZ) {
+            double dx = x - otherX;
+            double dy = y - otherY;
+            double dz = z - otherZ;
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    private static class GridKey {
+        private final long teamId;
+        private final String world;
+
+        GridKey(long teamId, String world) {
+            this.teamId = teamId;
+            this.world = world;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof GridKey)) {
+                return false;
+            }
+            GridKey key = (GridKey) other;
+            return teamId == key.teamId && Objects.equals(world, key.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(teamId) + Objects.hashCode(world);
+        }
+    }
+}
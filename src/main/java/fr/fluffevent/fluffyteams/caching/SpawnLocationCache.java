@@ -0,0 +1,83 @@
+package fr.fluffevent.fluffyteams.caching;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+
+/**
+ * Resolved Locations of the spawns of this server.
+ * A spawn only stores the name of its world, so the world handle is looked up
+ * once and kept until the spawn changes or the world is loaded or unloaded.
+ * Spawns whose world isn't loaded resolve to null instead of a Location
+ * without a world.
+ */
+public class SpawnLocationCache {
+
+    private final Map<Long, Resolved> locations = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the location of a spawn.
+     *
+     * @param spawn The spawn to resolve
+     * @return A copy of the spawn location, or null if its world isn't loaded
+     */
+    public Location get(Spawn spawn) {
+        Resolved resolved = locations.get(spawn.id);
+        if (resolved == null) {
+            World world = Bukkit.getWorld(spawn.world);
+            Location location = world == null
+                    ? null
+                    : new Location(world, spawn.x, spawn.y, spawn.z, spawn.yaw, spawn.pitch);
+            resolved = new Resolved(spawn.world, location);
+
+            // Spawns without an ID aren't saved yet and can't be invalidated
+            if (spawn.id != 0) {
+                locations.put(spawn.id, resolved);
+            }
+        }
+
+        // Locations are mutable, callers get their own copy
+        return resolved.location == null ? null : resolved.location.clone();
+    }
+
+    /**
+     * Forgets the location of a spawn, after it was moved or removed.
+     *
+     * @param spawn The spawn that changed
+     */
+    public void invalidate(Spawn spawn) {
+        locations.remove(spawn.id);
+    }
+
+    /**
+     * Forgets the locations of every spawn in a world, after the world was
+     * loaded or unloaded.
+     *
+     * @param worldName The name of the world
+     */
+    public void invalidateWorld(String worldName) {
+        locations.values().removeIf(resolved -> resolved.world.equals(worldName));
+    }
+
+    /**
+     * Forgets every location.
+     */
+    public void clear() {
+        locations.clear();
+    }
+
+    private static class Resolved {
+        private final String world;
+        private final Location location;
+
+        Resolved(String world, Location location) {
+            this.world = world;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.fluffevent.fluffyteams.caching;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.fluffevent.fluffyteams.models.SpawnSelection;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+
+/**
+ * Spawn points of one team on the current server.
+ * Picking a spawn is O(1) whatever the policy, so players respawning at the
+ * same time are spread over the spawns without any database access.
+ */
+public class SpawnPool {
+
+    // Replaced on every change, read without locking
+    private volatile List<Spawn> spawns = Collections.emptyList();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    // Least recently used first, guarded by this
+    private final ArrayDeque<Spawn> usage = new ArrayDeque<>();
+
+    /**
+     * Lists the spawns of the pool.
+     *
+     * @return An unmodifiable list of the spawns
+     */
+    public List<Spawn> getSpawns() {
+        return spawns;
+    }
+
+    /**
+     * Checks if the pool has no spawn.
+     *
+     * @return true if the pool is empty
+     */
+    public boolean isEmpty() {
+        return spawns.isEmpty();
+    }
+
+    /**
+     * Adds or replaces a spawn in the pool.
+     * A new spawn is the first one picked by the least recently used policy.
+     *
+     * @param spawn The spawn to add
+     */
+    public synchronized void put(Spawn spawn) {
+        List<Spawn> updated = new ArrayList<>(spawns);
+        updated.removeIf(s -> s.id == spawn.id);
+        updated.add(spawn);
+        spawns = Collections.unmodifiableList(updated);
+
+        usage.removeIf(s -> s.id == spawn.id);
+        usage.addFirst(spawn);
+    }
+
+    /**
+     * Removes a spawn from the pool.
+     *
+     * @param spawn The spawn to remove
+     */
+    public synchronized void remove(Spawn spawn) {
+        List<Spawn> updated = new ArrayList<>(spawns);
+        updated.removeIf(s -> s.id == spawn.id);
+        spawns = Collections.unmodifiableList(updated);
+
+        usage.removeIf(s -> s.id == spawn.id);
+    }
+
+    /**
+     * Picks the spawn to use next.
+     *
+     * @param selection The selection policy
+     * @return The picked spawn, or null if the pool is empty
+     */
+    public Spawn select(SpawnSelection selection) {
+        List<Spawn> current = spawns;
+        if (current.isEmpty()) {
+            return null;
+        }
+        if (current.size() == 1) {
+            return current.get(0);
+        }
+
+        switch (selection) {
+            case RANDOM:
+                return current.get(ThreadLocalRandom.current().nextInt(current.size()));
+            case LEAST_RECENTLY_USED:
+                synchronized (this) {
+                    Spawn spawn = usage.pollFirst();
+                    if (spawn == null) {
+                        return current.get(0);
+                    }
+                    usage.addLast(spawn);
+                    return spawn;
+                }
+            case ROUND_ROBIN:
+            default:
+                return current.get(Math.floorMod(next.getAndIncrement(), current.size()));
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package fr.fluffevent.fluffyteams.caching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.fluffevent.fluffyteams.models.SpawnSelection;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * In-memory view of the teams, members and spawns of this server.
+ * Filled in bulk by the database warm-up and kept up to date by the
+ * TeamController on every mutation. Until the warm-up is done, the cache is
+ * not ready and callers must fall back to the database.
+ */
+public class TeamCache {
+
+    private final Map<Long, Team> teamsById = new ConcurrentHashMap<>();
+    private final Map<String, Team> teamsByName = new ConcurrentHashMap<>();
+    private final Map<String, Member> membersByUuid = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> memberUuidsByTeam = new ConcurrentHashMap<>();
+    private final Map<Long, SpawnPool> spawnsByTeam = new ConcurrentHashMap<>();
+    private final SpawnIndex spawnIndex = new SpawnIndex();
+    private final SpawnLocationCache spawnLocations = new SpawnLocationCache();
+    private final TeamSizeIndex sizeIndex = new TeamSizeIndex();
+
+    private volatile boolean ready = false;
+
+    /**
+     * Checks if the cache has been fully loaded and can be used for reads.
+     *
+     * @return true once the warm-up has completed
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Marks the cache as fully loaded.
+     */
+    public void markReady() {
+        ready = true;
+    }
+
+    /**
+     * Empties the cache and marks it as not ready.
+     */
+    public void clear() {
+        ready = false;
+        teamsById.clear();
+        teamsByName.clear();
+        membersByUuid.clear();
+        memberUuidsByTeam.clear();
+        spawnsByTeam.clear();
+        spawnIndex.clear();
+        spawnLocations.clear();
+        sizeIndex.clear();
+    }
+
+    /**
+     * Gets the teams ordered by size, kept in sync with the cached members.
+     *
+     * @return The team size index
+     */
+    public TeamSizeIndex getSizeIndex() {
+        return sizeIndex;
+    }
+
+    /**
+     * Gets the resolved locations of the cached spawns.
+     *
+     * @return The spawn location cache
+     */
+    public SpawnLocationCache getSpawnLocations() {
+        return spawnLocations;
+    }
+
+    /**
+     * Gets a cached team by its name.
+     *
+     * @param name The name of the team
+     * @return The team if cached, null otherwise
+     */
+    public Team getTeam(String name) {
+        return teamsByName.get(name);
+    }
+
+    /**
+     * Gets a cached team by its ID.
+     *
+     * @param id The ID of the team
+     * @return The team if cached, null otherwise
+     */
+    public Team getTeam(long id) {
+        return teamsById.get(id);
+    }
+
+    /**
+     * Lists all cached teams, ordered by ID.
+     *
+     * @return A list of all cached teams
+     */
+    public List<Team> getTeams() {
+        List<Team> teams = new ArrayList<>(teamsById.values());
+        teams.sort(Comparator.comparingLong(t -> t.id));
+        return teams;
+    }
+
+    /**
+     * Adds or replaces a team in the cache.
+     *
+     * @param team The team to cache
+     */
+    public void putTeam(Team team) {
+        Team previous = teamsById.put(team.id, team);
+        if (previous != null && !previous.name.equals(team.name)) {
+            teamsByName.remove(previous.name);
+        }
+        teamsByName.put(team.name, team);
+        sizeIndex.putTeam(team.id, team.maxSize);
+    }
+
+    /**
+     * Removes a team from the cache, along with its members and spawns.
+     *
+     * @param team The team to remove
+     */
+    public void removeTeam(Team team) {
+        teamsById.remove(team.id);
+        teamsByName.remove(team.name);
+        SpawnPool spawns = spawnsByTeam.remove(team.id);
+        if (spawns != null) {
+            spawns.getSpawns().forEach(spawnLocations::invalidate);
+        }
+        spawnIndex.removeTeam(team.id);
+        sizeIndex.removeTeam(team.id);
+        Set<String> uuids = memberUuidsByTeam.remove(team.id);
+        if (uuids != null) {
+            uuids.forEach(membersByUuid::remove);
+        }
+    }
+
+    /**
+     * Gets a cached member by player UUID.
+     *
+     * @param playerUuid The UUID of the player
+     * @return The member record if cached, null otherwise
+     */
+    public Member getMember(String playerUuid) {
+        return membersByUuid.get(playerUuid);
+    }
+
+    /**
+     * Lists the cached members of a team.
+     *
+     * @param teamId The ID of the team
+     * @return A list of the team members
+     */
+    public List<Member> getMembers(long teamId) {
+        Set<String> uuids = memberUuidsByTeam.get(teamId);
+        if (uuids == null) {
+            return Collections.emptyList();
+        }
+
+        List<Member> members = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            Member member = membersByUuid.get(uuid);
+            if (member != null) {
+                members.add(member);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Counts the cached members of a team without listing them.
+     *
+     * @param teamId The ID of the team
+     * @return The number of members in the team
+     */
+    public int getMemberCount(long teamId) {
+        Set<String> uuids = memberUuidsByTeam.get(teamId);
+        return uuids == null ? 0 : uuids.size();
+    }
+
+    /**
+     * Adds or replaces a member in the cache.
+     *
+     * @param member The member to cache
+     */
+    public void putMember(Member member) {
+        Member previous = membersByUuid.put(member.playerUuid, member);
+        if (previous != null && previous.teamId != member.teamId) {
+            Set<String> previousTeam = memberUuidsByTeam.get(previous.teamId);
+            if (previousTeam != null && previousTeam.remove(member.playerUuid)) {
+                sizeIndex.adjust(previous.teamId, -1);
+            }
+        }
+        boolean added = memberUuidsByTeam
+                .computeIfAbsent(member.teamId, id -> ConcurrentHashMap.newKeySet())
+                .add(member.playerUuid);
+        if (added) {
+            sizeIndex.adjust(member.teamId, 1);
+        }
+    }
+
+    /**
+     * Removes a member from the cache.
+     *
+     * @param member The member to remove
+     */
+    public void removeMember(Member member) {
+        Member previous = membersByUuid.remove(member.playerUuid);
+        if (previous == null) {
+            return;
+        }
+        Set<String> uuids = memberUuidsByTeam.get(previous.teamId);
+        if (uuids != null && uuids.remove(member.playerUuid)) {
+            sizeIndex.adjust(previous.teamId, -1);
+        }
+    }
+
+    /**
+     * Lists the cached spawns of a team on the current server.
+     *
+     * @param teamId The ID of the team
+     * @return A list of the team spawns
+     */
+    public List<Spawn> getSpawns(long teamId) {
+        SpawnPool spawns = spawnsByTeam.get(teamId);
+        if (spawns == null) {
+            return Collections.emptyList();
+        }
+        return spawns.getSpawns();
+    }
+
+    /**
+     * Picks the spawn a member of a team should use next.
+     *
+     * @param teamId    The ID of the team
+     * @param selection The selection policy
+     * @return The picked spawn, or null if the team has no spawn
+     */
+    public Spawn selectSpawn(long teamId, SpawnSelection selection) {
+        SpawnPool spawns = spawnsByTeam.get(teamId);
+        if (spawns == null) {
+            return null;
+        }
+        return spawns.select(selection);
+    }
+
+    /**
+     * Finds the spawn of a team closest to a position.
+     *
+     * @param teamId The ID of the team
+     * @param world  The name of the world of the position
+     * @param x      The X coordinate of the position
+     * @param y      The Y coordinate of the position
+     * @param z      The Z coordinate of the position
+     * @return The closest spawn of the team in that world, or null if the team
+     *         has no spawn there
+     */
+    public Spawn nearestSpawn(long teamId, String world, double x, double y, double z) {
+        return spawnIndex.nearest(teamId, world, x, y, z);
+    }
+
+    /**
+     * Adds or replaces a spawn in the cache.
+     *
+     * @param spawn The spawn to cache
+     */
+    public void putSpawn(Spawn spawn) {
+        spawnsByTeam.computeIfAbsent(spawn.teamId, id -> new SpawnPool()).put(spawn);
+        spawnIndex.put(spawn);
+        spawnLocations.invalidate(spawn);
+    }
+
+    /**
+     * Removes a spawn from the cache.
+     *
+     * @param spawn The spawn to remove
+     */
+    public void removeSpawn(Spawn spawn) {
+        SpawnPool spawns = spawnsByTeam.get(spawn.teamId);
+        if (spawns != null) {
+            spawns.remove(spawn);
+        }
+        spawnIndex.remove(spawn);
+        spawnLocations.invalidate(spawn);
+    }
+}
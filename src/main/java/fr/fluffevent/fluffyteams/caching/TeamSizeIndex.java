@@ -0,0 +1,125 @@
+package fr.fluffevent.fluffyteams.caching;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Teams ordered by their current number of members, used to place new
+ * players in the least-filled team in O(log n).
+ * Teams that reached their maximum size are left out of the ordering until a
+ * slot frees up. Picking a team reserves a slot in it, so a burst of
+ * concurrent joins spreads over the teams even before the inserts complete.
+ */
+public class TeamSizeIndex {
+
+    private final Map<Long, Slot> slots = new HashMap<>();
+    private final TreeSet<Slot> available = new TreeSet<>((a, b) -> {
+        int byLoad = Integer.compare(a.load(), b.load());
+        return byLoad != 0 ? byLoad : Long.compare(a.teamId, b.teamId);
+    });
+
+    /**
+     * Adds a team to the index or updates its maximum size.
+     *
+     * @param teamId  The ID of the team
+     * @param maxSize The maximum number of members, 0 for no limit
+     */
+    public synchronized void putTeam(long teamId, int maxSize) {
+        Slot slot = slots.computeIfAbsent(teamId, Slot::new);
+        available.remove(slot);
+        slot.maxSize = maxSize;
+        reindex(slot);
+    }
+
+    /**
+     * Removes a team from the index.
+     *
+     * @param teamId The ID of the team
+     */
+    public synchronized void removeTeam(long teamId) {
+        Slot slot = slots.remove(teamId);
+        if (slot != null) {
+            available.remove(slot);
+        }
+    }
+
+    /**
+     * Updates the number of members of a team.
+     *
+     * @param teamId The ID of the team
+     * @param delta  The number of members added (or removed if negative)
+     */
+    public synchronized void adjust(long teamId, int delta) {
+        Slot slot = slots.get(teamId);
+        if (slot == null) {
+            return;
+        }
+        available.remove(slot);
+        slot.members = Math.max(0, slot.members + delta);
+        reindex(slot);
+    }
+
+    /**
+     * Picks the team with the fewest members and reserves a slot in it.
+     * The reservation must be released with {@link #release(long)} once the
+     * member has been inserted (or the insert failed).
+     *
+     * @return The ID of the picked team, or null if every team is full
+     */
+    public synchronized Long reserveSmallest() {
+        if (available.isEmpty()) {
+            return null;
+        }
+
+        Slot slot = available.pollFirst();
+        slot.pending++;
+        reindex(slot);
+        return slot.teamId;
+    }
+
+    /**
+     * Releases a slot reserved by {@link #reserveSmallest()}.
+     *
+     * @param teamId The ID of the team
+     */
+    public synchronized void release(long teamId) {
+        Slot slot = slots.get(teamId);
+        if (slot == null || slot.pending == 0) {
+            return;
+        }
+        available.remove(slot);
+        slot.pending--;
+        reindex(slot);
+    }
+
+    /**
+     * Empties the index.
+     */
+    public synchronized void clear() {
+        slots.clear();
+        available.clear();
+    }
+
+    // The slot must not be in the available set when its load changes
+    private void reindex(Slot slot) {
+        if (slot.maxSize <= 0 || slot.load() < slot.maxSize) {
+            available.add(slot);
+        }
+    }
+
+    private static class Slot {
+        private final long teamId;
+        private int members;
+        private int pending;
+        private int maxSize;
+
+        Slot(long teamId) {
+            this.teamId = teamId;
+        }
+
+        int load() {
+            return members + pending;
+        }
+    }
+}
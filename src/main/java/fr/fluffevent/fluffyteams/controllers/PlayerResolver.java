@@ -0,0 +1,244 @@
+package fr.fluffevent.fluffyteams.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+
+import fr.fluffevent.fluffyteams.Config;
+import fr.fluffevent.fluffyteams.caching.PlayerNameIndex;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import fr.fluffevent.fluffyteams.utils.MojangClient;
+
+/**
+ * Resolves player names to UUIDs and back.
+ * Names are resolved locally first: online players, players known to the
+ * server (usercache.json and logins) and, on offline-mode servers, the UUID
+ * the server derives from the name. Only the remaining names are looked up
+ * through the Mojang API, on a small bounded pool so that many names can be
+ * resolved concurrently without flooding the API or blocking the main thread.
+ */
+public class PlayerResolver {
+
+    private static final int MAX_CONCURRENT_LOOKUPS = 4;
+
+    private static final ExecutorService lookups = Executors.newFixedThreadPool(MAX_CONCURRENT_LOOKUPS,
+            new ThreadFactory());
+
+    // Shared so that every lookup uses the same connections and limits
+    private static final MojangClient mojang = new MojangClient();
+
+    private static final PlayerNameIndex knownNames = new PlayerNameIndex();
+
+    /**
+     * Loads the players known to the server from its usercache.json.
+     * Reads a file, call it off the main thread.
+     *
+     * @return The number of players loaded
+     */
+    public static int loadUserCache() {
+        File container = Bukkit.getWorldContainer();
+        Path file = new File(container == null ? new File(".") : container, "usercache.json").toPath();
+        try {
+            return knownNames.load(file);
+        } catch (IOException e) {
+            Bukkit.getLogger().warning("Couldn't read " + file + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Records the name of a player who logged in.
+     *
+     * @param player The player
+     */
+    public static void remember(Player player) {
+        knownNames.put(player.getName(), player.getUniqueId());
+    }
+
+    /**
+     * Resolves several player names concurrently.
+     * Must be called from the main thread, online players are resolved
+     * immediately and the other names on the lookup pool.
+     *
+     * @param names The player names to resolve
+     * @return A future completed on the lookup pool with the UUID of each
+     *         name, in the same order, or null for names that don't match any
+     *         Minecraft account. Slow callbacks should move to a task of
+     *         their own, the pool is shared by every lookup.
+     */
+    public CompletableFuture<Map<String, UUID>> resolveAll(Collection<String> names) {
+        // Only touched on the calling thread, the lookups complete their own
+        // future
+        Map<String, CompletableFuture<UUID>> pending = new LinkedHashMap<>();
+        // The lookups and the callbacks they complete are attributed to the
+        // calling command in the slow operation log
+        Executor handlerLookups = MainThreadWatchdog.withHandler(lookups);
+
+        for (String name : names) {
+            if (pending.containsKey(name)) {
+                continue;
+            }
+
+            Player player = Bukkit.getPlayerExact(name);
+            if (player != null) {
+                pending.put(name, CompletableFuture.completedFuture(player.getUniqueId()));
+                continue;
+            }
+
+            UUID local = resolveLocal(name);
+            if (local != null) {
+                pending.put(name, CompletableFuture.completedFuture(local));
+                continue;
+            }
+
+            pending.put(name, CompletableFuture.supplyAsync(() -> resolveOffline(name), handlerLookups));
+        }
+
+        return CompletableFuture
+                .allOf(pending.values().toArray(new CompletableFuture[0]))
+                .thenApplyAsync(ignored -> {
+                    Map<String, UUID> resolved = new LinkedHashMap<>();
+                    pending.forEach((name, uuid) -> resolved.put(name, uuid.join()));
+                    return resolved;
+                }, handlerLookups);
+    }
+
+    /**
+     * Resolves a name without any network call.
+     *
+     * @param username The Minecraft username to look up
+     * @return The UUID known to the server or derived from the name in
+     *         offline mode, null if it has to be looked up
+     */
+    public UUID resolveLocal(String username) {
+        UUID uuid = knownNames.getUuid(username);
+        if (uuid != null) {
+            return uuid;
+        }
+
+        // Offline-mode servers derive UUIDs from names, any name is valid
+        if (Config.offlineUuids) {
+            return UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    /**
+     * Resolves a player who isn't online.
+     * Tries the names known to the server first, then the Mojang API, then
+     * falls back to players who have connected to this server before.
+     *
+     * @param username The Minecraft username to look up
+     * @return The UUID if found, null otherwise
+     */
+    public UUID resolveOffline(String username) {
+        UUID uuid = resolveLocal(username);
+        if (uuid != null) {
+            return uuid;
+        }
+
+        uuid = fetchUUIDFromMojang(username);
+        if (uuid != null) {
+            knownNames.put(username, uuid);
+            return uuid;
+        }
+
+        @SuppressWarnings("deprecation")
+        OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(username);
+        if (offlinePlayer.hasPlayedBefore()) {
+            return offlinePlayer.getUniqueId();
+        }
+        return null;
+    }
+
+    /**
+     * Fetch a player's UUID from Mojang API by username.
+     * Goes through the shared Mojang client, so lookups are rate limited and
+     * fail fast while the API is down.
+     *
+     * @param username The Minecraft username to look up
+     * @return The UUID if the player exists, null if the player doesn't exist or if
+     *         an error occurred
+     */
+    public UUID fetchUUIDFromMojang(String username) {
+        try {
+            return mojang.fetchUUID(username);
+        } catch (IOException | RuntimeException e) {
+            // Log the error but don't crash the plugin
+            Bukkit.getLogger().warning("Failed to fetch UUID for username " + username + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gets the name of a player, from the names known to the server or else
+     * from the Mojang API.
+     *
+     * @param uuid The UUID to look up
+     * @return The username if found, "Unknown Player" otherwise
+     */
+    public String resolveName(UUID uuid) {
+        String name = knownNames.getName(uuid);
+        if (name != null) {
+            return name;
+        }
+        // Offline-mode UUIDs don't exist at Mojang
+        if (Config.offlineUuids && uuid.version() == 3) {
+            return "Unknown Player";
+        }
+
+        name = fetchUsernameFromMojang(uuid);
+        if (!name.equals("Unknown Player")) {
+            knownNames.put(name, uuid);
+        }
+        return name;
+    }
+
+    /**
+     * Fetch a player's username from Mojang API by UUID.
+     *
+     * @param uuid The UUID to look up
+     * @return The username if found, "Unknown Player" otherwise
+     */
+    public String fetchUsernameFromMojang(UUID uuid) {
+        try {
+            String name = mojang.fetchUsername(uuid);
+            return name == null ? "Unknown Player" : name;
+        } catch (IOException | RuntimeException e) {
+            Bukkit.getLogger().warning("Failed to fetch username for UUID " + uuid + ": " + e.getMessage());
+            return "Unknown Player";
+        }
+    }
+
+    /**
+     * Stops the lookup pool, called when the plugin is disabled.
+     */
+    public static void shutdown() {
+        lookups.shutdownNow();
+    }
+
+    private static class ThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FluffyTeams player lookup #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,12 +1,19 @@
 package fr.fluffevent.fluffyteams.controllers;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
@@ -14,19 +21,36 @@ import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.Server;
-import org.bukkit.World;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.RegisteredServiceProvider;
 
-import com.dieselpoint.norm.Database;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.dieselpoint.norm.DbException;
 
 import fr.fluffevent.fluffyteams.Config;
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.caching.TeamSizeIndex;
+import fr.fluffevent.fluffyteams.database.DatabaseHealth;
 import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.database.LeaseLock;
+import fr.fluffevent.fluffyteams.database.PresenceIndex;
+import fr.fluffevent.fluffyteams.database.RedisManager;
+import fr.fluffevent.fluffyteams.database.TeamRepository;
+import fr.fluffevent.fluffyteams.database.WriteQueue;
+import fr.fluffevent.fluffyteams.models.AssignmentResult;
+import fr.fluffevent.fluffyteams.models.MembershipResult;
+import fr.fluffevent.fluffyteams.models.PendingWrite;
 import fr.fluffevent.fluffyteams.models.PlayerInfo;
 import fr.fluffevent.fluffyteams.models.database.Member;
 import fr.fluffevent.fluffyteams.models.database.Spawn;
 import fr.fluffevent.fluffyteams.models.database.Team;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+import fr.fluffevent.fluffyteams.utils.StripedLock;
+import io.lettuce.core.RedisException;
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.model.user.UserManager;
+import net.luckperms.api.node.types.InheritanceNode;
 
 /**
  * Controller class for managing teams, members, and team spawns.
@@ -35,13 +59,33 @@ import fr.fluffevent.fluffyteams.models.database.Team;
  */
 public class TeamController {
 
-    Database db;
+    // Shared by every controller instance, guards membership changes per player
+    private static final StripedLock memberLocks = new StripedLock(64);
+
+    // Guards the size check and insert of teams with a maximum size
+    private static final StripedLock teamLocks = new StripedLock(16);
+
+    // Teams picked by autoAssign that turn out to be deleted before giving up
+    private static final int AUTO_ASSIGN_ATTEMPTS = 3;
+
+    // Spawns added while the database is down are cached under negative IDs
+    // until their write is replayed
+    private static final AtomicLong temporarySpawnIds = new AtomicLong();
+
+    TeamRepository store;
+    TeamCache cache;
+    DatabaseHealth health;
+    PlayerResolver resolver;
 
     /**
-     * Initializes the TeamController with a database connection.
+     * Initializes the TeamController with the team repository and the shared
+     * team cache. Reads are served from the cache once it has been warmed up.
      */
     public TeamController() {
-        db = DatabaseManager.getDatabase();
+        store = DatabaseManager.getRepository();
+        cache = DatabaseManager.getCache();
+        health = DatabaseManager.getHealth();
+        resolver = new PlayerResolver();
     }
 
     /**
@@ -51,11 +95,11 @@ public class TeamController {
      * @return The team if found, null otherwise
      */
     public Team getTeam(String name) {
-        List<Team> teams = db.where("name = ?", name).results(Team.class);
-        if (teams.isEmpty()) {
-            return null;
+        if (cache.isReady()) {
+            return cache.getTeam(name);
         }
-        return teams.get(0);
+
+        return store.findTeam(name);
     }
 
     /**
@@ -65,11 +109,11 @@ public class TeamController {
      * @return The team if found, null otherwise
      */
     public Team getTeamFromId(long id) {
-        List<Team> teams = db.where("id = ?", id).results(Team.class);
-        if (teams.isEmpty()) {
-            return null;
+        if (cache.isReady()) {
+            return cache.getTeam(id);
         }
-        return teams.get(0);
+
+        return store.findTeam(id);
     }
 
     /**
@@ -93,16 +137,46 @@ public class TeamController {
      * @return The member record if found, null otherwise
      */
     public Member getMember(Player player) {
-        List<Member> members = db.where("player_uuid = ?", player.getUniqueId().toString())
-                .results(Member.class);
-        if (members.isEmpty()) {
-            return null;
+        return getMember(player.getUniqueId().toString());
+    }
+
+    /**
+     * Gets the member record for a player UUID.
+     *
+     * @param playerUuid The UUID of the player to check
+     * @return The member record if found, null otherwise
+     */
+    public Member getMember(String playerUuid) {
+        if (cache.isReady()) {
+            return cache.getMember(playerUuid);
+        }
+
+        return store.findMember(playerUuid);
+    }
+
+    /**
+     * Lists the spawn records of a team on the current server.
+     *
+     * @param teamName The name of the team
+     * @return The spawn records of the team, empty if none is set
+     * @throws IllegalArgumentException if the team doesn't exist
+     */
+    public List<Spawn> getSpawns(String teamName) {
+        Team team = getTeam(teamName);
+        if (team == null) {
+            throw new IllegalArgumentException("Team " + teamName + " not found");
+        }
+
+        if (cache.isReady()) {
+            return cache.getSpawns(team.id);
         }
-        return members.get(0);
+        return store.findSpawns(team.id, Config.serverName);
     }
 
     /**
-     * Gets the spawn record for a team on the current server.
+     * Gets the spawn record a member of a team should use next on the current
+     * server. When the team has several spawns, one is picked according to the
+     * spawn-selection setting.
      *
      * @param teamName The name of the team
      * @return The spawn record if found, null otherwise
@@ -114,7 +188,11 @@ public class TeamController {
             throw new IllegalArgumentException("Team " + teamName + " not found");
         }
 
-        List<Spawn> spawns = db.where("team_id = ? AND server = ?", team.id, Config.serverName).results(Spawn.class);
+        if (cache.isReady()) {
+            return cache.selectSpawn(team.id, Config.spawnSelection);
+        }
+
+        List<Spawn> spawns = getSpawns(teamName);
         if (spawns.isEmpty()) {
             return null;
         }
@@ -123,9 +201,12 @@ public class TeamController {
 
     /**
      * Gets the spawn location for a team on the current server.
+     * If the picked spawn is in a world that isn't loaded, another spawn of
+     * the team in a loaded world is used instead.
      *
      * @param teamName The name of the team
-     * @return The location of the spawn if set, null otherwise
+     * @return The location of the spawn, or null if no spawn is set or none is
+     *         in a loaded world
      */
     public Location getSpawnLocation(String teamName) {
         Spawn spawn = getSpawn(teamName);
@@ -133,8 +214,55 @@ public class TeamController {
             return null;
         }
 
-        World world = Bukkit.getWorld(spawn.world);
-        return new Location(world, spawn.x, spawn.y, spawn.z, spawn.yaw, spawn.pitch);
+        Location location = toLocation(spawn);
+        if (location != null) {
+            return location;
+        }
+
+        for (Spawn other : getSpawns(teamName)) {
+            location = toLocation(other);
+            if (location != null) {
+                return location;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the location of the team spawn closest to a given location.
+     * Falls back to getSpawnLocation if the team has no spawn in that world.
+     *
+     * @param teamName The name of the team
+     * @param from     The location to measure the distance from
+     * @return The location of the closest spawn if set, null otherwise
+     * @throws IllegalArgumentException if the team doesn't exist
+     */
+    public Location getNearestSpawnLocation(String teamName, Location from) {
+        Team team = getTeam(teamName);
+        if (team == null) {
+            throw new IllegalArgumentException("Team " + teamName + " not found");
+        }
+
+        if (cache.isReady() && from != null && from.getWorld() != null) {
+            Spawn spawn = cache.nearestSpawn(team.id, from.getWorld().getName(), from.getX(), from.getY(),
+                    from.getZ());
+            if (spawn != null) {
+                return toLocation(spawn);
+            }
+        }
+
+        return getSpawnLocation(teamName);
+    }
+
+    /**
+     * Gets the location of a spawn record, resolved once and cached until the
+     * spawn or its world changes.
+     *
+     * @param spawn The spawn record
+     * @return The location of the spawn, or null if its world isn't loaded
+     */
+    private Location toLocation(Spawn spawn) {
+        return cache.getSpawnLocations().get(spawn);
     }
 
     /**
@@ -144,11 +272,56 @@ public class TeamController {
      * @param displayName The display name of the team (supports color codes with &)
      */
     public void create(String name, String displayName) {
+        create(name, displayName, 0);
+    }
+
+    /**
+     * Creates a new team with a maximum number of members.
+     *
+     * @param name        The name of the team (used for commands and permissions)
+     * @param displayName The display name of the team (supports color codes with &)
+     * @param maxSize     The maximum number of members, 0 for no limit
+     * @throws IllegalStateException if the database is unavailable
+     */
+    public void create(String name, String displayName, int maxSize) {
+        checkAvailable();
+
         Team team = new Team();
         team.name = name;
         team.displayName = ChatColor.translateAlternateColorCodes('&', displayName);
+        team.maxSize = Math.max(0, maxSize);
 
-        db.insert(team);
+        store.insertTeam(team);
+        cache.putTeam(team);
+    }
+
+    /**
+     * Sets the maximum number of members of a team.
+     * Members already in the team are kept even if the team is now over the
+     * limit, only new additions are rejected.
+     *
+     * @param teamName The name of the team
+     * @param maxSize  The maximum number of members, 0 for no limit
+     * @throws IllegalArgumentException if the team doesn't exist
+     * @throws IllegalStateException    if the database is unavailable
+     */
+    public void setMaxSize(String teamName, int maxSize) {
+        checkAvailable();
+
+        Team team = getTeam(teamName);
+        if (team == null) {
+            throw new IllegalArgumentException("Team " + teamName + " not found");
+        }
+
+        ReentrantLock teamLock = teamLocks.get(team.id);
+        teamLock.lock();
+        try {
+            team.maxSize = Math.max(0, maxSize);
+            store.updateTeam(team);
+            cache.putTeam(team);
+        } finally {
+            teamLock.unlock();
+        }
     }
 
     /**
@@ -156,27 +329,26 @@ public class TeamController {
      *
      * @param teamName The name of the team to delete
      * @throws IllegalArgumentException if the team doesn't exist
+     * @throws IllegalStateException    if the database is unavailable
      */
     public void delete(String teamName) {
+        checkAvailable();
+
         Team team = getTeam(teamName);
         if (team == null) {
             throw new IllegalArgumentException("Team " + teamName + " not found");
         }
 
-        // Get all members before deleting
-        List<PlayerInfo> members = listMembers(teamName);
-
-        // Remove all members
-        for (PlayerInfo playerInfo : members) {
-            OfflinePlayer player = playerInfo.getPlayer();
-            if (player.isOnline()) {
-                removeMember(player.getPlayer());
-            } else {
-                removeOfflineMember(playerInfo.getUsername());
-            }
-        }
+        // Remove all members in one batch
+        List<Member> members = cache.isReady()
+                ? cache.getMembers(team.id)
+                : store.findMembers(team.id);
+        List<String> uuids = new ArrayList<>(members.size());
+        members.forEach(member -> uuids.add(member.playerUuid));
+        removeMembers(uuids);
 
-        db.delete(team);
+        store.deleteTeam(team);
+        cache.removeTeam(team);
     }
 
     /**
@@ -184,30 +356,23 @@ public class TeamController {
      *
      * @param teamName The name of the team to add the player to
      * @param player   The player to add
-     * @throws IllegalArgumentException if the team doesn't exist or if the player
-     *                                  is already in a team
+     * @return ADDED if the player was added, ALREADY_IN_TEAM if the player is
+     *         already in a team
+     * @throws IllegalArgumentException if the team doesn't exist
      */
-    public void addMember(String teamName, Player player) {
+    public MembershipResult addMember(String teamName, Player player) {
         Team team = getTeam(teamName);
         if (team == null) {
             throw new IllegalArgumentException("Team " + teamName + " not found");
         }
 
-        if (getMember(player) != null) {
-            throw new IllegalArgumentException("Player " + player.getName() + " is already in a team");
-        }
-
-        Member member = new Member();
-        member.teamId = team.id;
-        member.playerUuid = player.getUniqueId().toString();
-
-        db.insert(member);
+        MembershipResult result = insertMember(team, player.getUniqueId().toString());
 
-        Server server = Bukkit.getServer();
-        if (server.getPluginManager().isPluginEnabled("LuckPerms")) {
-            String lpCommand = "lp user " + player.getUniqueId() + " parent add " + team.name;
-            Bukkit.getServer().dispatchCommand(server.getConsoleSender(), lpCommand);
+        if (result == MembershipResult.ADDED) {
+            addLuckPermsGroup(player.getUniqueId().toString(), team.name);
         }
+
+        return result;
     }
 
     /**
@@ -217,98 +382,453 @@ public class TeamController {
      * @param teamName Name of the team to add the player to
      * @param username Minecraft username of the player (must be a valid Minecraft
      *                 account)
-     * @return true if the player was successfully added, false if the player
-     *         doesn't exist in Mojang's database
-     * @throws IllegalArgumentException if the team doesn't exist or if the player
-     *                                  is already in a team
+     * @return ADDED if the player was added, PLAYER_NOT_FOUND if the player
+     *         doesn't exist in Mojang's database, ALREADY_IN_TEAM if the player
+     *         is already in a team
+     * @throws IllegalArgumentException if the team doesn't exist
      */
-    public boolean addOfflineMember(String teamName, String username) {
+    public MembershipResult addOfflineMember(String teamName, String username) {
         Team team = getTeam(teamName);
         if (team == null) {
             throw new IllegalArgumentException("Team " + teamName + " not found");
         }
 
-        // Validate the username against Mojang API
-        UUID playerUUID = fetchUUIDFromMojang(username);
+        // Validate the username, locally first then against Mojang API
+        UUID playerUUID = resolver.resolveOffline(username);
 
         // If UUID couldn't be retrieved, the player doesn't exist
         if (playerUUID == null) {
-            return false;
+            return MembershipResult.PLAYER_NOT_FOUND;
         }
 
         String uuid = playerUUID.toString();
 
-        // Check if player is already in a team
-        List<Member> existingMembers = db.where("player_uuid = ?", uuid).results(Member.class);
-        if (!existingMembers.isEmpty()) {
-            throw new IllegalArgumentException("Player " + username + " is already in a team");
+        MembershipResult result = insertMember(team, uuid);
+
+        // Add to LuckPerms if available - use UUID instead of username
+        if (result == MembershipResult.ADDED) {
+            addLuckPermsGroup(uuid, team.name);
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds a player to a team without blocking the calling thread. The member
+     * is inserted asynchronously and the LuckPerms group is applied back on the
+     * main thread. Can be called from any thread.
+     *
+     * @param teamName The name of the team to add the player to
+     * @param player   The player to add
+     * @return A future completed on the main thread with ADDED, ALREADY_IN_TEAM
+     *         or TEAM_FULL
+     * @throws IllegalArgumentException if the team doesn't exist
+     */
+    public CompletableFuture<MembershipResult> addMemberAsync(String teamName, Player player) {
+        Team team = getTeam(teamName);
+        if (team == null) {
+            throw new IllegalArgumentException("Team " + teamName + " not found");
         }
 
-        // Add player to team
-        Member member = new Member();
-        member.teamId = team.id;
-        member.playerUuid = uuid;
+        return insertMemberAsync(team, player.getUniqueId().toString(), () -> {
+        });
+    }
 
-        db.insert(member);
+    /**
+     * Adds a player to the team with the fewest members, without blocking the
+     * calling thread. The team is picked from the in-memory size index and a
+     * slot is reserved in it right away, so concurrent joins are spread over
+     * the teams. The member is then inserted asynchronously and the LuckPerms
+     * group is applied back on the main thread.
+     *
+     * @param player The player to add
+     * @return A future completed on the main thread with ADDED and the picked
+     *         team, ALREADY_IN_TEAM, or TEAM_FULL if every team is full (or
+     *         there are no teams, or the picked teams were deleted meanwhile)
+     */
+    public CompletableFuture<AssignmentResult> autoAssign(Player player) {
+        TeamSizeIndex sizeIndex = cache.getSizeIndex();
+        for (int attempt = 0; attempt < AUTO_ASSIGN_ATTEMPTS; attempt++) {
+            Long teamId = sizeIndex.reserveSmallest();
+            if (teamId == null) {
+                break;
+            }
 
-        // Add to LuckPerms if available - use UUID instead of username
-        Server server = Bukkit.getServer();
-        if (server.getPluginManager().isPluginEnabled("LuckPerms")) {
-            String lpCommand = "lp user " + uuid + " parent add " + team.name;
-            Bukkit.getServer().dispatchCommand(server.getConsoleSender(), lpCommand);
+            // The team may have been deleted since it was picked
+            Team team = getTeamFromId(teamId);
+            if (team == null) {
+                sizeIndex.release(teamId);
+                continue;
+            }
+            return insertMemberAsync(team, player.getUniqueId().toString(), () -> sizeIndex.release(teamId))
+                    .thenApply(result -> new AssignmentResult(result, result == MembershipResult.ADDED ? team : null));
         }
+        return CompletableFuture.completedFuture(new AssignmentResult(MembershipResult.TEAM_FULL, null));
+    }
 
-        return true;
+    /**
+     * Inserts a member record asynchronously, then gives the LuckPerms group
+     * on the main thread.
+     *
+     * @param team        The team to add the player to
+     * @param playerUuid  The UUID of the player
+     * @param afterInsert Run off the main thread once the insert is done,
+     *                    whether it succeeded or not
+     * @return A future completed on the main thread with the result
+     */
+    private CompletableFuture<MembershipResult> insertMemberAsync(Team team, String playerUuid,
+            Runnable afterInsert) {
+        FluffyTeams plugin = FluffyTeams.getInstance();
+        CompletableFuture<MembershipResult> future = new CompletableFuture<>();
+
+        // Keeps the command or listener for the slow operation log
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, MainThreadWatchdog.withHandler(() -> {
+            MembershipResult result;
+            try {
+                result = insertMember(team, playerUuid);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return;
+            } finally {
+                afterInsert.run();
+            }
+
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (result == MembershipResult.ADDED) {
+                    addLuckPermsGroup(playerUuid, team.name);
+                }
+                future.complete(result);
+            });
+        }));
+
+        return future;
     }
 
     /**
-     * Fetch a player's UUID from Mojang API by username.
-     * Makes a direct HTTP call to Mojang's profile API to verify the username
-     * exists
-     * and to retrieve the official UUID.
+     * Spreads players who aren't in a team yet over the given teams.
+     * Players are shuffled, then each one goes to the team whose size
+     * relative to its weight is the lowest, so teams end up balanced (or
+     * proportional to their weights) including their existing members. Full
+     * teams are skipped. Nothing is written, see addMembers.
      *
-     * @param username The Minecraft username to look up
-     * @return The UUID if the player exists, null if the player doesn't exist or if
-     *         an error occurred
+     * @param teamWeights The names of the teams to fill and their weights
+     * @param players     The players to distribute
+     * @return The team picked for each player UUID, players that didn't fit
+     *         anywhere are left out
+     * @throws IllegalArgumentException if a team doesn't exist or a weight
+     *                                  isn't positive
      */
-    private UUID fetchUUIDFromMojang(String username) {
+    public Map<String, Team> planShuffle(Map<String, Integer> teamWeights, Collection<? extends Player> players) {
+        PriorityQueue<ShuffleSlot> slots = new PriorityQueue<>();
+        for (Map.Entry<String, Integer> entry : teamWeights.entrySet()) {
+            Team team = getTeam(entry.getKey());
+            if (team == null) {
+                throw new IllegalArgumentException("Team " + entry.getKey() + " not found");
+            }
+            if (entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Weight of team " + team.name + " must be positive");
+            }
+            ShuffleSlot slot = new ShuffleSlot(team, entry.getValue(), countMembers(team));
+            if (!slot.isFull()) {
+                slots.add(slot);
+            }
+        }
+
+        List<String> unassigned = new ArrayList<>();
+        for (Player player : players) {
+            String uuid = player.getUniqueId().toString();
+            if (getMember(uuid) == null) {
+                unassigned.add(uuid);
+            }
+        }
+        Collections.shuffle(unassigned);
+
+        Map<String, Team> assignments = new LinkedHashMap<>();
+        for (String uuid : unassigned) {
+            ShuffleSlot slot = slots.poll();
+            if (slot == null) {
+                break;
+            }
+            assignments.put(uuid, slot.team);
+            slot.size++;
+            if (!slot.isFull()) {
+                slots.add(slot);
+            }
+        }
+
+        return assignments;
+    }
+
+    /**
+     * Adds several players to teams at once.
+     * Every member is written in a single transaction, then the LuckPerms
+     * groups of all added players are updated in one batch through the
+     * LuckPerms API. Conflicts are reported per player, like addMember.
+     *
+     * @param assignments The team of each player UUID
+     * @return The result for each player UUID
+     */
+    public Map<String, MembershipResult> addMembers(Map<String, Team> assignments) {
+        Map<String, MembershipResult> results = new LinkedHashMap<>();
+        List<Member> toInsert = new ArrayList<>();
+        List<Member> inserted = new ArrayList<>();
+
+        // Only limited teams need their size checked, lock them all up front
+        Map<Long, Team> limitedTeams = new HashMap<>();
+        for (Team team : assignments.values()) {
+            if (team.maxSize > 0) {
+                limitedTeams.put(team.id, team);
+            }
+        }
+        // Same order as insertMember: the per-UUID locks, then the leases (a
+        // team lock is never held while waiting for another server), then the
+        // team locks
+        List<ReentrantLock> playerLocks = memberLocks.getAll(assignments.keySet());
+        playerLocks.forEach(ReentrantLock::lock);
+        List<LeaseLock.Lease> leases = Collections.emptyList();
+        List<ReentrantLock> locks = Collections.emptyList();
         try {
-            URL url = new URL("https://api.mojang.com/users/profiles/minecraft/" + username);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-
-            int status = connection.getResponseCode();
-
-            // 200 means player exists, 204 means player doesn't exist
-            if (status == 200) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+            leases = leaseMembers(assignments.keySet());
+            locks = teamLocks.getAll(limitedTeams.keySet());
+            locks.forEach(ReentrantLock::lock);
+
+            Map<Long, Integer> sizes = new HashMap<>();
+            for (Team team : limitedTeams.values()) {
+                sizes.put(team.id, onPrimary(() -> countMembers(team)));
+            }
+
+            for (Map.Entry<String, Team> entry : assignments.entrySet()) {
+                String uuid = entry.getKey();
+                Team team = entry.getValue();
+
+                if (onPrimary(() -> getMember(uuid)) != null) {
+                    results.put(uuid, MembershipResult.ALREADY_IN_TEAM);
+                    continue;
+                }
+                if (team.maxSize > 0) {
+                    int size = sizes.get(team.id);
+                    if (size >= team.maxSize) {
+                        results.put(uuid, MembershipResult.TEAM_FULL);
+                        continue;
+                    }
+                    sizes.put(team.id, size + 1);
                 }
-                reader.close();
 
-                // Parse the JSON response
-                JsonObject json = new Gson().fromJson(response.toString(), JsonObject.class);
-                String id = json.get("id").getAsString();
+                Member member = new Member();
+                member.teamId = team.id;
+                member.playerUuid = uuid;
+                toInsert.add(member);
+            }
 
-                // Mojang API returns UUID without hyphens, we need to add them
-                String formattedUUID = id.replaceFirst(
-                        "(\\p{XDigit}{8})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}+)",
-                        "$1-$2-$3-$4-$5");
+            // A concurrent single add for the same player is rejected by the
+            // store, without aborting the batch
+            List<LeaseLock.Lease> held = leases;
+            Runnable batch = () -> {
+                fence(held);
+                for (Member member : toInsert) {
+                    if (store.insertMember(member)) {
+                        inserted.add(member);
+                    } else {
+                        results.put(member.playerUuid, MembershipResult.ALREADY_IN_TEAM);
+                    }
+                }
+            };
+            if (!writeOrQueue(batch, () -> {
+                List<PendingWrite> pending = new ArrayList<>(toInsert.size());
+                toInsert.forEach(member -> pending.add(PendingWrite.addMember(member)));
+                return pending;
+            })) {
+                // Rolled back if the database went down halfway
+                inserted.clear();
+                inserted.addAll(toInsert);
+            }
+
+            // Only visible once committed
+            inserted.forEach(cache::putMember);
+        } finally {
+            locks.forEach(ReentrantLock::unlock);
+            LeaseLock.releaseAll(leases);
+            playerLocks.forEach(ReentrantLock::unlock);
+        }
+
+        Map<String, String> groups = new HashMap<>();
+        for (Member member : inserted) {
+            results.put(member.playerUuid, MembershipResult.ADDED);
+            groups.put(member.playerUuid, assignments.get(member.playerUuid).name);
+        }
+        updateLuckPermsGroups(groups, true);
+
+        return results;
+    }
 
-                return UUID.fromString(formattedUUID);
+    /**
+     * Inserts a member record, making sure a player never ends up in two teams.
+     * Concurrent changes for the same player on this server are serialized by a
+     * per-UUID lock, and across servers by a lease when Redis is enabled. The
+     * store rejects the insert if another server got there first anyway.
+     *
+     * @param team       The team to add the player to
+     * @param playerUuid The UUID of the player
+     * @return ADDED if the player was added, ALREADY_IN_TEAM or TEAM_FULL
+     *         otherwise
+     */
+    private MembershipResult insertMember(Team team, String playerUuid) {
+        ReentrantLock lock = memberLocks.get(playerUuid);
+        lock.lock();
+        List<LeaseLock.Lease> leases = Collections.emptyList();
+        try {
+            leases = leaseMembers(List.of(playerUuid));
+            if (onPrimary(() -> getMember(playerUuid)) != null) {
+                return MembershipResult.ALREADY_IN_TEAM;
             }
 
-            return null;
-        } catch (Exception e) {
-            // Log the error but don't crash the plugin
-            Bukkit.getLogger().log(Level.WARNING, "Failed to fetch UUID for username: " + username, e);
-            return null;
+            // Unlimited teams skip the team lock, there's nothing to check
+            ReentrantLock teamLock = team.maxSize > 0 ? teamLocks.get(team.id) : null;
+            if (teamLock != null) {
+                teamLock.lock();
+            }
+            try {
+                if (teamLock != null && onPrimary(() -> countMembers(team)) >= team.maxSize) {
+                    return MembershipResult.TEAM_FULL;
+                }
+
+                Member member = new Member();
+                member.teamId = team.id;
+                member.playerUuid = playerUuid;
+
+                List<LeaseLock.Lease> held = leases;
+                boolean[] conflict = new boolean[1];
+                writeOrQueue(() -> {
+                    fence(held);
+                    conflict[0] = !store.insertMember(member);
+                }, () -> List.of(PendingWrite.addMember(member)));
+                if (conflict[0]) {
+                    return MembershipResult.ALREADY_IN_TEAM;
+                }
+                cache.putMember(member);
+
+                return MembershipResult.ADDED;
+            } finally {
+                if (teamLock != null) {
+                    teamLock.unlock();
+                }
+            }
+        } finally {
+            LeaseLock.releaseAll(leases);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts the members of a team.
+     * Uses the count maintained by the cache, only hitting the database until
+     * the cache is warmed up.
+     *
+     * @param team The team to count the members of
+     * @return The number of members in the team
+     */
+    public int countMembers(Team team) {
+        if (cache.isReady()) {
+            return cache.getMemberCount(team.id);
+        }
+
+        return store.countMembers(team.id);
+    }
+
+    /**
+     * Counts the online members of teams, on the whole network when Redis
+     * tracks presence, on this server otherwise.
+     *
+     * @param teams The teams to count the online members of
+     * @return The number of online members, by team ID
+     */
+    public Map<Long, Long> countOnlineMembers(Collection<Team> teams) {
+        PresenceIndex presence = RedisManager.getPresence();
+        if (presence != null) {
+            try {
+                List<Long> teamIds = new ArrayList<>();
+                teams.forEach(team -> teamIds.add(team.id));
+                return presence.countOnline(teamIds);
+            } catch (RedisException e) {
+                Metrics.increment("presence.failures");
+            }
+        }
+
+        Map<Long, Long> counts = new HashMap<>();
+        teams.forEach(team -> counts.put(team.id, 0L));
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Member member = getMember(player);
+            if (member != null && counts.containsKey(member.teamId)) {
+                counts.merge(member.teamId, 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gives a player the LuckPerms parent group of their team, if LuckPerms is
+     * installed.
+     *
+     * @param playerUuid The UUID of the player
+     * @param group      The name of the team
+     */
+    private void addLuckPermsGroup(String playerUuid, String group) {
+        Server server = Bukkit.getServer();
+        if (server.getPluginManager().isPluginEnabled("LuckPerms")) {
+            String lpCommand = "lp user " + playerUuid + " parent add " + group;
+            Bukkit.getServer().dispatchCommand(server.getConsoleSender(), lpCommand);
+        }
+    }
+
+    /**
+     * Gives or removes the LuckPerms parent group of many players in one go,
+     * using the LuckPerms API instead of one console command per player.
+     *
+     * @param groups The team name of each player UUID
+     * @param add    true to give the groups, false to remove them
+     */
+    private void updateLuckPermsGroups(Map<String, String> groups, boolean add) {
+        if (groups.isEmpty() || !Bukkit.getServer().getPluginManager().isPluginEnabled("LuckPerms")) {
+            return;
+        }
+
+        RegisteredServiceProvider<LuckPerms> provider = Bukkit.getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null) {
+            return;
+        }
+
+        UserManager userManager = provider.getProvider().getUserManager();
+        CompletableFuture<?>[] updates = groups.entrySet().stream()
+                .map(entry -> userManager.modifyUser(UUID.fromString(entry.getKey()), user -> {
+                    InheritanceNode node = InheritanceNode.builder(entry.getValue()).build();
+                    if (add) {
+                        user.data().add(node);
+                    } else {
+                        user.data().remove(node);
+                    }
+                }))
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(updates).whenComplete((ignored, error) -> {
+            if (error != null) {
+                Bukkit.getLogger().log(Level.WARNING, "Failed to update LuckPerms groups of " + groups.size()
+                        + " players", error);
+            }
+        });
+    }
+
+    /**
+     * Removes the LuckPerms parent group of a player's former team, if
+     * LuckPerms is installed.
+     *
+     * @param playerUuid The UUID of the player
+     * @param group      The name of the team
+     */
+    private void removeLuckPermsGroup(String playerUuid, String group) {
+        Server server = Bukkit.getServer();
+        if (server.getPluginManager().isPluginEnabled("LuckPerms")) {
+            String lpCommand = "lp user " + playerUuid + " parent remove " + group;
+            Bukkit.getServer().dispatchCommand(server.getConsoleSender(), lpCommand);
         }
     }
 
@@ -319,7 +839,7 @@ public class TeamController {
      * @throws IllegalArgumentException if the player is not in a team
      */
     public void removeMember(Player player) {
-        Member member = getMember(player);
+        Member member = deleteMember(player.getUniqueId().toString());
 
         if (member == null) {
             throw new IllegalArgumentException("Player " + player.getName() + " not found in any team ");
@@ -327,13 +847,7 @@ public class TeamController {
 
         Team team = getTeamFromId(member.teamId);
 
-        db.delete(member);
-
-        Server server = Bukkit.getServer();
-        if (server.getPluginManager().isPluginEnabled("LuckPerms")) {
-            String lpCommand = "lp user " + player.getUniqueId() + " parent remove " + team.name;
-            Bukkit.getServer().dispatchCommand(server.getConsoleSender(), lpCommand);
-        }
+        removeLuckPermsGroup(player.getUniqueId().toString(), team.name);
     }
 
     /**
@@ -346,51 +860,125 @@ public class TeamController {
      *         false if they weren't in a team, don't exist, or couldn't be found
      */
     public boolean removeOfflineMember(String username) {
-        // Try to get the real UUID from Mojang
-        UUID playerUUID = fetchUUIDFromMojang(username);
-
-        // If couldn't get UUID from Mojang, try with Bukkit's offline player (for
-        // players who have connected before)
+        UUID playerUUID = resolver.resolveOffline(username);
         if (playerUUID == null) {
-            @SuppressWarnings("deprecation")
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(username);
-            if (offlinePlayer.hasPlayedBefore()) {
-                playerUUID = offlinePlayer.getUniqueId();
-            } else {
-                return false;
-            }
+            return false;
         }
 
         String uuid = playerUUID.toString();
 
-        // Find the member record
-        List<Member> members = db.where("player_uuid = ?", uuid).results(Member.class);
-        if (members.isEmpty()) {
+        // Find and delete the member record
+        Member member = deleteMember(uuid);
+        if (member == null) {
             return false;
         }
 
-        Member member = members.get(0);
         Team team = getTeamFromId(member.teamId);
 
-        db.delete(member);
-
         // Remove from LuckPerms if available - use UUID instead of username
-        Server server = Bukkit.getServer();
-        if (server.getPluginManager().isPluginEnabled("LuckPerms")) {
-            String lpCommand = "lp user " + uuid + " parent remove " + team.name;
-            Bukkit.getServer().dispatchCommand(server.getConsoleSender(), lpCommand);
-        }
+        removeLuckPermsGroup(uuid, team.name);
 
         return true;
     }
 
+    /**
+     * Removes several players from their teams at once.
+     * Every member record is deleted in a single transaction, then the
+     * LuckPerms groups of all removed players are updated in one batch.
+     *
+     * @param playerUuids The UUIDs of the players to remove
+     * @return REMOVED or NOT_IN_TEAM for each player UUID
+     */
+    public Map<String, MembershipResult> removeMembers(Collection<String> playerUuids) {
+        Map<String, MembershipResult> results = new LinkedHashMap<>();
+        List<Member> toDelete = new ArrayList<>();
+
+        // Same per-UUID locks and leases as deleteMember, taken in stripe order
+        List<ReentrantLock> locks = memberLocks.getAll(playerUuids);
+        locks.forEach(ReentrantLock::lock);
+        List<LeaseLock.Lease> leases = Collections.emptyList();
+        try {
+            leases = leaseMembers(playerUuids);
+            for (String uuid : playerUuids) {
+                Member member = onPrimary(() -> getMember(uuid));
+                if (member == null) {
+                    results.put(uuid, MembershipResult.NOT_IN_TEAM);
+                } else if (!results.containsKey(uuid)) {
+                    results.put(uuid, MembershipResult.REMOVED);
+                    toDelete.add(member);
+                }
+            }
+
+            List<LeaseLock.Lease> held = leases;
+            writeOrQueue(() -> {
+                fence(held);
+                toDelete.forEach(store::deleteMember);
+            }, () -> {
+                List<PendingWrite> pending = new ArrayList<>(toDelete.size());
+                toDelete.forEach(member -> pending.add(PendingWrite.removeMember(member)));
+                return pending;
+            });
+
+            toDelete.forEach(cache::removeMember);
+        } finally {
+            LeaseLock.releaseAll(leases);
+            locks.forEach(ReentrantLock::unlock);
+        }
+
+        Map<String, String> groups = new HashMap<>();
+        for (Member member : toDelete) {
+            Team team = getTeamFromId(member.teamId);
+            if (team != null) {
+                groups.put(member.playerUuid, team.name);
+            }
+        }
+        updateLuckPermsGroups(groups, false);
+
+        return results;
+    }
+
+    /**
+     * Deletes the member record of a player, under the same per-UUID lock as
+     * insertMember.
+     *
+     * @param playerUuid The UUID of the player
+     * @return The deleted member record, or null if the player wasn't in a team
+     */
+    private Member deleteMember(String playerUuid) {
+        ReentrantLock lock = memberLocks.get(playerUuid);
+        lock.lock();
+        List<LeaseLock.Lease> leases = Collections.emptyList();
+        try {
+            leases = leaseMembers(List.of(playerUuid));
+            Member member = onPrimary(() -> getMember(playerUuid));
+            if (member == null) {
+                return null;
+            }
+
+            List<LeaseLock.Lease> held = leases;
+            writeOrQueue(() -> {
+                fence(held);
+                store.deleteMember(member);
+            }, () -> List.of(PendingWrite.removeMember(member)));
+            cache.removeMember(member);
+
+            return member;
+        } finally {
+            LeaseLock.releaseAll(leases);
+            lock.unlock();
+        }
+    }
+
     /**
      * Lists all teams in the system.
      *
      * @return A list of all teams
      */
     public List<Team> list() {
-        return db.results(Team.class);
+        if (cache.isReady()) {
+            return cache.getTeams();
+        }
+        return store.findTeams();
     }
 
     /**
@@ -405,68 +993,50 @@ public class TeamController {
             throw new IllegalArgumentException("Team " + teamName + " not found");
         }
 
-        List<Member> members = db.where("team_id = ?", team.id).results(Member.class);
+        List<Member> members = cache.isReady()
+                ? cache.getMembers(team.id)
+                : store.findMembers(team.id);
         List<PlayerInfo> result = new ArrayList<>();
+        Set<String> networkOnline = getNetworkOnline(team);
 
         for (Member member : members) {
             UUID uuid = UUID.fromString(member.playerUuid);
             OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(uuid);
             String username = offlinePlayer.getName();
             boolean hasConnectedBefore = offlinePlayer.hasPlayedBefore();
+            boolean online = networkOnline != null ? networkOnline.contains(member.playerUuid)
+                    : offlinePlayer.isOnline();
 
-            // If player has never connected, try to fetch username from Mojang API
+            // If player has never connected, try the known names then Mojang API
             if (username == null || username.isEmpty()) {
-                username = fetchUsernameFromMojang(uuid);
+                username = resolver.resolveName(uuid);
             }
 
-            result.add(new PlayerInfo(offlinePlayer, username, uuid, hasConnectedBefore));
+            result.add(new PlayerInfo(offlinePlayer, username, uuid, hasConnectedBefore, online));
         }
 
         return result;
     }
 
-    /**
-     * Fetch a player's username from Mojang API by UUID.
-     *
-     * @param uuid The UUID to look up
-     * @return The username if found, "Unknown Player" otherwise
-     */
-    private String fetchUsernameFromMojang(UUID uuid) {
-        try {
-            // Convert UUID to Mojang's format (no hyphens)
-            String uuidStr = uuid.toString().replace("-", "");
-            URL url = new URL("https://sessionserver.mojang.com/session/minecraft/profile/" + uuidStr);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-
-            int status = connection.getResponseCode();
-
-            if (status == 200) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                reader.close();
-
-                // Parse the JSON response
-                JsonObject json = new Gson().fromJson(response.toString(), JsonObject.class);
-                return json.get("name").getAsString();
-            }
+    // UUIDs of the members online anywhere on the network, or null when
+    // Redis doesn't track presence (or is unreachable)
+    private Set<String> getNetworkOnline(Team team) {
+        PresenceIndex presence = RedisManager.getPresence();
+        if (presence == null) {
+            return null;
+        }
 
-            return "Unknown Player";
-        } catch (Exception e) {
-            Bukkit.getLogger().log(Level.WARNING, "Failed to fetch username for UUID: " + uuid, e);
-            return "Unknown Player";
+        try {
+            return presence.getOnline(team.id);
+        } catch (RedisException e) {
+            Metrics.increment("presence.failures");
+            return null;
         }
     }
 
     /**
      * Teleports all online members of a team to their spawn location.
+     * If the team has several spawns, the members are spread over them.
      * If teamName is "*", teleports all teams to their respective spawns.
      *
      * @param teamName The name of the team, or "*" for all teams
@@ -478,21 +1048,30 @@ public class TeamController {
             return;
         }
 
-        Location spawnLocation = getSpawnLocation(teamName);
-
-        if (spawnLocation == null) {
+        if (getSpawns(teamName).isEmpty()) {
             throw new IllegalArgumentException("No spawn set for team " + teamName);
         }
+        if (getSpawnLocation(teamName) == null) {
+            throw new IllegalArgumentException("The spawns of team " + teamName + " are in worlds that aren't loaded");
+        }
+
+        Team team = getTeam(teamName);
+        List<Member> members = cache.isReady()
+                ? cache.getMembers(team.id)
+                : store.findMembers(team.id);
 
-        listMembers(teamName).forEach(playerInfo -> {
-            if (playerInfo.getPlayer().isOnline()) {
-                playerInfo.getPlayer().getPlayer().teleport(spawnLocation);
+        for (Member member : members) {
+            Player player = Bukkit.getPlayer(UUID.fromString(member.playerUuid));
+            Location location = player != null ? getSpawnLocation(teamName) : null;
+            if (location != null) {
+                player.teleport(location);
             }
-        });
+        }
     }
 
     /**
      * Sets the spawn location for a team.
+     * Replaces every spawn the team has on the current server with this one.
      * If teamName is "*", sets the spawn for all teams to the same location.
      *
      * @param teamName The name of the team, or "*" for all teams
@@ -511,13 +1090,256 @@ public class TeamController {
             throw new IllegalArgumentException("Team " + teamName + " not found");
         }
 
-        Spawn spawn = getSpawn(teamName);
+        List<Spawn> spawns = new ArrayList<>(getSpawns(teamName));
 
-        if (spawn == null) {
+        boolean isNew = spawns.isEmpty();
+        Spawn spawn;
+        if (isNew) {
             spawn = new Spawn();
             spawn.teamId = team.id;
+        } else {
+            spawn = spawns.remove(0);
+        }
+
+        // Extra spawns added with addSpawn are dropped
+        moveSpawn(spawn, location);
+        writeOrQueue(() -> {
+            spawns.forEach(store::deleteSpawn);
+            store.saveSpawn(spawn);
+        }, () -> {
+            if (isNew) {
+                spawn.id = -temporarySpawnIds.incrementAndGet();
+            }
+            return List.of(PendingWrite.spawn(PendingWrite.Type.SET_SPAWN, spawn));
+        });
+        spawns.forEach(cache::removeSpawn);
+        cache.putSpawn(spawn);
+    }
+
+    /**
+     * Adds a spawn location to a team, keeping its other spawns.
+     * If teamName is "*", adds the spawn to all teams.
+     *
+     * @param teamName The name of the team, or "*" for all teams
+     * @param location The location to add as a spawn
+     * @throws IllegalArgumentException if the team doesn't exist
+     */
+    public void addSpawn(String teamName, Location location) {
+        if (teamName.equals("*")) {
+            this.list().forEach(t -> addSpawn(t.name, location));
+            return;
         }
 
+        Team team = getTeam(teamName);
+
+        if (team == null) {
+            throw new IllegalArgumentException("Team " + teamName + " not found");
+        }
+
+        Spawn spawn = new Spawn();
+        spawn.teamId = team.id;
+        moveSpawn(spawn, location);
+        writeOrQueue(() -> store.saveSpawn(spawn), () -> {
+            spawn.id = -temporarySpawnIds.incrementAndGet();
+            return List.of(PendingWrite.spawn(PendingWrite.Type.ADD_SPAWN, spawn));
+        });
+        cache.putSpawn(spawn);
+    }
+
+    /**
+     * Replays the writes queued while the database was unavailable, in order.
+     * Stops at the first write that fails because the database went down
+     * again, it's retried on the next recovery. Writes that can't be applied
+     * anymore (e.g. the team was deleted or filled up since) are dropped.
+     *
+     * @return The number of writes replayed
+     */
+    public int replayPendingWrites() {
+        WriteQueue queue = health.getQueue();
+        if (queue == null) {
+            return 0;
+        }
+
+        int replayed = 0;
+        for (PendingWrite write = queue.peek(); write != null; write = queue.peek()) {
+            try {
+                replay(write);
+                Metrics.increment("database.writes_replayed");
+            } catch (DbException | RedisException e) {
+                if (DatabaseManager.isConnectionFailure(e)) {
+                    health.recordFailure(e);
+                    return replayed;
+                }
+                Metrics.increment("database.writes_dropped");
+                Bukkit.getLogger().log(Level.WARNING, "Dropped queued write " + write, e);
+            } catch (IllegalStateException e) {
+                Metrics.increment("database.writes_dropped");
+                Bukkit.getLogger().warning("Dropped queued write " + write + ": " + e.getMessage());
+            }
+            queue.remove();
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Applies a queued write to the database, then swaps the cached state
+     * made up while it was queued for the written records. Writes restored
+     * after a restart aren't in the cache yet and are added to it.
+     *
+     * @param write The write to replay
+     * @throws IllegalStateException if the write must be dropped, e.g. its
+     *                               team is full now
+     */
+    private void replay(PendingWrite write) {
+        // Removals still apply, the team may be gone from the cache while the
+        // member row is still in the database
+        if (write.type != PendingWrite.Type.REMOVE_MEMBER && getTeamFromId(write.teamId) == null) {
+            return;
+        }
+
+        switch (write.type) {
+            case ADD_MEMBER: {
+                Team team = getTeamFromId(write.teamId);
+                ReentrantLock lock = memberLocks.get(write.playerUuid);
+                lock.lock();
+                // The team may have filled up on other servers during the outage
+                ReentrantLock teamLock = team.maxSize > 0 ? teamLocks.get(team.id) : null;
+                if (teamLock != null) {
+                    teamLock.lock();
+                }
+                try {
+                    // Already written if the server stopped halfway through a
+                    // replay, or by a batch that failed partway through
+                    Member member = onPrimary(() -> store.findMember(write.playerUuid));
+                    if (member == null) {
+                        if (teamLock != null && onPrimary(() -> store.countMembers(team.id)) >= team.maxSize) {
+                            Member cached = cache.getMember(write.playerUuid);
+                            if (cached != null && cached.teamId == write.teamId) {
+                                cache.removeMember(cached);
+                            }
+                            // The group was given when the write was queued
+                            Bukkit.getScheduler().runTask(FluffyTeams.getInstance(),
+                                    () -> removeLuckPermsGroup(write.playerUuid, team.name));
+                            throw new IllegalStateException("Team " + team.name + " is full, player "
+                                    + write.playerUuid + " wasn't added and loses the team group");
+                        }
+
+                        Member inserted = new Member();
+                        inserted.teamId = write.teamId;
+                        inserted.playerUuid = write.playerUuid;
+                        member = store.insertMember(inserted) ? inserted
+                                : onPrimary(() -> store.findMember(write.playerUuid));
+                    }
+
+                    if (member == null || member.teamId != write.teamId) {
+                        // Added to a team by another server during the outage
+                        Member cached = cache.getMember(write.playerUuid);
+                        if (cached != null) {
+                            cache.removeMember(cached);
+                        }
+                        if (member != null) {
+                            cache.putMember(member);
+                        }
+                        return;
+                    }
+
+                    Member cached = cache.getMember(write.playerUuid);
+                    if (write.restored || (cached != null && cached.teamId == write.teamId)) {
+                        cache.putMember(member);
+                    }
+                } finally {
+                    if (teamLock != null) {
+                        teamLock.unlock();
+                    }
+                    lock.unlock();
+                }
+                break;
+            }
+            case REMOVE_MEMBER: {
+                ReentrantLock lock = memberLocks.get(write.playerUuid);
+                lock.lock();
+                try {
+                    Member member = onPrimary(() -> store.findMember(write.playerUuid));
+                    if (member == null || member.teamId != write.teamId) {
+                        return;
+                    }
+
+                    store.deleteMember(member);
+                    if (write.restored) {
+                        cache.removeMember(member);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                break;
+            }
+            case SET_SPAWN: {
+                List<Spawn> spawns = new ArrayList<>(onPrimary(
+                        () -> store.findSpawns(write.teamId, Config.serverName)));
+                Spawn spawn = write.toSpawn(Config.serverName);
+                if (!spawns.isEmpty()) {
+                    spawn.id = spawns.remove(0).id;
+                }
+
+                inTransaction(() -> {
+                    spawns.forEach(store::deleteSpawn);
+                    store.saveSpawn(spawn);
+                });
+                if (write.restored) {
+                    cache.getSpawns(write.teamId).forEach(cache::removeSpawn);
+                }
+                replaceCachedSpawn(write, spawn);
+                break;
+            }
+            case ADD_SPAWN: {
+                // Already written if the server stopped halfway through a replay
+                Spawn spawn = write.toSpawn(Config.serverName);
+                Spawn existing = null;
+                for (Spawn other : onPrimary(() -> store.findSpawns(write.teamId, Config.serverName))) {
+                    if (other.world.equals(write.world) && other.x == write.x && other.y == write.y
+                            && other.z == write.z) {
+                        existing = other;
+                        break;
+                    }
+                }
+                if (existing != null) {
+                    spawn = existing;
+                } else {
+                    store.saveSpawn(spawn);
+                }
+                replaceCachedSpawn(write, spawn);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Replaces the spawn cached while its write was queued by the written one.
+     *
+     * @param write The replayed write
+     * @param spawn The written spawn
+     */
+    private void replaceCachedSpawn(PendingWrite write, Spawn spawn) {
+        boolean cached = false;
+        for (Spawn temporary : cache.getSpawns(write.teamId)) {
+            if (temporary.id == write.spawnId) {
+                cache.removeSpawn(temporary);
+                cached = true;
+            }
+        }
+        if (cached || write.restored) {
+            cache.putSpawn(spawn);
+        }
+    }
+
+    /**
+     * Moves a spawn record to the given location on the current server.
+     *
+     * @param spawn    The spawn record
+     * @param location The location of the spawn
+     */
+    private void moveSpawn(Spawn spawn, Location location) {
         spawn.server = Config.serverName;
         spawn.world = location.getWorld().getName();
         spawn.x = location.getX();
@@ -525,11 +1347,138 @@ public class TeamController {
         spawn.z = location.getZ();
         spawn.yaw = location.getYaw();
         spawn.pitch = location.getPitch();
+    }
 
-        if (spawn.id == 0) {
-            db.insert(spawn);
-        } else {
-            db.update(spawn);
+    /**
+     * Takes the cross-server leases of players about to change team when Redis
+     * is enabled, so that two servers never change the same player at once.
+     * Without Redis, conflicting changes are caught by the store's constraints.
+     *
+     * @param playerUuids The UUIDs of the players
+     * @return The leases to release once the change is written
+     * @throws IllegalStateException if another server holds a lease for too
+     *                               long
+     */
+    private List<LeaseLock.Lease> leaseMembers(Collection<String> playerUuids) {
+        LeaseLock locks = RedisManager.getLocks();
+        if (locks == null) {
+            return Collections.emptyList();
+        }
+        return locks.acquireAll(playerUuids);
+    }
+
+    /**
+     * Checks right before writing that no other server took over the leases,
+     * in case they expired in the meantime.
+     *
+     * @param leases The leases of the players being changed
+     * @throws IllegalStateException if another server took over a lease
+     */
+    private void fence(List<LeaseLock.Lease> leases) {
+        leases.forEach(LeaseLock.Lease::fence);
+    }
+
+    /**
+     * Runs writes in a single transaction when the store supports it.
+     *
+     * @param work The writes to run
+     */
+    private void inTransaction(Runnable work) {
+        store.inTransaction(work);
+    }
+
+    /**
+     * Runs database writes in a single transaction, or queues them when the
+     * database is unavailable so that they can be replayed later. Writes keep
+     * being queued until the queue is replayed, to stay in order.
+     *
+     * @param work    The writes to run
+     * @param pending The same writes to queue, only called when queuing
+     * @return true if written, false if queued
+     * @throws IllegalStateException if the database is unavailable and the
+     *                               writes can't be queued
+     */
+    private boolean writeOrQueue(Runnable work, Supplier<List<PendingWrite>> pending) {
+        if (!health.isDegraded()) {
+            try {
+                inTransaction(work);
+                return true;
+            } catch (DbException | RedisException e) {
+                if (!DatabaseManager.isConnectionFailure(e)) {
+                    throw e;
+                }
+                health.recordFailure(e);
+                if (health.getQueue() == null) {
+                    throw e;
+                }
+            }
+        }
+
+        WriteQueue queue = health.getQueue();
+        if (queue == null) {
+            throw new IllegalStateException("The database is unavailable, try again later");
+        }
+        List<PendingWrite> writes = pending.get();
+        if (!queue.offerAll(writes)) {
+            throw new IllegalStateException("The database is unavailable and too many changes are waiting for it, "
+                    + "try again later");
+        }
+        Metrics.add("database.writes_queued", writes.size());
+        return false;
+    }
+
+    /**
+     * Fails fast for writes that can't be queued while the database is down,
+     * or until the writes queued meanwhile are replayed, which they would
+     * otherwise overtake.
+     *
+     * @throws IllegalStateException if the database is unavailable or writes
+     *                               are waiting for it
+     */
+    private void checkAvailable() {
+        if (!health.isAvailable()) {
+            throw new IllegalStateException("The database is unavailable, try again later");
+        }
+        if (health.isDegraded()) {
+            throw new IllegalStateException("Changes made while the database was unavailable are still being "
+                    + "written, try again shortly");
+        }
+    }
+
+    /**
+     * Runs reads that decide a write on the primary database, a read replica
+     * may not have the latest writes yet.
+     *
+     * @param read The reads to run
+     * @return The value returned by the reads
+     */
+    private <T> T onPrimary(Supplier<T> read) {
+        return store.onPrimary(read);
+    }
+
+    /**
+     * Team being filled by planShuffle, ordered by size relative to weight.
+     */
+    private static class ShuffleSlot implements Comparable<ShuffleSlot> {
+        private final Team team;
+        private final int weight;
+        private int size;
+
+        ShuffleSlot(Team team, int weight, int size) {
+            this.team = team;
+            this.weight = weight;
+            this.size = size;
+        }
+
+        boolean isFull() {
+            return team.maxSize > 0 && size >= team.maxSize;
+        }
+
+        @Override
+        public int compareTo(ShuffleSlot other) {
+            // Compare (size + 1) / weight without floating point
+            int byLoad = Long.compare((long) (size + 1) * other.weight, (long) (other.size + 1) * weight);
+            return byLoad != 0 ? byLoad : Long.compare(team.id, other.team.id);
         }
     }
 }
@@ -0,0 +1,191 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.models.ModelCodec;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Copy of the team cache on disk, so that a restarting server loads it and
+ * only fetches the changes made since from the change feed, instead of
+ * loading every table.
+ * The file is a fixed header (format version, change version the cache was
+ * at, creation time, the database and server it belongs to, payload length
+ * and CRC32) followed by the cache encoded with ModelCodec. It is replaced
+ * atomically and read through a memory mapping.
+ */
+public class CacheSnapshot {
+
+  private static final int MAGIC = 0x46545353; // "FTSS"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 8;
+
+  private final Path file;
+  // The database URI may hold credentials, only a checksum is written
+  private final long source;
+
+  // A snapshot only applies to the database and server it was taken for,
+  // spawns are cached per server
+  public CacheSnapshot(Path file, String databaseUri, String serverName) {
+    this.file = file;
+    this.source = checksum((databaseUri + "\n" + serverName).getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Writes the cache, which has every change up to changeVersion applied.
+  // Changes applied while writing may or may not be in the snapshot, they
+  // are applied again on load.
+  public synchronized void write(TeamCache cache, long changeVersion) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    ModelCodec.Writer writer = new ModelCodec.Writer(payload);
+    for (Team team : cache.getTeams()) {
+      writer.write(team);
+      for (Member member : cache.getMembers(team.id)) {
+        writer.write(member);
+      }
+      for (Spawn spawn : cache.getSpawns(team.id)) {
+        writer.write(spawn);
+      }
+    }
+    writer.finish();
+    byte[] bytes = payload.toByteArray();
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.putInt(FORMAT_VERSION);
+    header.putLong(changeVersion);
+    header.putLong(System.currentTimeMillis());
+    header.putLong(source);
+    header.putInt(bytes.length);
+    header.putLong(checksum(bytes));
+    header.flip();
+
+    // Written next to the file and moved over it, a crash never leaves a
+    // partial snapshot behind
+    Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        ByteBuffer[] buffers = { header, ByteBuffer.wrap(bytes) };
+        while (buffers[1].hasRemaining()) {
+          channel.write(buffers);
+        }
+        channel.force(true);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  // Clears the cache and fills it from the snapshot, returns the change
+  // version it was taken at. Returns null and leaves the cache alone if there
+  // is no snapshot, or it was taken for another database or server, or
+  // before maxAgeMillis ago. Throws if the file is corrupt.
+  public Info load(TeamCache cache, long maxAgeMillis) throws IOException {
+    if (!Files.exists(file)) {
+      return null;
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Snapshot is truncated");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a snapshot file");
+      }
+      int version = buffer.getInt();
+      if (version != FORMAT_VERSION) {
+        return null;
+      }
+      Info info = new Info(buffer.getLong(), buffer.getLong());
+      if (buffer.getLong() != source || System.currentTimeMillis() - info.createdAt > maxAgeMillis) {
+        return null;
+      }
+
+      int length = buffer.getInt();
+      long expected = buffer.getLong();
+      if (length < 0 || length > buffer.remaining()) {
+        throw new IOException("Snapshot is truncated");
+      }
+      ByteBuffer payload = buffer.slice(HEADER_SIZE, length);
+      CRC32 crc = new CRC32();
+      crc.update(payload.duplicate());
+      if (crc.getValue() != expected) {
+        throw new IOException("Snapshot checksum mismatch");
+      }
+
+      cache.clear();
+      new ModelCodec.Reader(new BufferInputStream(payload)).readAll(cache::putTeam, cache::putMember,
+          cache::putSpawn);
+      return info;
+    }
+  }
+
+  public void delete() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  private static long checksum(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+
+  /**
+   * When a snapshot was taken.
+   */
+  public static class Info {
+
+    // Every change up to this version is in the snapshot
+    public final long changeVersion;
+    public final long createdAt;
+
+    Info(long changeVersion, long createdAt) {
+      this.changeVersion = changeVersion;
+      this.createdAt = createdAt;
+    }
+  }
+
+  // Reads the mapped file without copying it to the heap first
+  private static class BufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+  }
+}
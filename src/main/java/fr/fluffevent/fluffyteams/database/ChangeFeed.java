@@ -0,0 +1,322 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import javax.persistence.Transient;
+
+import com.dieselpoint.norm.Database;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import fr.fluffevent.fluffyteams.Config;
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.models.database.Change;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Append-only log of the changes made to teams, members and spawns, shared by
+ * every server using the database.
+ * Each mutation records the new (or deleted) row in the same transaction, and
+ * each server polls the rows after the last version it has seen to apply them
+ * to its own cache, instead of reloading whole tables.
+ */
+public class ChangeFeed {
+
+  public static final String TEAM = "team";
+  public static final String MEMBER = "member";
+  public static final String SPAWN = "spawn";
+
+  public static final String UPSERT = "upsert";
+  public static final String DELETE = "delete";
+
+  private static final int BATCH_SIZE = 1000;
+
+  // Auto increment values are taken at insert time but become visible at
+  // commit, so a lower version can show up after a higher one. Skipped
+  // versions are looked up again until they show up or time out (rolled back).
+  private static final long GAP_TIMEOUT_MS = 30_000;
+  private static final int MAX_GAPS = 10_000;
+
+  private static final Gson gson = new GsonBuilder()
+      .setExclusionStrategies(new ExclusionStrategy() {
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+          return field.getAnnotation(Transient.class) != null;
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+          return false;
+        }
+      })
+      .create();
+
+  private final TeamCache cache;
+
+  // Identifies this server's own changes, which are already in its cache
+  private final String origin = UUID.randomUUID().toString();
+
+  private final Map<Long, Long> gaps = new LinkedHashMap<>();
+  private volatile TransactionalDatabase database;
+  private long lastSeen;
+
+  public ChangeFeed(TeamCache cache) {
+    this.cache = cache;
+  }
+
+  // Must run before the warm-up, so that changes committed while the tables
+  // are loading are applied again afterwards. Changes are read from the
+  // replica if there is one, which never gets ahead of the primary the
+  // warm-up reads from.
+  public void start(TransactionalDatabase database) throws SQLException {
+    try (Connection connection = database.getReadConnection();
+        Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("select max(`version`) from `fluffy_changes`")) {
+      lastSeen = rs.next() ? rs.getLong(1) : 0;
+    }
+    gaps.clear();
+    this.database = database;
+  }
+
+  // Same as start(), but resumes after a version whose changes are already
+  // in the cache, e.g. the one a snapshot was taken at. Changes logged since
+  // notBefore are applied again as well, in case they were committed after
+  // the version was read. Returns false if the log doesn't go up to that
+  // version, e.g. the database was reset since.
+  public synchronized boolean resume(TransactionalDatabase database, long version, long notBefore)
+      throws SQLException {
+    long from = version;
+    try (Connection connection = database.getReadConnection()) {
+      try (Statement statement = connection.createStatement();
+          ResultSet rs = statement.executeQuery("select max(`version`) from `fluffy_changes`")) {
+        if (!rs.next() || rs.getLong(1) < version) {
+          return false;
+        }
+      }
+
+      try (PreparedStatement statement = connection.prepareStatement(
+          "select min(`version`) from `fluffy_changes` where `created_at` >= ?")) {
+        statement.setLong(1, notBefore);
+        try (ResultSet rs = statement.executeQuery()) {
+          if (rs.next() && rs.getObject(1) != null) {
+            from = Math.min(from, rs.getLong(1) - 1);
+          }
+        }
+      }
+    }
+
+    lastSeen = from;
+    gaps.clear();
+    this.database = database;
+    return true;
+  }
+
+  public void stop() {
+    database = null;
+  }
+
+  // Every change up to this version has been applied, skipped versions that
+  // may still show up are not
+  public synchronized long getVersion() {
+    return gaps.isEmpty() ? lastSeen : gaps.keySet().iterator().next() - 1;
+  }
+
+  public boolean isEnabled() {
+    return database != null;
+  }
+
+  // Called by TeamController right after each write, inside its transaction
+  public void record(String entity, String operation, Object row) {
+    Database db = database;
+    if (db == null) {
+      return;
+    }
+
+    db.insert(newChange(entity, operation, row));
+  }
+
+  // A change as a message, for stores that publish their changes to the other
+  // servers instead of keeping a log
+  public String encode(String entity, String operation, Object row) {
+    return gson.toJson(newChange(entity, operation, row));
+  }
+
+  // Applies a change published by another server, see encode()
+  public boolean apply(String message) {
+    Change change = gson.fromJson(message, Change.class);
+    return apply(change.origin, change.entity, change.operation, change.data);
+  }
+
+  private Change newChange(String entity, String operation, Object row) {
+    Change change = new Change();
+    change.entity = entity;
+    change.operation = operation;
+    change.origin = origin;
+    change.data = gson.toJson(row);
+    change.createdAt = System.currentTimeMillis();
+    return change;
+  }
+
+  // Applies the changes made by other servers since the last poll, returns
+  // the number of changes applied. Can be called at any time, e.g. when
+  // notified of a change.
+  public synchronized int poll() {
+    TransactionalDatabase db = database;
+    if (db == null) {
+      return 0;
+    }
+
+    int applied = 0;
+    try (Connection connection = db.getReadConnection()) {
+      if (!gaps.isEmpty()) {
+        applied += pollGaps(connection);
+      }
+
+      int fetched;
+      do {
+        fetched = 0;
+        try (PreparedStatement statement = connection.prepareStatement("select `version`, `entity`, `operation`, "
+            + "`origin`, `data` from `fluffy_changes` where `version` > ? order by `version` limit " + BATCH_SIZE)) {
+          statement.setLong(1, lastSeen);
+          try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+              fetched++;
+              long version = rs.getLong("version");
+              trackGaps(version);
+              lastSeen = version;
+              if (apply(rs)) {
+                applied++;
+              }
+            }
+          }
+        }
+      } while (fetched == BATCH_SIZE);
+    } catch (SQLException | RuntimeException ex) {
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Failed to poll the change feed", ex);
+    }
+    return applied;
+  }
+
+  // Deletes changes older than the retention, every server has applied them
+  // long ago (a server starting later loads the tables instead). Goes through
+  // a transaction so SQLite runs it on its writer thread.
+  public void prune(long retentionMillis) {
+    TransactionalDatabase db = database;
+    if (db == null) {
+      return;
+    }
+
+    long before = System.currentTimeMillis() - retentionMillis;
+    try {
+      db.runInTransaction(() -> db.sql("delete from `fluffy_changes` where `created_at` < ?", before).execute());
+    } catch (RuntimeException ex) {
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Failed to prune the change feed", ex);
+    }
+  }
+
+  private void trackGaps(long version) {
+    long deadline = System.currentTimeMillis() + GAP_TIMEOUT_MS;
+    for (long missing = lastSeen + 1; missing < version && gaps.size() < MAX_GAPS; missing++) {
+      gaps.put(missing, deadline);
+    }
+  }
+
+  private int pollGaps(Connection connection) throws SQLException {
+    long now = System.currentTimeMillis();
+    gaps.values().removeIf(deadline -> deadline < now);
+
+    List<Long> versions = new ArrayList<>();
+    Iterator<Long> it = gaps.keySet().iterator();
+    while (it.hasNext() && versions.size() < BATCH_SIZE) {
+      versions.add(it.next());
+    }
+    if (versions.isEmpty()) {
+      return 0;
+    }
+
+    StringBuilder sql = new StringBuilder("select `version`, `entity`, `operation`, `origin`, `data` "
+        + "from `fluffy_changes` where `version` in (");
+    for (int i = 0; i < versions.size(); i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    sql.append(") order by `version`");
+
+    int applied = 0;
+    try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+      for (int i = 0; i < versions.size(); i++) {
+        statement.setLong(i + 1, versions.get(i));
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          gaps.remove(rs.getLong("version"));
+          if (apply(rs)) {
+            applied++;
+          }
+        }
+      }
+    }
+    return applied;
+  }
+
+  // Applies a change to the cache, skipping this server's own changes
+  private boolean apply(ResultSet rs) throws SQLException {
+    return apply(rs.getString("origin"), rs.getString("entity"), rs.getString("operation"), rs.getString("data"));
+  }
+
+  private boolean apply(String changeOrigin, String entity, String operation, String data) {
+    if (origin.equals(changeOrigin)) {
+      return false;
+    }
+
+    boolean delete = DELETE.equals(operation);
+
+    switch (entity) {
+      case TEAM:
+        Team team = gson.fromJson(data, Team.class);
+        if (delete) {
+          cache.removeTeam(team);
+        } else {
+          cache.putTeam(team);
+        }
+        return true;
+      case MEMBER:
+        Member member = gson.fromJson(data, Member.class);
+        if (delete) {
+          cache.removeMember(member);
+        } else {
+          cache.putMember(member);
+        }
+        return true;
+      case SPAWN:
+        Spawn spawn = gson.fromJson(data, Spawn.class);
+        // Only this server's spawns are cached
+        if (!Config.serverName.equals(spawn.server)) {
+          return false;
+        }
+        if (delete) {
+          cache.removeSpawn(spawn);
+        } else {
+          cache.putSpawn(spawn);
+        }
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package fr.fluffevent.fluffyteams.database;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of a call to the team store, so recordings show
+ * which operation the JDBC or Redis time was spent on.
+ */
+@Name("fluffyteams.DatabaseCall")
+@Label("Database Call")
+@Category("FluffyTeams")
+@Description("A read or write of teams, members or spawns made by TeamController")
+public class DatabaseCallEvent extends Event {
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Table")
+  public String table;
+
+  @Label("Rows")
+  @Description("Rows read or written")
+  public int rows;
+
+  @Label("Failed")
+  public boolean failed;
+}
@@ -0,0 +1,91 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.utils.CircuitBreaker;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+
+/**
+ * Connection state of the database, checked in the background.
+ * While the database is down, reads are served from the cache and the
+ * writes that can be deferred go to the write queue. They keep going there
+ * until the queue is replayed, so that writes are applied in order.
+ */
+public class DatabaseHealth {
+
+  private static final int FAILURE_THRESHOLD = 3;
+  private static final long OPEN_MS = 5_000;
+
+  private final CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, OPEN_MS);
+  private final AtomicBoolean checking = new AtomicBoolean();
+
+  private volatile WriteQueue queue;
+  private volatile Runnable replayer;
+
+  // No queue means writes fail while the database is down
+  public void setQueue(WriteQueue queue) {
+    this.queue = queue;
+  }
+
+  public WriteQueue getQueue() {
+    return queue;
+  }
+
+  // Called once the database is reachable and writes are queued
+  public void onRecovery(Runnable replayer) {
+    this.replayer = replayer;
+  }
+
+  public boolean isAvailable() {
+    return !breaker.isOpen();
+  }
+
+  // Writes must be queued instead of written
+  public boolean isDegraded() {
+    WriteQueue writes = queue;
+    return breaker.isOpen() || (writes != null && !writes.isEmpty());
+  }
+
+  public void recordFailure(Throwable ex) {
+    if (breaker.recordFailure()) {
+      Metrics.increment("database.outages");
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING,
+          "Database unavailable, serving teams from memory and queuing writes", ex);
+    }
+  }
+
+  // Runs on an async timer: checks the connection when the breaker lets it,
+  // and replays the queued writes once the database is back
+  public void check(TeamRepository repository) {
+    if (!checking.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      if (breaker.allowRequest()) {
+        try {
+          repository.ping();
+          if (breaker.recordSuccess()) {
+            FluffyTeams.getInstance().getLogger().info("Database available again, replaying "
+                + (queue == null ? 0 : queue.size()) + " queued writes");
+          }
+        } catch (RuntimeException ex) {
+          recordFailure(ex);
+        }
+      }
+
+      WriteQueue writes = queue;
+      Runnable replay = replayer;
+      if (isAvailable() && writes != null && !writes.isEmpty() && replay != null) {
+        replay.run();
+      }
+
+      Metrics.set("database.available", isAvailable() ? 1 : 0);
+      Metrics.set("database.write_queue", writes == null ? 0 : writes.size());
+    } finally {
+      checking.set(false);
+    }
+  }
+}
@@ -1,42 +1,256 @@
 package fr.fluffevent.fluffyteams.database;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
 
 import com.dieselpoint.norm.Database;
 
 import fr.fluffevent.fluffyteams.Config;
 import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.models.database.Change;
 import fr.fluffevent.fluffyteams.models.database.Member;
 import fr.fluffevent.fluffyteams.models.database.Spawn;
 import fr.fluffevent.fluffyteams.models.database.Team;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisConnectionException;
 
 public class DatabaseManager {
 
-  private static Database database;
+  private static final int WARM_UP_FETCH_SIZE = 500;
+  private static final int SQLITE_CONSTRAINT = 19;
+
+  // Changes are kept long enough for any running server to apply them, a
+  // server (re)starting loads the tables instead
+  private static final long CHANGE_RETENTION_MS = 24 * 60 * 60 * 1000L;
+  private static final long CHANGE_PRUNE_INTERVAL_TICKS = 60 * 60 * 20L;
+
+  private static final long HEALTH_CHECK_INTERVAL_TICKS = 20;
+
+  // Older snapshots may miss pruned changes. Changes logged shortly before a
+  // snapshot are applied again on load, in case their version was read
+  // before they were committed.
+  private static final long SNAPSHOT_MAX_AGE_MS = CHANGE_RETENTION_MS / 2;
+  private static final long SNAPSHOT_OVERLAP_MS = 10_000;
+
+  private static TransactionalDatabase database;
+  private static volatile TeamRepository repository;
+  private static volatile CacheSnapshot snapshot;
+  private static final TeamCache cache = new TeamCache();
+  private static final ChangeFeed changeFeed = new ChangeFeed(cache);
+  private static final DatabaseHealth health = new DatabaseHealth();
+  private static volatile CompletableFuture<Void> ready = new CompletableFuture<>();
+
+  // Connection setup, schema checks and warm-up can take seconds on a remote
+  // database, so only the (lazy) connection pool is created on the calling
+  // thread. Listeners and commands check isReady() and fall back until the
+  // returned future completes.
+  public static CompletableFuture<Void> connect() {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    ready = future;
+
+    FluffyTeams plugin = FluffyTeams.getInstance();
+    if (Config.writeQueueSize > 0) {
+      WriteQueue queue = new WriteQueue(new File(plugin.getDataFolder(), "pending-writes.log").toPath(),
+          Config.writeQueueSize);
+      try {
+        int restored = queue.load();
+        if (restored > 0) {
+          plugin.getLogger().info(restored + " writes made while the database was unavailable will be replayed");
+        }
+      } catch (IOException ex) {
+        plugin.getLogger().log(Level.SEVERE, "Couldn't load the writes queued during the last database outage", ex);
+      }
+      health.setQueue(queue);
+    }
 
-  public static void connect() {
-    database = new Database();
-    database.setJdbcUrl(Config.databaseUri);
+    if (isRedisStorage()) {
+      // Controllers keep the repository they are created with, so it must
+      // exist before the connection does
+      RedisTeamRepository redis = new RedisTeamRepository(RedisManager::getConnection, changeFeed);
+      repository = new ProfiledTeamRepository(redis, "redis");
+      Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> connectRedis(redis, future));
+      return future;
+    }
+
+    if (isSqlite()) {
+      database = new SqliteDatabase();
+      database.setJdbcUrl(SqliteDatabase.withPragmas(Config.databaseUri));
+    } else if (Config.databaseReplicaUri != null && !Config.databaseReplicaUri.isEmpty()) {
+      database = new ReplicatedDatabase(Config.databaseReplicaUri);
+      database.setJdbcUrl(Config.databaseUri);
+    } else {
+      database = new TransactionalDatabase();
+      database.setJdbcUrl(Config.databaseUri);
+    }
 
     database.setUser(Config.databaseUsername);
     database.setPassword(Config.databasePassword);
+    repository = new ProfiledTeamRepository(new SqlTeamRepository(database, changeFeed), null);
+
+    Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+      try {
+        long start = System.nanoTime();
+
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        classes.add(Team.class);
+        classes.add(Spawn.class);
+        classes.add(Member.class);
+        classes.add(Change.class);
+        createStructure(classes);
+        migrate();
+
+        // Snapshots need the change feed to catch up on what changed since
+        if (Config.changeFeed && Config.snapshotInterval > 0) {
+          snapshot = new CacheSnapshot(new File(plugin.getDataFolder(), "cache-snapshot.bin").toPath(),
+              Config.databaseUri, Config.serverName);
+        }
+        if (!restoreSnapshot()) {
+          if (Config.changeFeed) {
+            changeFeed.start(database);
+          }
+          warmUp();
+          plugin.getLogger().info("Connected to database and loaded " + cache.getTeams().size() + " teams in "
+              + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } else {
+          int changes = changeFeed.poll();
+          plugin.getLogger().info("Connected to database and loaded " + cache.getTeams().size()
+              + " teams from the snapshot and " + changes + " changes in " + (System.nanoTime() - start) / 1_000_000
+              + " ms");
+        }
+        future.complete(null);
+
+        if (snapshot != null) {
+          long interval = Config.snapshotInterval * 20;
+          Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, DatabaseManager::saveSnapshot, interval, interval);
+        }
+
+        // Also replays the writes restored from the queue file
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> health.check(repository),
+            HEALTH_CHECK_INTERVAL_TICKS, HEALTH_CHECK_INTERVAL_TICKS);
+
+        if (changeFeed.isEnabled()) {
+          long interval = Math.max(1, Config.changeFeedInterval);
+          Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            if (health.isAvailable()) {
+              changeFeed.poll();
+            }
+          }, interval, interval);
+          Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            if (health.isAvailable()) {
+              changeFeed.prune(CHANGE_RETENTION_MS);
+            }
+          }, CHANGE_PRUNE_INTERVAL_TICKS, CHANGE_PRUNE_INTERVAL_TICKS);
+        }
+      } catch (Exception ex) {
+        plugin.getLogger().log(Level.SEVERE, "Failed to connect to database", ex);
+        future.completeExceptionally(ex);
+      }
+    });
+
+    return future;
+  }
 
-    List<Class<?>> classes = new ArrayList<Class<?>>();
-    classes.add(Team.class);
-    classes.add(Spawn.class);
-    classes.add(Member.class);
-    createStructure(classes);
+  // Teams are kept in Redis instead of a SQL database. Other servers' writes
+  // are received on a channel rather than polled from the change log.
+  // Nothing is received while the subscription is down, so the cache is
+  // loaded again once it is back.
+  private static void connectRedis(RedisTeamRepository redis, CompletableFuture<Void> future) {
+    FluffyTeams plugin = FluffyTeams.getInstance();
+    try {
+      long start = System.nanoTime();
+      if (!RedisManager.connect()) {
+        throw new IllegalStateException("storage is set to redis but Redis is unavailable, check redis-uri");
+      }
 
-    FluffyTeams
-        .getInstance()
-        .getLogger()
-        .info("Connected to database!");
+      // Before loading, so that no change made in the meantime is missed
+      RedisManager.subscribe(RedisTeamRepository.CHANGES_CHANNEL, changeFeed::apply,
+          () -> Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> reload(redis)));
+      warmUp(redis);
+
+      plugin.getLogger().info("Connected to Redis and loaded " + cache.getTeams().size() + " teams in "
+          + (System.nanoTime() - start) / 1_000_000 + " ms");
+      future.complete(null);
+
+      Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> health.check(redis),
+          HEALTH_CHECK_INTERVAL_TICKS, HEALTH_CHECK_INTERVAL_TICKS);
+    } catch (Exception ex) {
+      plugin.getLogger().log(Level.SEVERE, "Failed to load teams from Redis", ex);
+      future.completeExceptionally(ex);
+    }
+  }
+
+  // Loads the cache from the last snapshot and resumes the change feed from
+  // it, instead of loading the tables. Returns false if there's no usable
+  // snapshot, the cache must be loaded from the tables then.
+  private static boolean restoreSnapshot() {
+    CacheSnapshot current = snapshot;
+    if (current == null) {
+      return false;
+    }
+
+    Logger logger = FluffyTeams.getInstance().getLogger();
+    try {
+      CacheSnapshot.Info info = current.load(cache, SNAPSHOT_MAX_AGE_MS);
+      if (info == null) {
+        return false;
+      }
+      if (!changeFeed.resume(database, info.changeVersion, info.createdAt - SNAPSHOT_OVERLAP_MS)) {
+        logger.info("The snapshot is ahead of the database, loading teams from the database");
+        return false;
+      }
+    } catch (IOException | SQLException | RuntimeException ex) {
+      logger.log(Level.WARNING, "Couldn't load the snapshot, loading teams from the database", ex);
+      return false;
+    }
+
+    cache.markReady();
+    return true;
+  }
+
+  // Writes the cache to the snapshot file. Skipped while the database is
+  // unavailable, the cache may hold writes the database doesn't have yet.
+  public static void saveSnapshot() {
+    CacheSnapshot current = snapshot;
+    if (current == null || !isReady() || !changeFeed.isEnabled() || health.isDegraded()) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    try {
+      current.write(cache, changeFeed.getVersion());
+      Metrics.increment("snapshot.writes");
+      Metrics.set("snapshot.write_ms", (System.nanoTime() - start) / 1_000_000);
+    } catch (IOException | RuntimeException ex) {
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Failed to write the cache snapshot", ex);
+    }
   }
 
   public static void createStructure(List<Class<?>> classes) {
+    List<String> queries = new ArrayList<>();
+
     Iterator<Class<?>> it = classes.iterator();
     while (it.hasNext()) {
       Class<?> classToCreate = it.next();
@@ -45,24 +259,254 @@ public class DatabaseManager {
         // Try to access custom table SQL creation if exists
         Constructor<?> ctor = classToCreate.getConstructor();
         Object object = ctor.newInstance(new Object[] {});
-        sqlCreationQuery = (String) classToCreate.getDeclaredField("sqlCreationQuery").get(object);
+        String field = isSqlite() ? "sqliteCreationQuery" : "sqlCreationQuery";
+        sqlCreationQuery = (String) classToCreate.getDeclaredField(field).get(object);
       } catch (Exception ex) {
         // Auto generate the query if missing
         sqlCreationQuery = database.getSqlMaker().getCreateTableSql(classToCreate);
       }
 
       // Patch to avoid exceptions
-      sqlCreationQuery = sqlCreationQuery.replace("create table", "create table if not exists");
+      queries.add(sqlCreationQuery.replace("create table", "create table if not exists"));
+    }
 
-      try {
-        database.sql(sqlCreationQuery).execute();
-      } catch (Exception ex) {
-        ex.printStackTrace();
+    // Send every statement over a single connection instead of one round trip
+    // (and one pooled connection checkout) per table
+    try (Connection connection = database.getConnection();
+        Statement statement = connection.createStatement()) {
+      for (String query : queries) {
+        statement.addBatch(query);
+      }
+      statement.executeBatch();
+    } catch (SQLException batchEx) {
+      // Some drivers refuse DDL in batches, retry one by one
+      for (String query : queries) {
+        try {
+          database.sql(query).execute();
+        } catch (Exception ex) {
+          FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Couldn't create table with " + query, ex);
+        }
+      }
+    }
+  }
+
+  // Brings tables created by older versions up to date
+  public static void migrate() {
+    // A player can only be in one team, let the database enforce it
+    ensureUniqueIndex("fluffy_members", "fluffy_members_player_uuid", "player_uuid");
+
+    ensureColumn("fluffy_teams", "max_size", "int NOT NULL DEFAULT 0");
+  }
+
+  private static void ensureColumn(String table, String column, String definition) {
+    try (Connection connection = database.getConnection()) {
+      try (ResultSet rs = connection.getMetaData().getColumns(null, null, table, column)) {
+        if (rs.next()) {
+          return;
+        }
+      }
+
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("alter table `" + table + "` add column `" + column + "` " + definition);
       }
+    } catch (SQLException ex) {
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Couldn't add column " + column + " to " + table, ex);
     }
   }
 
+  private static void ensureUniqueIndex(String table, String index, String column) {
+    try (Connection connection = database.getConnection()) {
+      try (ResultSet rs = connection.getMetaData().getIndexInfo(null, null, table, true, false)) {
+        while (rs.next()) {
+          if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+            return;
+          }
+        }
+      }
+
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("create unique index `" + index + "` on `" + table + "` (`" + column + "`)");
+      }
+    } catch (SQLException ex) {
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Couldn't add unique index " + index + " on " + table
+          + ", remove duplicate " + column + " rows and restart", ex);
+    }
+  }
+
+  // Loads each table with a single forward-only query straight into the cache.
+  // Always reads from the primary, see ChangeFeed.start().
+  public static void warmUp() {
+    cache.clear();
+
+    stream("select `id`, `name`, `display_name`, `max_size` from `fluffy_teams`", rs -> {
+      Team team = new Team();
+      team.id = rs.getLong("id");
+      team.name = rs.getString("name");
+      team.displayName = rs.getString("display_name");
+      team.maxSize = rs.getInt("max_size");
+      return team;
+    }, cache::putTeam);
+
+    stream("select `id`, `team_id`, `player_uuid` from `fluffy_members`", rs -> {
+      Member member = new Member();
+      member.id = rs.getLong("id");
+      member.teamId = rs.getLong("team_id");
+      member.playerUuid = rs.getString("player_uuid");
+      return member;
+    }, cache::putMember);
+
+    stream("select `id`, `team_id`, `server`, `world`, `x`, `y`, `z`, `yaw`, `pitch` from `fluffy_spawns` where `server` = ?",
+        rs -> {
+          Spawn spawn = new Spawn();
+          spawn.id = rs.getLong("id");
+          spawn.teamId = rs.getLong("team_id");
+          spawn.server = rs.getString("server");
+          spawn.world = rs.getString("world");
+          spawn.x = rs.getDouble("x");
+          spawn.y = rs.getDouble("y");
+          spawn.z = rs.getDouble("z");
+          spawn.yaw = rs.getFloat("yaw");
+          spawn.pitch = rs.getFloat("pitch");
+          return spawn;
+        }, cache::putSpawn, Config.serverName);
+
+    cache.markReady();
+  }
+
+  // Loads the cache from Redis again after the subscription was down. Reads
+  // go to Redis until it's done
+  private static void reload(RedisTeamRepository redis) {
+    FluffyTeams plugin = FluffyTeams.getInstance();
+    try {
+      long start = System.nanoTime();
+      warmUp(redis);
+      Metrics.increment("redis.reloads");
+      plugin.getLogger().info("Reconnected to Redis, reloaded " + cache.getTeams().size() + " teams in "
+          + (System.nanoTime() - start) / 1_000_000 + " ms to catch up on the changes missed meanwhile");
+    } catch (RuntimeException ex) {
+      plugin.getLogger().log(Level.SEVERE, "Failed to reload teams from Redis after a reconnection, teams may be "
+          + "out of date until the next reconnection or restart", ex);
+    }
+  }
+
+  // Same as warmUp() from Redis, which can't stream rows but reads them all
+  // in a few pipelined round trips
+  private static void warmUp(RedisTeamRepository redis) {
+    cache.clear();
+    redis.load(Config.serverName, cache::putTeam, cache::putMember, cache::putSpawn);
+    cache.markReady();
+  }
+
+  private static <T> void stream(String sql, RowMapper<T> mapper, Consumer<T> consumer, Object... args) {
+    try (Connection connection = database.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+            ResultSet.CONCUR_READ_ONLY)) {
+      statement.setFetchSize(isMysql() ? Integer.MIN_VALUE : WARM_UP_FETCH_SIZE);
+      for (int i = 0; i < args.length; i++) {
+        statement.setObject(i + 1, args[i]);
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          consumer.accept(mapper.map(rs));
+        }
+      }
+    } catch (SQLException ex) {
+      throw new IllegalStateException("Failed to load " + sql, ex);
+    }
+  }
+
+  // Unique/primary key violations, reported differently by each driver
+  public static boolean isConstraintViolation(Throwable ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLIntegrityConstraintViolationException) {
+        return true;
+      }
+      if (cause instanceof SQLException) {
+        SQLException sqlEx = (SQLException) cause;
+        if (sqlEx.getSQLState() != null && sqlEx.getSQLState().startsWith("23")) {
+          return true;
+        }
+        // sqlite-jdbc has no SQL state, only the (extended) SQLITE_CONSTRAINT code
+        if (isSqlite() && (sqlEx.getErrorCode() & 0xff) == SQLITE_CONSTRAINT) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // Lost or refused connections (to the database or to Redis), as opposed to
+  // errors in the query itself
+  public static boolean isConnectionFailure(Throwable ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException
+          || cause instanceof SQLRecoverableException || cause instanceof SocketException
+          || cause instanceof SocketTimeoutException || cause instanceof RedisConnectionException
+          || cause instanceof RedisCommandTimeoutException) {
+        return true;
+      }
+      if (cause instanceof SQLException) {
+        String state = ((SQLException) cause).getSQLState();
+        if (state != null && state.startsWith("08")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public static void disconnect() {
+    saveSnapshot();
+    changeFeed.stop();
+    if (database instanceof SqliteDatabase) {
+      ((SqliteDatabase) database).shutdown();
+    }
+  }
+
+  public static boolean isRedisStorage() {
+    return "redis".equalsIgnoreCase(Config.storage);
+  }
+
+  public static boolean isSqlite() {
+    return Config.databaseUri != null && Config.databaseUri.startsWith("jdbc:sqlite:");
+  }
+
+  // MySQL Connector/J only streams rows when the fetch size is Integer.MIN_VALUE
+  private static boolean isMysql() {
+    return Config.databaseUri != null && Config.databaseUri.startsWith("jdbc:mysql:");
+  }
+
+  // Null when teams are stored in Redis
   public static Database getDatabase() {
     return database;
   }
+
+  public static TeamRepository getRepository() {
+    return repository;
+  }
+
+  public static TeamCache getCache() {
+    return cache;
+  }
+
+  public static ChangeFeed getChangeFeed() {
+    return changeFeed;
+  }
+
+  public static DatabaseHealth getHealth() {
+    return health;
+  }
+
+  public static boolean isReady() {
+    return ready.isDone() && !ready.isCompletedExceptionally();
+  }
+
+  public static CompletableFuture<Void> whenReady() {
+    return ready;
+  }
+
+  @FunctionalInterface
+  private interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+  }
 }
@@ -0,0 +1,178 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+
+/**
+ * Short-lease locks kept in Redis, serializing changes to the same key (e.g.
+ * a player UUID) across servers. A lease expires on its own, so a server that
+ * stops while holding one only blocks the key for LEASE_MS.
+ * Each lease gets a fencing token from a counter that only goes up, issued
+ * by the same script that takes the lock so that tokens follow the order of
+ * the holders. Holders call Lease.fence() right before writing: once a newer
+ * holder has fenced, a holder whose lease expired in the meantime (e.g.
+ * during a long pause) is rejected instead of overwriting the newer change.
+ * While Redis fails, leases are skipped and the store's constraints are the
+ * only protection, see TeamRepository.insertMember().
+ */
+public class LeaseLock {
+
+  public static final long LEASE_MS = 5_000;
+  // Some changes are made on the main thread, never wait long for a lease
+  private static final long WAIT_MS = 1_000;
+  private static final long MIN_RETRY_MS = 5;
+  private static final long MAX_RETRY_MS = 100;
+  // Long enough for any holder of an older token to have given up
+  private static final long FENCE_TTL_MS = 12 * LEASE_MS;
+
+  private static final String PREFIX = "fluffyteams:lock:";
+  private static final String TOKENS = "fluffyteams:fence-tokens";
+  private static final String FENCE_PREFIX = "fluffyteams:fence:";
+
+  // Takes the lock, then issues the next fencing token, so tokens go to
+  // holders in the order they took the lock. Returns 0 if it's held
+  private static final String ACQUIRE = "if not redis.call('set', KEYS[1], ARGV[1], 'nx', 'px', ARGV[2]) then "
+      + "return 0 end return redis.call('incr', KEYS[2])";
+
+  // Only deletes the lock if this lease still holds it
+  private static final String RELEASE = "if redis.call('get', KEYS[1]) == ARGV[1] then "
+      + "return redis.call('del', KEYS[1]) end return 0";
+
+  // Records the token unless a newer one was recorded already
+  private static final String FENCE = "local fenced = tonumber(redis.call('get', KEYS[1]) or '0') "
+      + "if tonumber(ARGV[1]) < fenced then return 0 end "
+      + "redis.call('set', KEYS[1], ARGV[1], 'px', ARGV[2]) return 1";
+
+  private final StatefulRedisConnection<String, String> connection;
+
+  public LeaseLock(StatefulRedisConnection<String, String> connection) {
+    this.connection = connection;
+  }
+
+  // Blocks while another server holds the lease, throws IllegalStateException
+  // if it isn't released in time. Returns null if Redis fails.
+  public Lease acquire(String name) {
+    String key = PREFIX + name;
+    long start = System.currentTimeMillis();
+    try {
+      String holder = UUID.randomUUID().toString();
+      long retry = MIN_RETRY_MS;
+      boolean contended = false;
+      long token;
+      while ((token = connection.sync().<Long>eval(ACQUIRE, ScriptOutputType.INTEGER,
+          new String[] { key, TOKENS }, holder, String.valueOf(LEASE_MS))) == 0) {
+        if (!contended) {
+          contended = true;
+          Metrics.increment("locks.contended");
+        }
+        if (System.currentTimeMillis() - start + retry > WAIT_MS) {
+          Metrics.increment("locks.timeouts");
+          throw new IllegalStateException("Another server is changing this player's team, try again");
+        }
+        Thread.sleep(retry);
+        retry = Math.min(retry * 2, MAX_RETRY_MS);
+      }
+
+      Metrics.increment("locks.acquired");
+      if (contended) {
+        Metrics.add("locks.wait_ms", System.currentTimeMillis() - start);
+      }
+      return new Lease(name, holder, token);
+    } catch (RedisException ex) {
+      skip("take the lease of " + name, ex);
+      return null;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the lease of " + name, ex);
+    }
+  }
+
+  // Takes the leases of several keys in a fixed order, so that servers taking
+  // overlapping sets can't deadlock each other. Null leases are left out.
+  public List<Lease> acquireAll(Collection<String> names) {
+    List<Lease> leases = new ArrayList<>();
+    try {
+      for (String name : new TreeSet<>(names)) {
+        Lease lease = acquire(name);
+        if (lease != null) {
+          leases.add(lease);
+        }
+      }
+    } catch (RuntimeException ex) {
+      releaseAll(leases);
+      throw ex;
+    }
+    return leases;
+  }
+
+  public static void releaseAll(Collection<Lease> leases) {
+    leases.forEach(Lease::release);
+  }
+
+  // Redis failing must not block changes, the store's constraints still apply
+  private static void skip(String action, RedisException ex) {
+    Metrics.increment("locks.skipped");
+    FluffyTeams.getInstance().getLogger().log(Level.FINE, "Couldn't " + action + ", going ahead without it", ex);
+  }
+
+  /**
+   * Lock held on a key until released or LEASE_MS after it was taken.
+   */
+  public class Lease {
+
+    private final String name;
+    // Value of the lock while this lease holds it
+    private final String holder;
+    private final long token;
+
+    private Lease(String name, String holder, long token) {
+      this.name = name;
+      this.holder = holder;
+      this.token = token;
+    }
+
+    public long getToken() {
+      return token;
+    }
+
+    // Throws IllegalStateException if a newer holder of the key has fenced
+    public void fence() {
+      boolean current;
+      try {
+        current = connection.sync().eval(FENCE, ScriptOutputType.BOOLEAN, new String[] { FENCE_PREFIX + name },
+            String.valueOf(token), String.valueOf(FENCE_TTL_MS));
+      } catch (RedisException ex) {
+        skip("check the fencing token of " + name, ex);
+        return;
+      }
+
+      if (!current) {
+        Metrics.increment("locks.fenced");
+        throw new IllegalStateException("Another server changed this player's team in the meantime, try again");
+      }
+    }
+
+    public void release() {
+      try {
+        long deleted = connection.sync().eval(RELEASE, ScriptOutputType.INTEGER, new String[] { PREFIX + name },
+            holder);
+        if (deleted == 0) {
+          // Expired before being released, another server may have changed the key meanwhile
+          Metrics.increment("locks.expired");
+        }
+      } catch (RedisException ex) {
+        skip("release the lease of " + name, ex);
+      }
+    }
+  }
+}
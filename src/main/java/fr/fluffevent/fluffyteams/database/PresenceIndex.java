@@ -0,0 +1,138 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+/**
+ * Online team members of the whole network, kept in Redis.
+ * Each team has a sorted set of the UUIDs of its online members, scored with
+ * the time they were last seen. Servers add their players on join, remove
+ * them on quit and refresh them with a heartbeat, so the players of a server
+ * that stopped without cleaning up expire on their own. Counting or listing
+ * the online members of a team is a single read. Every call waits for Redis,
+ * keep them off the main thread.
+ */
+public class PresenceIndex {
+
+  public static final long HEARTBEAT_MS = 10_000;
+  // Missing three heartbeats in a row means the server is gone
+  public static final long TTL_MS = 3 * HEARTBEAT_MS;
+
+  private static final String KEY_PREFIX = "fluffyteams:online:";
+
+  private final StatefulRedisConnection<String, String> connection;
+  private final LongSupplier clock;
+
+  public PresenceIndex(StatefulRedisConnection<String, String> connection) {
+    this(connection, System::currentTimeMillis);
+  }
+
+  public PresenceIndex(StatefulRedisConnection<String, String> connection, LongSupplier clock) {
+    this.connection = connection;
+    this.clock = clock;
+  }
+
+  public void online(long teamId, String playerUuid) {
+    MainThreadWatchdog.checkBlocking("redis");
+    String key = key(teamId);
+    RedisAsyncCommands<String, String> redis = connection.async();
+    await(redis.zadd(key, (double) clock.getAsLong(), playerUuid), redis.pexpire(key, TTL_MS));
+  }
+
+  public void offline(long teamId, String playerUuid) {
+    MainThreadWatchdog.checkBlocking("redis");
+    connection.sync().zrem(key(teamId), playerUuid);
+  }
+
+  // Refreshes the online players of this server, by team, and drops the
+  // players no server has seen lately. Sent as one pipeline.
+  public void heartbeat(Map<Long, ? extends Collection<String>> online) {
+    MainThreadWatchdog.checkBlocking("redis");
+    long now = clock.getAsLong();
+    Range<Double> stale = Range.from(Range.Boundary.unbounded(), Range.Boundary.excluding((double) (now - TTL_MS)));
+
+    RedisAsyncCommands<String, String> redis = connection.async();
+    List<RedisFuture<?>> futures = new ArrayList<>();
+    online.forEach((teamId, players) -> {
+      if (players.isEmpty()) {
+        return;
+      }
+
+      Object[] scoresAndValues = new Object[players.size() * 2];
+      int i = 0;
+      for (String player : players) {
+        scoresAndValues[i++] = (double) now;
+        scoresAndValues[i++] = player;
+      }
+
+      // A team whose members all left expires with its set
+      String key = key(teamId);
+      futures.add(redis.zadd(key, scoresAndValues));
+      futures.add(redis.zremrangebyscore(key, stale));
+      futures.add(redis.pexpire(key, TTL_MS));
+    });
+    await(futures.toArray(new RedisFuture<?>[0]));
+  }
+
+  // Removes the players of this server at once, e.g. when it stops
+  public void offline(Map<Long, ? extends Collection<String>> online) {
+    MainThreadWatchdog.checkBlocking("redis");
+    RedisAsyncCommands<String, String> redis = connection.async();
+    List<RedisFuture<?>> futures = new ArrayList<>();
+    online.forEach((teamId, players) -> {
+      if (!players.isEmpty()) {
+        futures.add(redis.zrem(key(teamId), players.toArray(new String[0])));
+      }
+    });
+    await(futures.toArray(new RedisFuture<?>[0]));
+  }
+
+  public Set<String> getOnline(long teamId) {
+    MainThreadWatchdog.checkBlocking("redis");
+    return new HashSet<>(connection.sync().zrangebyscore(key(teamId), alive()));
+  }
+
+  // Online member count of each team, in one round trip
+  public Map<Long, Long> countOnline(Collection<Long> teamIds) {
+    MainThreadWatchdog.checkBlocking("redis");
+    RedisAsyncCommands<String, String> redis = connection.async();
+    Range<Double> alive = alive();
+    Map<Long, RedisFuture<Long>> futures = new HashMap<>();
+    for (long teamId : teamIds) {
+      futures.put(teamId, redis.zcount(key(teamId), alive));
+    }
+    await(futures.values().toArray(new RedisFuture<?>[0]));
+
+    Map<Long, Long> counts = new HashMap<>();
+    futures.forEach((teamId, future) -> counts.put(teamId, future.toCompletableFuture().join()));
+    return counts;
+  }
+
+  private Range<Double> alive() {
+    return Range.from(Range.Boundary.including((double) (clock.getAsLong() - TTL_MS)), Range.Boundary.unbounded());
+  }
+
+  private void await(RedisFuture<?>... futures) {
+    if (futures.length > 0 && !LettuceFutures.awaitAll(connection.getTimeout(), futures)) {
+      throw new RedisCommandTimeoutException("Redis commands timed out after " + connection.getTimeout());
+    }
+  }
+
+  private static String key(long teamId) {
+    return KEY_PREFIX + teamId;
+  }
+}
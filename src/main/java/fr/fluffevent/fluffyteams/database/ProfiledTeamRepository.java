@@ -0,0 +1,161 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+import fr.fluffevent.fluffyteams.utils.SlowOperationLog;
+
+/**
+ * TeamRepository that records each call of another one as a Java Flight
+ * Recorder event (fluffyteams.DatabaseCall), with the operation, the table
+ * and the number of rows. When no recording is running, the events are
+ * never committed and cost next to nothing.
+ * Stores that don't go through JDBC, whose queries are logged on their own,
+ * also have their slow calls logged to the SlowOperationLog here.
+ */
+public class ProfiledTeamRepository implements TeamRepository {
+
+  private static final String TEAMS = "fluffy_teams";
+  private static final String MEMBERS = "fluffy_members";
+  private static final String SPAWNS = "fluffy_spawns";
+
+  private final TeamRepository store;
+  // Kind of the store in the slow operation log, null to leave it out
+  private final String slowLogKind;
+
+  public ProfiledTeamRepository(TeamRepository store, String slowLogKind) {
+    this.store = store;
+    this.slowLogKind = slowLogKind;
+  }
+
+  @Override
+  public List<Team> findTeams() {
+    return record("findTeams", TEAMS, store::findTeams, List::size);
+  }
+
+  @Override
+  public Team findTeam(String name) {
+    return record("findTeam", TEAMS, () -> store.findTeam(name), ProfiledTeamRepository::count, name);
+  }
+
+  @Override
+  public Team findTeam(long id) {
+    return record("findTeam", TEAMS, () -> store.findTeam(id), ProfiledTeamRepository::count, id);
+  }
+
+  @Override
+  public void insertTeam(Team team) {
+    record("insertTeam", TEAMS, () -> store.insertTeam(team), team.name);
+  }
+
+  @Override
+  public void updateTeam(Team team) {
+    record("updateTeam", TEAMS, () -> store.updateTeam(team), team.id);
+  }
+
+  @Override
+  public void deleteTeam(Team team) {
+    record("deleteTeam", TEAMS, () -> store.deleteTeam(team), team.id);
+  }
+
+  @Override
+  public Member findMember(String playerUuid) {
+    return record("findMember", MEMBERS, () -> store.findMember(playerUuid), ProfiledTeamRepository::count,
+        playerUuid);
+  }
+
+  @Override
+  public List<Member> findMembers(long teamId) {
+    return record("findMembers", MEMBERS, () -> store.findMembers(teamId), List::size, teamId);
+  }
+
+  @Override
+  public int countMembers(long teamId) {
+    return record("countMembers", MEMBERS, () -> store.countMembers(teamId), count -> 1, teamId);
+  }
+
+  @Override
+  public boolean insertMember(Member member) {
+    return record("insertMember", MEMBERS, () -> store.insertMember(member), inserted -> inserted ? 1 : 0,
+        member.teamId, member.playerUuid);
+  }
+
+  @Override
+  public void deleteMember(Member member) {
+    record("deleteMember", MEMBERS, () -> store.deleteMember(member), member.playerUuid);
+  }
+
+  @Override
+  public List<Spawn> findSpawns(long teamId, String server) {
+    return record("findSpawns", SPAWNS, () -> store.findSpawns(teamId, server), List::size, teamId, server);
+  }
+
+  @Override
+  public void saveSpawn(Spawn spawn) {
+    record("saveSpawn", SPAWNS, () -> store.saveSpawn(spawn), spawn.id, spawn.teamId);
+  }
+
+  @Override
+  public void deleteSpawn(Spawn spawn) {
+    record("deleteSpawn", SPAWNS, () -> store.deleteSpawn(spawn), spawn.id);
+  }
+
+  // The calls made inside are recorded on their own
+  @Override
+  public void inTransaction(Runnable work) {
+    store.inTransaction(work);
+  }
+
+  @Override
+  public <T> T onPrimary(Supplier<T> read) {
+    return store.onPrimary(read);
+  }
+
+  @Override
+  public void ping() {
+    store.ping();
+  }
+
+  private <T> T record(String operation, String table, Supplier<T> call, ToIntFunction<T> rows,
+      Object... params) {
+    DatabaseCallEvent event = new DatabaseCallEvent();
+    event.begin();
+    long start = System.nanoTime();
+    T result = null;
+    boolean failed = true;
+    try {
+      result = call.get();
+      failed = false;
+      return result;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = operation;
+        event.table = table;
+        event.rows = failed ? 0 : rows.applyAsInt(result);
+        event.failed = failed;
+        event.commit();
+      }
+      if (slowLogKind != null && SlowOperationLog.isEnabled()) {
+        SlowOperationLog.record(slowLogKind, operation + " " + table, params,
+            failed ? -1 : rows.applyAsInt(result), System.nanoTime() - start);
+      }
+    }
+  }
+
+  // Writes of a single row
+  private void record(String operation, String table, Runnable call, Object... params) {
+    record(operation, table, () -> {
+      call.run();
+      return null;
+    }, result -> 1, params);
+  }
+
+  private static int count(Object row) {
+    return row == null ? 0 : 1;
+  }
+}
@@ -0,0 +1,137 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import fr.fluffevent.fluffyteams.Config;
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+
+/**
+ * Optional Redis connection, shared by the features that span servers.
+ * Lettuce connections are thread-safe and reconnect on their own, so every
+ * thread uses the same connection.
+ */
+public class RedisManager {
+
+  // Some reads happen on the main thread, never wait long for Redis
+  private static final Duration COMMAND_TIMEOUT = Duration.ofSeconds(1);
+
+  private static RedisClient client;
+  private static volatile StatefulRedisConnection<String, String> connection;
+  private static StatefulRedisPubSubConnection<String, String> pubSub;
+  private static volatile PresenceIndex presence;
+  private static volatile LeaseLock locks;
+
+  // Blocks until connected, call it asynchronously. Redis features stay
+  // disabled if the connection fails. Connects once, later calls return
+  // whether that connection succeeded.
+  public static synchronized boolean connect() {
+    if (connection != null) {
+      return true;
+    }
+    if (!isConfigured()) {
+      return false;
+    }
+
+    RedisURI uri = RedisURI.create(Config.redisUri);
+    uri.setTimeout(COMMAND_TIMEOUT);
+    client = RedisClient.create(uri);
+    try {
+      connection = client.connect();
+    } catch (RedisException ex) {
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING,
+          "Failed to connect to Redis, cross-server features are disabled", ex);
+      client.shutdown();
+      client = null;
+      return false;
+    }
+
+    presence = new PresenceIndex(connection);
+    locks = new LeaseLock(connection);
+    return true;
+  }
+
+  // Subscriptions need a connection of their own, shared by every channel.
+  // Messages are delivered on a Lettuce thread. Lettuce subscribes again
+  // after a reconnection, resubscribed then runs (on a Lettuce thread too)
+  // as the messages published while disconnected were lost.
+  public static synchronized void subscribe(String channel, Consumer<String> listener, Runnable resubscribed) {
+    if (client == null) {
+      throw new IllegalStateException("Redis is not connected");
+    }
+    if (pubSub == null) {
+      pubSub = client.connectPubSub();
+    }
+
+    pubSub.addListener(new RedisPubSubAdapter<String, String>() {
+      private final AtomicBoolean subscribed = new AtomicBoolean();
+
+      @Override
+      public void subscribed(String subscribedChannel, long count) {
+        if (channel.equals(subscribedChannel) && subscribed.getAndSet(true)) {
+          resubscribed.run();
+        }
+      }
+
+      @Override
+      public void message(String messageChannel, String message) {
+        if (!channel.equals(messageChannel)) {
+          return;
+        }
+        try {
+          listener.accept(message);
+        } catch (RuntimeException ex) {
+          FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Failed to handle a message on " + channel, ex);
+        }
+      }
+    });
+    pubSub.sync().subscribe(channel);
+  }
+
+  public static synchronized void disconnect() {
+    presence = null;
+    locks = null;
+    if (pubSub != null) {
+      pubSub.close();
+      pubSub = null;
+    }
+    if (connection != null) {
+      connection.close();
+      connection = null;
+    }
+    if (client != null) {
+      client.shutdown();
+      client = null;
+    }
+  }
+
+  public static boolean isConfigured() {
+    return Config.redisUri != null && !Config.redisUri.isEmpty();
+  }
+
+  public static boolean isEnabled() {
+    return connection != null;
+  }
+
+  public static StatefulRedisConnection<String, String> getConnection() {
+    return connection;
+  }
+
+  // Null while Redis is disabled
+  public static PresenceIndex getPresence() {
+    return presence;
+  }
+
+  // Null while Redis is disabled
+  public static LeaseLock getLocks() {
+    return locks;
+  }
+}
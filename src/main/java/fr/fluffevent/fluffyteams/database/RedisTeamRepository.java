@@ -0,0 +1,413 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+/**
+ * Team repository kept in Redis, for networks that don't run a SQL database.
+ * Teams and spawns are hashes, members are a single player UUID to team ID
+ * hash (so a player is in one team at most) and each team has sets of its
+ * member UUIDs and spawn IDs. Writes are published to the other servers on a
+ * channel instead of being logged, see ChangeFeed.apply(String).
+ * Each write is a Lua script, which Redis runs atomically together with the
+ * publication of the change. Redis has no rollback though, the writes of a
+ * transaction are applied one by one.
+ */
+public class RedisTeamRepository implements TeamRepository {
+
+  public static final String CHANGES_CHANNEL = "fluffyteams:changes";
+
+  private static final String PREFIX = "fluffyteams:";
+  private static final String TEAM_IDS = PREFIX + "ids:team";
+  private static final String SPAWN_IDS = PREFIX + "ids:spawn";
+  private static final String TEAMS_BY_NAME = PREFIX + "teams";
+  private static final String MEMBERS = PREFIX + "members";
+  private static final String SPAWN_PREFIX = PREFIX + "spawn:";
+
+  // The scripts get the channel and the change to publish as ARGV[1] and
+  // ARGV[2], see write()
+
+  // KEYS: team, names. ARGV: name, ID, then the fields of the team
+  private static final String INSERT_TEAM = "redis.call('hset', KEYS[1], unpack(ARGV, 5)) "
+      + "redis.call('hset', KEYS[2], ARGV[3], ARGV[4]) "
+      + "redis.call('publish', ARGV[1], ARGV[2]) return 1";
+
+  // KEYS: team. ARGV: the fields of the team
+  private static final String UPDATE_TEAM = "redis.call('hset', KEYS[1], unpack(ARGV, 3)) "
+      + "redis.call('publish', ARGV[1], ARGV[2]) return 1";
+
+  // KEYS: members, names, team, roster, spawns. ARGV: ID, name, spawn key
+  // prefix. Players who moved to another team in the meantime keep their
+  // membership, and a new team with the same name keeps it
+  private static final String DELETE_TEAM = "for _, player in ipairs(redis.call('smembers', KEYS[4])) do "
+      + "if redis.call('hget', KEYS[1], player) == ARGV[3] then redis.call('hdel', KEYS[1], player) end end "
+      + "for _, spawn in ipairs(redis.call('smembers', KEYS[5])) do redis.call('del', ARGV[5] .. spawn) end "
+      + "if redis.call('hget', KEYS[2], ARGV[4]) == ARGV[3] then redis.call('hdel', KEYS[2], ARGV[4]) end "
+      + "redis.call('del', KEYS[3], KEYS[4], KEYS[5]) "
+      + "redis.call('publish', ARGV[1], ARGV[2]) return 1";
+
+  // KEYS: members, roster. ARGV: player UUID, team ID. HSETNX is the unique
+  // constraint: only one server can add the player
+  private static final String INSERT_MEMBER = "if redis.call('hsetnx', KEYS[1], ARGV[3], ARGV[4]) == 0 then "
+      + "return 0 end "
+      + "redis.call('sadd', KEYS[2], ARGV[3]) "
+      + "redis.call('publish', ARGV[1], ARGV[2]) return 1";
+
+  // KEYS: members, roster. ARGV: player UUID, team ID
+  private static final String DELETE_MEMBER = "if redis.call('hget', KEYS[1], ARGV[3]) == ARGV[4] then "
+      + "redis.call('hdel', KEYS[1], ARGV[3]) end "
+      + "redis.call('srem', KEYS[2], ARGV[3]) "
+      + "redis.call('publish', ARGV[1], ARGV[2]) return 1";
+
+  // KEYS: spawn, spawns of the team. ARGV: ID, then the fields of the spawn
+  private static final String SAVE_SPAWN = "redis.call('hset', KEYS[1], unpack(ARGV, 4)) "
+      + "redis.call('sadd', KEYS[2], ARGV[3]) "
+      + "redis.call('publish', ARGV[1], ARGV[2]) return 1";
+
+  // KEYS: spawn, spawns of the team. ARGV: ID
+  private static final String DELETE_SPAWN = "redis.call('del', KEYS[1]) "
+      + "redis.call('srem', KEYS[2], ARGV[3]) "
+      + "redis.call('publish', ARGV[1], ARGV[2]) return 1";
+
+  private final Supplier<StatefulRedisConnection<String, String>> connection;
+  private final ChangeFeed changes;
+  // SHA1 digest of each write script loaded in Redis
+  private final Map<String, String> digests = new ConcurrentHashMap<>();
+
+  public RedisTeamRepository(StatefulRedisConnection<String, String> connection, ChangeFeed changes) {
+    this(() -> connection, changes);
+  }
+
+  // The connection is looked up on each call, so the repository can be
+  // created before Redis is connected. Calls fail like a lost connection
+  // until then.
+  public RedisTeamRepository(Supplier<StatefulRedisConnection<String, String>> connection, ChangeFeed changes) {
+    this.connection = connection;
+    this.changes = changes;
+  }
+
+  @Override
+  public List<Team> findTeams() {
+    List<Long> ids = new ArrayList<>();
+    connection().sync().hgetall(TEAMS_BY_NAME).values().forEach(id -> ids.add(Long.parseLong(id)));
+
+    List<Team> teams = new ArrayList<>();
+    for (Map<String, String> hash : getAll(ids, RedisTeamRepository::teamKey)) {
+      if (!hash.isEmpty()) {
+        teams.add(toTeam(hash));
+      }
+    }
+    teams.sort(Comparator.comparingLong(team -> team.id));
+    return teams;
+  }
+
+  @Override
+  public Team findTeam(String name) {
+    String id = connection().sync().hget(TEAMS_BY_NAME, name);
+    return id == null ? null : findTeam(Long.parseLong(id));
+  }
+
+  @Override
+  public Team findTeam(long id) {
+    Map<String, String> hash = connection().sync().hgetall(teamKey(id));
+    return hash.isEmpty() ? null : toTeam(hash);
+  }
+
+  @Override
+  public void insertTeam(Team team) {
+    team.id = connection().sync().incr(TEAM_IDS);
+    write(INSERT_TEAM, keys(teamKey(team.id), TEAMS_BY_NAME), ChangeFeed.TEAM, ChangeFeed.UPSERT, team,
+        fields(toHash(team), team.name, String.valueOf(team.id)));
+  }
+
+  @Override
+  public void updateTeam(Team team) {
+    write(UPDATE_TEAM, keys(teamKey(team.id)), ChangeFeed.TEAM, ChangeFeed.UPSERT, team, fields(toHash(team)));
+  }
+
+  // Spawn keys are built by the script, fine on the single server this
+  // store runs on
+  @Override
+  public void deleteTeam(Team team) {
+    write(DELETE_TEAM, keys(MEMBERS, TEAMS_BY_NAME, teamKey(team.id), rosterKey(team.id), spawnsKey(team.id)),
+        ChangeFeed.TEAM, ChangeFeed.DELETE, team, String.valueOf(team.id), team.name, SPAWN_PREFIX);
+  }
+
+  @Override
+  public Member findMember(String playerUuid) {
+    String teamId = connection().sync().hget(MEMBERS, playerUuid);
+    return teamId == null ? null : toMember(Long.parseLong(teamId), playerUuid);
+  }
+
+  // Members have no ID of their own here, the player UUID identifies them
+  @Override
+  public List<Member> findMembers(long teamId) {
+    List<Member> members = new ArrayList<>();
+    for (String playerUuid : connection().sync().smembers(rosterKey(teamId))) {
+      members.add(toMember(teamId, playerUuid));
+    }
+    members.sort(Comparator.comparing(member -> member.playerUuid));
+    return members;
+  }
+
+  @Override
+  public int countMembers(long teamId) {
+    return connection().sync().scard(rosterKey(teamId)).intValue();
+  }
+
+  @Override
+  public boolean insertMember(Member member) {
+    return write(INSERT_MEMBER, keys(MEMBERS, rosterKey(member.teamId)), ChangeFeed.MEMBER, ChangeFeed.UPSERT,
+        member, member.playerUuid, String.valueOf(member.teamId)) == 1;
+  }
+
+  @Override
+  public void deleteMember(Member member) {
+    write(DELETE_MEMBER, keys(MEMBERS, rosterKey(member.teamId)), ChangeFeed.MEMBER, ChangeFeed.DELETE, member,
+        member.playerUuid, String.valueOf(member.teamId));
+  }
+
+  @Override
+  public List<Spawn> findSpawns(long teamId, String server) {
+    List<Long> ids = new ArrayList<>();
+    connection().sync().smembers(spawnsKey(teamId)).forEach(id -> ids.add(Long.parseLong(id)));
+
+    List<Spawn> spawns = new ArrayList<>();
+    for (Map<String, String> hash : getAll(ids, RedisTeamRepository::spawnKey)) {
+      if (!hash.isEmpty() && server.equals(hash.get("server"))) {
+        spawns.add(toSpawn(hash));
+      }
+    }
+    spawns.sort(Comparator.comparingLong(spawn -> spawn.id));
+    return spawns;
+  }
+
+  @Override
+  public void saveSpawn(Spawn spawn) {
+    if (spawn.id <= 0) {
+      spawn.id = connection().sync().incr(SPAWN_IDS);
+    }
+
+    write(SAVE_SPAWN, keys(spawnKey(spawn.id), spawnsKey(spawn.teamId)), ChangeFeed.SPAWN, ChangeFeed.UPSERT,
+        spawn, fields(toHash(spawn), String.valueOf(spawn.id)));
+  }
+
+  @Override
+  public void deleteSpawn(Spawn spawn) {
+    write(DELETE_SPAWN, keys(spawnKey(spawn.id), spawnsKey(spawn.teamId)), ChangeFeed.SPAWN, ChangeFeed.DELETE,
+        spawn, String.valueOf(spawn.id));
+  }
+
+  /**
+   * Reads every team, with its members and its spawns on a server, in a few
+   * pipelined round trips however many teams there are.
+   *
+   * @param server  The server to read the spawns of
+   * @param teams   Given each team, before its members
+   * @param members Given each member
+   * @param spawns  Given each spawn, once every team was given
+   */
+  public void load(String server, Consumer<Team> teams, Consumer<Member> members, Consumer<Spawn> spawns) {
+    List<Team> found = findTeams();
+
+    RedisAsyncCommands<String, String> redis = connection().async();
+    List<RedisFuture<Set<String>>> rosters = new ArrayList<>(found.size());
+    List<RedisFuture<Set<String>>> spawnSets = new ArrayList<>(found.size());
+    for (Team team : found) {
+      rosters.add(redis.smembers(rosterKey(team.id)));
+      spawnSets.add(redis.smembers(spawnsKey(team.id)));
+    }
+    List<RedisFuture<?>> futures = new ArrayList<>(rosters);
+    futures.addAll(spawnSets);
+    await(futures.toArray(new RedisFuture<?>[0]));
+
+    List<Long> spawnIds = new ArrayList<>();
+    for (int i = 0; i < found.size(); i++) {
+      Team team = found.get(i);
+      teams.accept(team);
+      for (String playerUuid : rosters.get(i).toCompletableFuture().join()) {
+        members.accept(toMember(team.id, playerUuid));
+      }
+      spawnSets.get(i).toCompletableFuture().join().forEach(id -> spawnIds.add(Long.parseLong(id)));
+    }
+
+    for (Map<String, String> hash : getAll(spawnIds, RedisTeamRepository::spawnKey)) {
+      if (!hash.isEmpty() && server.equals(hash.get("server"))) {
+        spawns.accept(toSpawn(hash));
+      }
+    }
+  }
+
+  @Override
+  public void inTransaction(Runnable work) {
+    work.run();
+  }
+
+  // A single Redis server, every read sees the latest writes
+  @Override
+  public <T> T onPrimary(Supplier<T> read) {
+    return read.get();
+  }
+
+  @Override
+  public void ping() {
+    connection().sync().ping();
+  }
+
+  // Reads many hashes in one round trip, in the order of the IDs
+  private List<Map<String, String>> getAll(List<Long> ids, LongFunction<String> key) {
+    RedisAsyncCommands<String, String> redis = connection().async();
+    List<RedisFuture<Map<String, String>>> futures = new ArrayList<>(ids.size());
+    for (long id : ids) {
+      futures.add(redis.hgetall(key.apply(id)));
+    }
+    await(futures.toArray(new RedisFuture<?>[0]));
+
+    List<Map<String, String>> hashes = new ArrayList<>(futures.size());
+    futures.forEach(future -> hashes.add(future.toCompletableFuture().join()));
+    return hashes;
+  }
+
+  // Runs a write script, which publishes the change of the row once done.
+  // Scripts are sent once and then run by their digest, Redis forgets them
+  // on restart though and gets the whole script again then.
+  private long write(String script, String[] keys, String entity, String operation, Object row,
+      String... args) {
+    String[] values = new String[args.length + 2];
+    values[0] = CHANGES_CHANNEL;
+    values[1] = changes.encode(entity, operation, row);
+    System.arraycopy(args, 0, values, 2, args.length);
+
+    RedisCommands<String, String> redis = connection().sync();
+    String digest = digests.computeIfAbsent(script, redis::scriptLoad);
+    try {
+      return redis.evalsha(digest, ScriptOutputType.INTEGER, keys, values);
+    } catch (RedisNoScriptException ex) {
+      return redis.eval(script, ScriptOutputType.INTEGER, keys, values);
+    }
+  }
+
+  private static String[] keys(String... keys) {
+    return keys;
+  }
+
+  // The given arguments followed by the fields and values of a hash
+  private static String[] fields(Map<String, String> hash, String... args) {
+    List<String> values = new ArrayList<>(Arrays.asList(args));
+    hash.forEach((field, value) -> {
+      values.add(field);
+      values.add(value);
+    });
+    return values.toArray(new String[0]);
+  }
+
+  private void await(RedisFuture<?>... futures) {
+    Duration timeout = connection().getTimeout();
+    if (futures.length > 0 && !LettuceFutures.awaitAll(timeout, futures)) {
+      throw new RedisCommandTimeoutException("Redis commands timed out after " + timeout);
+    }
+  }
+
+  private StatefulRedisConnection<String, String> connection() {
+    StatefulRedisConnection<String, String> current = connection.get();
+    if (current == null) {
+      throw new RedisConnectionException("Redis isn't connected yet");
+    }
+    return current;
+  }
+
+  private static String teamKey(long id) {
+    return PREFIX + "team:" + id;
+  }
+
+  private static String rosterKey(long teamId) {
+    return PREFIX + "roster:" + teamId;
+  }
+
+  private static String spawnKey(long id) {
+    return SPAWN_PREFIX + id;
+  }
+
+  private static String spawnsKey(long teamId) {
+    return PREFIX + "spawns:" + teamId;
+  }
+
+  private static Map<String, String> toHash(Team team) {
+    Map<String, String> hash = new HashMap<>();
+    hash.put("id", String.valueOf(team.id));
+    hash.put("name", team.name);
+    // Redis has no null values, a missing field reads back as null
+    if (team.displayName != null) {
+      hash.put("display_name", team.displayName);
+    }
+    hash.put("max_size", String.valueOf(team.maxSize));
+    return hash;
+  }
+
+  private static Team toTeam(Map<String, String> hash) {
+    Team team = new Team();
+    team.id = Long.parseLong(hash.get("id"));
+    team.name = hash.get("name");
+    team.displayName = hash.get("display_name");
+    team.maxSize = Integer.parseInt(hash.getOrDefault("max_size", "0"));
+    return team;
+  }
+
+  private static Member toMember(long teamId, String playerUuid) {
+    Member member = new Member();
+    member.teamId = teamId;
+    member.playerUuid = playerUuid;
+    return member;
+  }
+
+  private static Map<String, String> toHash(Spawn spawn) {
+    Map<String, String> hash = new HashMap<>();
+    hash.put("id", String.valueOf(spawn.id));
+    hash.put("team_id", String.valueOf(spawn.teamId));
+    hash.put("server", spawn.server);
+    hash.put("world", spawn.world);
+    hash.put("x", Double.toString(spawn.x));
+    hash.put("y", Double.toString(spawn.y));
+    hash.put("z", Double.toString(spawn.z));
+    hash.put("yaw", Float.toString(spawn.yaw));
+    hash.put("pitch", Float.toString(spawn.pitch));
+    return hash;
+  }
+
+  private static Spawn toSpawn(Map<String, String> hash) {
+    Spawn spawn = new Spawn();
+    spawn.id = Long.parseLong(hash.get("id"));
+    spawn.teamId = Long.parseLong(hash.get("team_id"));
+    spawn.server = hash.get("server");
+    spawn.world = hash.get("world");
+    spawn.x = Double.parseDouble(hash.get("x"));
+    spawn.y = Double.parseDouble(hash.get("y"));
+    spawn.z = Double.parseDouble(hash.get("z"));
+    spawn.yaw = Float.parseFloat(hash.get("yaw"));
+    spawn.pitch = Float.parseFloat(hash.get("pitch"));
+    return spawn;
+  }
+}
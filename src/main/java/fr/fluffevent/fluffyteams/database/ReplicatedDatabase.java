@@ -0,0 +1,187 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.dieselpoint.norm.Database;
+import com.dieselpoint.norm.DbException;
+import com.dieselpoint.norm.Query;
+
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+
+/**
+ * Database that sends reads to a read replica and everything else to the
+ * primary.
+ * Reads (where, results, first and select statements) go to the replica,
+ * unless they run inside a transaction, inside onPrimary(), or shortly after
+ * this server wrote something, so that a server always sees its own writes.
+ * When the replica can't be reached, reads fall back to the primary and the
+ * replica is left alone for a while before being tried again.
+ */
+public class ReplicatedDatabase extends TransactionalDatabase {
+
+  // Longer than the replication lag we expect, reads after a write stay on
+  // the primary until the replica has caught up
+  private static final long READ_YOUR_WRITES_MS = 5_000;
+  private static final long REPLICA_RETRY_MS = 30_000;
+
+  private final Replica replica = new Replica();
+  private final ThreadLocal<Boolean> pinned = new ThreadLocal<>();
+
+  private volatile long lastWrite;
+  private volatile long replicaDownUntil;
+
+  public ReplicatedDatabase(String replicaUri) {
+    replica.setJdbcUrl(replicaUri);
+  }
+
+  @Override
+  public void setUser(String user) {
+    super.setUser(user);
+    replica.setUser(user);
+  }
+
+  @Override
+  public void setPassword(String password) {
+    super.setPassword(password);
+    replica.setPassword(password);
+  }
+
+  /**
+   * Runs reads that must see the latest writes (e.g. checks before a write)
+   * on the primary.
+   *
+   * @param work The reads to run
+   * @return The value returned by the work
+   */
+  public <T> T onPrimary(Supplier<T> work) {
+    if (pinned.get() != null) {
+      return work.get();
+    }
+
+    pinned.set(Boolean.TRUE);
+    try {
+      return work.get();
+    } finally {
+      pinned.remove();
+    }
+  }
+
+  /**
+   * Gets a connection for reads that don't need to see this server's latest
+   * writes, from the replica when it's available.
+   *
+   * @return A connection to the replica, or to the primary
+   */
+  @Override
+  public Connection getReadConnection() {
+    return useReplica() ? replica.getConnection() : getConnection();
+  }
+
+  @Override
+  public <T> T inTransaction(Supplier<T> work) {
+    try {
+      return super.inTransaction(work);
+    } finally {
+      lastWrite = System.currentTimeMillis();
+    }
+  }
+
+  @Override
+  public Query where(String where, Object... args) {
+    return useReplica() ? replica.where(where, args) : super.where(where, args);
+  }
+
+  @Override
+  public Query sql(String sql, Object... args) {
+    if (isSelect(sql) && useReplica()) {
+      return replica.sql(sql, args);
+    }
+    return super.sql(sql, args);
+  }
+
+  @Override
+  public <T> List<T> results(Class<T> clazz) {
+    return useReplica() ? replica.results(clazz) : super.results(clazz);
+  }
+
+  @Override
+  public <T> T first(Class<T> clazz) {
+    return useReplica() ? replica.first(clazz) : super.first(clazz);
+  }
+
+  @Override
+  public Query insert(Object row) {
+    try {
+      return super.insert(row);
+    } finally {
+      lastWrite = System.currentTimeMillis();
+    }
+  }
+
+  @Override
+  public Query update(Object row) {
+    try {
+      return super.update(row);
+    } finally {
+      lastWrite = System.currentTimeMillis();
+    }
+  }
+
+  @Override
+  public Query upsert(Object row) {
+    try {
+      return super.upsert(row);
+    } finally {
+      lastWrite = System.currentTimeMillis();
+    }
+  }
+
+  @Override
+  public Query delete(Object row) {
+    try {
+      return super.delete(row);
+    } finally {
+      lastWrite = System.currentTimeMillis();
+    }
+  }
+
+  public boolean isReplicaAvailable() {
+    return System.currentTimeMillis() >= replicaDownUntil;
+  }
+
+  private boolean useReplica() {
+    long now = System.currentTimeMillis();
+    return getCurrentTransaction() == null
+        && pinned.get() == null
+        && now - lastWrite >= READ_YOUR_WRITES_MS
+        && now >= replicaDownUntil;
+  }
+
+  private static boolean isSelect(String sql) {
+    String trimmed = sql.stripLeading();
+    return trimmed.regionMatches(true, 0, "select", 0, 6);
+  }
+
+  // Queries built on the replica get their connection here, so a replica
+  // that can't be reached is replaced by the primary transparently
+  private class Replica extends Database {
+    @Override
+    public Connection getConnection() {
+      MainThreadWatchdog.checkBlocking("jdbc");
+      try {
+        return TimedConnection.wrap(super.getConnection());
+      } catch (DbException ex) {
+        if (isReplicaAvailable()) {
+          FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Read replica unavailable, reading from the "
+              + "primary for the next " + REPLICA_RETRY_MS / 1000 + " seconds", ex);
+        }
+        replicaDownUntil = System.currentTimeMillis() + REPLICA_RETRY_MS;
+        return ReplicatedDatabase.this.getConnection();
+      }
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import com.dieselpoint.norm.Database;
+import com.dieselpoint.norm.DbException;
+
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Team repository on top of a SQL database, through norm.
+ * Each write is recorded in the change feed within the same transaction.
+ */
+public class SqlTeamRepository implements TeamRepository {
+
+  private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+  private final Database db;
+  private final ChangeFeed changes;
+
+  public SqlTeamRepository(Database db, ChangeFeed changes) {
+    this.db = db;
+    this.changes = changes;
+  }
+
+  @Override
+  public List<Team> findTeams() {
+    return sorted(db.results(Team.class), team -> team.id);
+  }
+
+  @Override
+  public Team findTeam(String name) {
+    return first(db.where("name = ?", name).results(Team.class));
+  }
+
+  @Override
+  public Team findTeam(long id) {
+    return first(db.where("id = ?", id).results(Team.class));
+  }
+
+  @Override
+  public void insertTeam(Team team) {
+    inTransaction(() -> {
+      db.insert(team);
+      changes.record(ChangeFeed.TEAM, ChangeFeed.UPSERT, team);
+    });
+  }
+
+  @Override
+  public void updateTeam(Team team) {
+    inTransaction(() -> {
+      db.update(team);
+      changes.record(ChangeFeed.TEAM, ChangeFeed.UPSERT, team);
+    });
+  }
+
+  // Other servers drop the members and spawns of the team from their cache
+  // along with the team
+  @Override
+  public void deleteTeam(Team team) {
+    inTransaction(() -> {
+      db.sql("delete from fluffy_members where team_id = ?", team.id).execute();
+      db.sql("delete from fluffy_spawns where team_id = ?", team.id).execute();
+      db.delete(team);
+      changes.record(ChangeFeed.TEAM, ChangeFeed.DELETE, team);
+    });
+  }
+
+  @Override
+  public Member findMember(String playerUuid) {
+    return first(db.where("player_uuid = ?", playerUuid).results(Member.class));
+  }
+
+  @Override
+  public List<Member> findMembers(long teamId) {
+    return sorted(db.where("team_id = ?", teamId).results(Member.class), member -> member.id);
+  }
+
+  @Override
+  public int countMembers(long teamId) {
+    Long count = db.sql("select count(*) from fluffy_members where team_id = ?", teamId).first(Long.class);
+    return count == null ? 0 : count.intValue();
+  }
+
+  // The unique index on player_uuid rejects the insert if the player is
+  // already in a team, the failed statement doesn't abort the transaction
+  @Override
+  public boolean insertMember(Member member) {
+    try {
+      inTransaction(() -> {
+        db.insert(member);
+        changes.record(ChangeFeed.MEMBER, ChangeFeed.UPSERT, member);
+      });
+      return true;
+    } catch (DbException ex) {
+      if (DatabaseManager.isConstraintViolation(ex)) {
+        return false;
+      }
+      throw ex;
+    }
+  }
+
+  @Override
+  public void deleteMember(Member member) {
+    inTransaction(() -> {
+      db.delete(member);
+      changes.record(ChangeFeed.MEMBER, ChangeFeed.DELETE, member);
+    });
+  }
+
+  @Override
+  public List<Spawn> findSpawns(long teamId, String server) {
+    return sorted(db.where("team_id = ? AND server = ?", teamId, server).results(Spawn.class), spawn -> spawn.id);
+  }
+
+  @Override
+  public void saveSpawn(Spawn spawn) {
+    inTransaction(() -> {
+      if (spawn.id <= 0) {
+        db.insert(spawn);
+      } else {
+        db.update(spawn);
+      }
+      changes.record(ChangeFeed.SPAWN, ChangeFeed.UPSERT, spawn);
+    });
+  }
+
+  @Override
+  public void deleteSpawn(Spawn spawn) {
+    inTransaction(() -> {
+      db.delete(spawn);
+      changes.record(ChangeFeed.SPAWN, ChangeFeed.DELETE, spawn);
+    });
+  }
+
+  @Override
+  public void inTransaction(Runnable work) {
+    if (db instanceof TransactionalDatabase) {
+      ((TransactionalDatabase) db).runInTransaction(work);
+    } else {
+      work.run();
+    }
+  }
+
+  @Override
+  public <T> T onPrimary(Supplier<T> read) {
+    if (db instanceof ReplicatedDatabase) {
+      return ((ReplicatedDatabase) db).onPrimary(read);
+    }
+    return read.get();
+  }
+
+  @Override
+  public void ping() {
+    try (Connection connection = db.getConnection()) {
+      if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+        throw new DbException("Connection is not valid");
+      }
+    } catch (SQLException ex) {
+      throw new DbException(ex);
+    }
+  }
+
+  private static <T> T first(List<T> results) {
+    return results.isEmpty() ? null : results.get(0);
+  }
+
+  private static <T> List<T> sorted(List<T> results, ToLongFunction<T> id) {
+    List<T> list = new ArrayList<>(results);
+    list.sort(Comparator.comparingLong(id));
+    return list;
+  }
+}
@@ -0,0 +1,215 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.dieselpoint.norm.DbException;
+import com.dieselpoint.norm.Query;
+import com.dieselpoint.norm.Transaction;
+
+/**
+ * SQLite flavour of the database.
+ * SQLite only allows one writer at a time, so every write is funneled through
+ * a single dedicated thread that commits queued writes in batches. Reads keep
+ * using their own pooled connections, which WAL mode lets run concurrently
+ * with the writer.
+ */
+public class SqliteDatabase extends TransactionalDatabase {
+
+  private static final int MAX_BATCH_SIZE = 256;
+
+  // Applied through the JDBC URL so every pooled connection gets them
+  private static final String[][] PRAGMAS = {
+      { "journal_mode", "WAL" },
+      { "synchronous", "NORMAL" },
+      { "cache_size", "-16000" },
+      { "busy_timeout", "5000" },
+  };
+
+  private final BlockingQueue<WriteTask<?>> queue = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  private volatile boolean running = true;
+
+  public SqliteDatabase() {
+    writer = new Thread(this::runWriter, "FluffyTeams SQLite writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Adds the WAL and cache pragmas to a SQLite JDBC URL, keeping any value
+   * already set by the user.
+   *
+   * @param uri The configured JDBC URL
+   * @return The URL with the default pragmas
+   */
+  public static String withPragmas(String uri) {
+    StringBuilder builder = new StringBuilder(uri);
+    for (String[] pragma : PRAGMAS) {
+      if (uri.contains(pragma[0] + "=")) {
+        continue;
+      }
+      builder.append(builder.indexOf("?") == -1 ? '?' : '&');
+      builder.append(pragma[0]).append('=').append(pragma[1]);
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public <T> T inTransaction(Supplier<T> work) {
+    // Already on the writer, join the batch transaction
+    if (Thread.currentThread() == writer) {
+      return super.inTransaction(work);
+    }
+
+    if (!running) {
+      throw new DbException("SQLite writer is shut down");
+    }
+
+    WriteTask<T> task = new WriteTask<>(work);
+    queue.add(task);
+    return task.join();
+  }
+
+  @Override
+  public Query insert(Object row) {
+    return inTransaction(() -> super.insert(row));
+  }
+
+  @Override
+  public Query update(Object row) {
+    return inTransaction(() -> super.update(row));
+  }
+
+  @Override
+  public Query upsert(Object row) {
+    return inTransaction(() -> super.upsert(row));
+  }
+
+  @Override
+  public Query delete(Object row) {
+    return inTransaction(() -> super.delete(row));
+  }
+
+  /**
+   * Stops accepting writes, flushes the queued ones and waits for the writer
+   * thread to exit.
+   */
+  public void shutdown() {
+    running = false;
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runWriter() {
+    List<WriteTask<?>> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    while (running || !queue.isEmpty()) {
+      try {
+        WriteTask<?> first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+        runBatch(batch);
+      } catch (InterruptedException ex) {
+        running = false;
+      } finally {
+        batch.clear();
+      }
+    }
+
+    List<WriteTask<?>> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    remaining.forEach(task -> task.fail(new DbException("SQLite writer is shut down")));
+  }
+
+  // One commit for the whole batch. Each write gets its own savepoint so a
+  // failing write (e.g. a constraint violation) doesn't undo the others.
+  private void runBatch(List<WriteTask<?>> batch) {
+    Transaction trans;
+    try {
+      trans = startTransaction();
+    } catch (RuntimeException ex) {
+      batch.forEach(task -> task.fail(ex));
+      return;
+    }
+
+    bind(trans);
+    try {
+      Connection connection = trans.getConnection();
+      for (WriteTask<?> task : batch) {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+          task.run();
+          connection.releaseSavepoint(savepoint);
+        } catch (RuntimeException ex) {
+          connection.rollback(savepoint);
+          task.failure = ex;
+        }
+      }
+      trans.commit();
+      batch.forEach(WriteTask::complete);
+    } catch (SQLException | RuntimeException ex) {
+      try {
+        trans.rollback();
+      } catch (RuntimeException rollbackEx) {
+        ex.addSuppressed(rollbackEx);
+      }
+      RuntimeException failure = ex instanceof RuntimeException ? (RuntimeException) ex : new DbException(ex);
+      batch.forEach(task -> task.fail(failure));
+    } finally {
+      unbind();
+    }
+  }
+
+  private static class WriteTask<T> {
+    private final Supplier<T> work;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private T result;
+    private RuntimeException failure;
+
+    WriteTask(Supplier<T> work) {
+      this.work = work;
+    }
+
+    void run() {
+      result = work.get();
+    }
+
+    void complete() {
+      if (failure != null) {
+        future.completeExceptionally(failure);
+      } else {
+        future.complete(result);
+      }
+    }
+
+    void fail(RuntimeException ex) {
+      future.completeExceptionally(ex);
+    }
+
+    T join() {
+      try {
+        return future.join();
+      } catch (CompletionException ex) {
+        if (ex.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) ex.getCause();
+        }
+        throw ex;
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Store of teams, members and spawns, used by TeamController for every read
+ * that misses the cache and every write.
+ * Every implementation has the same semantics: team and spawn IDs are
+ * assigned on insert and listed in order, a player is a member of one team at
+ * most, and deleting a team deletes its members and spawns. Each write is
+ * published to the other servers so they can update their cache. Failures
+ * are reported as runtime exceptions, see DatabaseManager.isConnectionFailure().
+ */
+public interface TeamRepository {
+
+  List<Team> findTeams();
+
+  // Null if no team has this name
+  Team findTeam(String name);
+
+  // Null if no team has this ID
+  Team findTeam(long id);
+
+  // Assigns the ID of the team, the caller makes sure the name is free
+  void insertTeam(Team team);
+
+  void updateTeam(Team team);
+
+  // Also deletes the members and the spawns (on every server) of the team
+  void deleteTeam(Team team);
+
+  // Null if the player isn't in a team
+  Member findMember(String playerUuid);
+
+  List<Member> findMembers(long teamId);
+
+  int countMembers(long teamId);
+
+  // Returns false, without writing anything, if the player is already in a
+  // team (possibly added by another server)
+  boolean insertMember(Member member);
+
+  void deleteMember(Member member);
+
+  List<Spawn> findSpawns(long teamId, String server);
+
+  // Inserts the spawn if it has no ID yet (0 or a temporary negative ID),
+  // updates it otherwise
+  void saveSpawn(Spawn spawn);
+
+  void deleteSpawn(Spawn spawn);
+
+  // Runs several writes atomically when the store supports it, nested calls
+  // join the outer one
+  void inTransaction(Runnable work);
+
+  // Runs reads that decide a write against the latest state of the store,
+  // e.g. not on a read replica
+  <T> T onPrimary(Supplier<T> read);
+
+  // Throws if the store can't be reached
+  void ping();
+}
@@ -0,0 +1,200 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.fluffevent.fluffyteams.utils.SlowOperationLog;
+
+/**
+ * JDBC connection that times the statements run through it and reports them
+ * to the SlowOperationLog, with their SQL, parameters and number of rows.
+ * A query is timed from its execution until its results are closed, so
+ * fetching large results counts too. Connections are only wrapped while the
+ * slow operation log is enabled.
+ */
+public class TimedConnection {
+
+  // Wraps a connection, or returns it as is if the slow operation log is
+  // disabled
+  public static Connection wrap(Connection connection) {
+    if (connection == null || !SlowOperationLog.isEnabled()) {
+      return connection;
+    }
+    return proxy(Connection.class, new ConnectionHandler(connection));
+  }
+
+  private static <T> T proxy(Class<T> type, Handler<?> handler) {
+    return type.cast(Proxy.newProxyInstance(TimedConnection.class.getClassLoader(), new Class<?>[] { type },
+        handler));
+  }
+
+  // Forwards every call to the wrapped object
+  private abstract static class Handler<T> implements InvocationHandler {
+
+    protected final T target;
+
+    Handler(T target) {
+      this.target = target;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getName().equals("equals") && args != null && args.length == 1) {
+        return proxy == args[0];
+      }
+      if (method.getName().equals("hashCode") && args == null) {
+        return System.identityHashCode(proxy);
+      }
+      return handle(method, args);
+    }
+
+    protected Object handle(Method method, Object[] args) throws Throwable {
+      return forward(method, args);
+    }
+
+    protected Object forward(Method method, Object[] args) throws Throwable {
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException ex) {
+        throw ex.getCause();
+      }
+    }
+  }
+
+  private static class ConnectionHandler extends Handler<Connection> {
+
+    ConnectionHandler(Connection connection) {
+      super(connection);
+    }
+
+    @Override
+    protected Object handle(Method method, Object[] args) throws Throwable {
+      Object result = forward(method, args);
+      if (method.getName().equals("prepareStatement")) {
+        return proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+      }
+      if (method.getName().equals("createStatement")) {
+        return proxy(Statement.class, new StatementHandler((Statement) result, null));
+      }
+      return result;
+    }
+  }
+
+  private static class StatementHandler extends Handler<Statement> {
+
+    // Null for plain statements, which get their SQL on execution
+    private final String sql;
+    private final List<Object> params = new ArrayList<>();
+    private ResultSetHandler results;
+
+    StatementHandler(Statement statement, String sql) {
+      super(statement);
+      this.sql = sql;
+    }
+
+    @Override
+    protected Object handle(Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (sql != null && name.startsWith("set") && args != null && args.length >= 2
+          && args[0] instanceof Integer) {
+        setParam((Integer) args[0], name.equals("setNull") ? null : args[1]);
+      } else if (name.equals("clearParameters")) {
+        params.clear();
+      } else if (name.equals("close") && results != null) {
+        // Closing the statement closes its results
+        results.finish();
+      }
+
+      if (!name.startsWith("execute")) {
+        return forward(method, args);
+      }
+
+      String query = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+      Object[] values = sql == null ? null : params.toArray();
+      long start = System.nanoTime();
+      Object result = null;
+      try {
+        result = forward(method, args);
+      } finally {
+        if (!(result instanceof ResultSet)) {
+          SlowOperationLog.record("jdbc", query, values, rows(result), System.nanoTime() - start);
+        }
+      }
+
+      if (!(result instanceof ResultSet)) {
+        return result;
+      }
+      results = new ResultSetHandler((ResultSet) result, query, values, start);
+      return proxy(ResultSet.class, results);
+    }
+
+    private void setParam(int index, Object value) {
+      while (params.size() < index) {
+        params.add(null);
+      }
+      params.set(index - 1, value);
+    }
+
+    private static int rows(Object result) {
+      if (result instanceof Integer) {
+        return (Integer) result;
+      }
+      if (result instanceof Long) {
+        return (int) (long) (Long) result;
+      }
+      if (result instanceof int[]) {
+        int rows = 0;
+        for (int count : (int[]) result) {
+          rows += Math.max(count, 0);
+        }
+        return rows;
+      }
+      return -1;
+    }
+  }
+
+  private static class ResultSetHandler extends Handler<ResultSet> {
+
+    private final String query;
+    private final Object[] params;
+    private final long start;
+    private int rows;
+    private boolean finished;
+
+    ResultSetHandler(ResultSet results, String query, Object[] params, long start) {
+      super(results);
+      this.query = query;
+      this.params = params;
+      this.start = start;
+    }
+
+    @Override
+    protected Object handle(Method method, Object[] args) throws Throwable {
+      if (method.getName().equals("close")) {
+        finish();
+        return forward(method, args);
+      }
+
+      Object result = forward(method, args);
+      if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+        rows++;
+      }
+      return result;
+    }
+
+    void finish() {
+      if (!finished) {
+        finished = true;
+        SlowOperationLog.record("jdbc", query, params, rows, System.nanoTime() - start);
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.dieselpoint.norm.Database;
+import com.dieselpoint.norm.Query;
+import com.dieselpoint.norm.Transaction;
+
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+
+/**
+ * norm Database that can bind a transaction to the current thread.
+ * While a transaction is bound, the usual shorthand calls (insert, update,
+ * delete, where, ...) run inside it, so callers don't have to thread the
+ * Transaction object through every query.
+ */
+public class TransactionalDatabase extends Database {
+
+  private final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+  /**
+   * Runs the given work inside a transaction and commits it.
+   * Nested calls join the transaction already bound to the thread.
+   *
+   * @param work The work to run
+   * @return The value returned by the work
+   */
+  public <T> T inTransaction(Supplier<T> work) {
+    if (current.get() != null) {
+      return work.get();
+    }
+
+    Transaction trans = startTransaction();
+    current.set(trans);
+    try {
+      T result = work.get();
+      trans.commit();
+      return result;
+    } catch (RuntimeException ex) {
+      trans.rollback();
+      throw ex;
+    } finally {
+      current.remove();
+    }
+  }
+
+  /**
+   * Runs the given work inside a transaction and commits it.
+   *
+   * @param work The work to run
+   */
+  public void runInTransaction(Runnable work) {
+    inTransaction(() -> {
+      work.run();
+      return null;
+    });
+  }
+
+  /**
+   * Gets a connection to the database. Queries and transactions get theirs
+   * here, so a query made on the main thread is reported to the watchdog, and
+   * slow queries to the slow operation log.
+   *
+   * @return A connection to the database
+   */
+  @Override
+  public Connection getConnection() {
+    MainThreadWatchdog.checkBlocking("jdbc");
+    return TimedConnection.wrap(super.getConnection());
+  }
+
+  /**
+   * Gets a connection for reads that don't need to see this server's latest
+   * writes. Same as getConnection() unless a read replica is configured.
+   *
+   * @return A connection to read from
+   */
+  public Connection getReadConnection() {
+    return getConnection();
+  }
+
+  protected Transaction getCurrentTransaction() {
+    return current.get();
+  }
+
+  protected void bind(Transaction trans) {
+    current.set(trans);
+  }
+
+  protected void unbind() {
+    current.remove();
+  }
+
+  @Override
+  public Query where(String where, Object... args) {
+    Transaction trans = current.get();
+    return trans == null ? super.where(where, args) : super.transaction(trans).where(where, args);
+  }
+
+  @Override
+  public Query sql(String sql, Object... args) {
+    Transaction trans = current.get();
+    return trans == null ? super.sql(sql, args) : super.transaction(trans).sql(sql, args);
+  }
+
+  @Override
+  public Query insert(Object row) {
+    Transaction trans = current.get();
+    return trans == null ? super.insert(row) : super.transaction(trans).insert(row);
+  }
+
+  @Override
+  public Query update(Object row) {
+    Transaction trans = current.get();
+    return trans == null ? super.update(row) : super.transaction(trans).update(row);
+  }
+
+  @Override
+  public Query upsert(Object row) {
+    Transaction trans = current.get();
+    return trans == null ? super.upsert(row) : super.transaction(trans).upsert(row);
+  }
+
+  @Override
+  public Query delete(Object row) {
+    Transaction trans = current.get();
+    return trans == null ? super.delete(row) : super.transaction(trans).delete(row);
+  }
+
+  @Override
+  public <T> List<T> results(Class<T> clazz) {
+    Transaction trans = current.get();
+    return trans == null ? super.results(clazz) : super.transaction(trans).results(clazz);
+  }
+
+  @Override
+  public <T> T first(Class<T> clazz) {
+    Transaction trans = current.get();
+    return trans == null ? super.first(clazz) : super.transaction(trans).first(clazz);
+  }
+}
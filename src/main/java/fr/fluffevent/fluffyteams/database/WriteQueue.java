@@ -0,0 +1,143 @@
+package fr.fluffevent.fluffyteams.database;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import fr.fluffevent.fluffyteams.models.PendingWrite;
+
+/**
+ * Bounded queue of the writes made while the database is unavailable.
+ * Each write is appended to a file (one JSON object per line) and synced
+ * before being accepted, so queued writes survive a crash or a restart and
+ * are replayed in order once the database is back.
+ */
+public class WriteQueue {
+
+  // Replayed writes are removed from the file in batches, replaying the same
+  // write twice after a crash is harmless
+  private static final int COMPACT_EVERY = 100;
+
+  private static final Gson gson = new Gson();
+
+  private final Path file;
+  private final int capacity;
+  private final Deque<PendingWrite> writes = new ArrayDeque<>();
+  private int removedSinceCompact;
+
+  public WriteQueue(Path file, int capacity) {
+    this.file = file;
+    this.capacity = capacity;
+  }
+
+  // Loads the writes left by a previous run, returns how many were loaded.
+  // Lines that can't be read (e.g. cut short by a crash) are skipped.
+  public synchronized int load() throws IOException {
+    writes.clear();
+    removedSinceCompact = 0;
+    if (!Files.exists(file)) {
+      return 0;
+    }
+
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      if (line.isBlank()) {
+        continue;
+      }
+      try {
+        PendingWrite write = gson.fromJson(line, PendingWrite.class);
+        if (write != null && write.type != null) {
+          write.restored = true;
+          writes.add(write);
+        }
+      } catch (JsonParseException ex) {
+        // Partial line, the write was never acknowledged
+      }
+    }
+    compact();
+    return writes.size();
+  }
+
+  // Returns false when the queue is full. Throws if the write couldn't be
+  // saved to disk, it's not queued then.
+  public boolean offer(PendingWrite write) {
+    return offerAll(List.of(write));
+  }
+
+  // Queues all the writes or none of them
+  public synchronized boolean offerAll(List<PendingWrite> batch) {
+    if (writes.size() + batch.size() > capacity) {
+      return false;
+    }
+
+    StringBuilder lines = new StringBuilder();
+    for (PendingWrite write : batch) {
+      lines.append(gson.toJson(write)).append('\n');
+    }
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      Files.writeString(file, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+          StandardOpenOption.DSYNC);
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Couldn't save pending writes to " + file, ex);
+    }
+    writes.addAll(batch);
+    return true;
+  }
+
+  public synchronized PendingWrite peek() {
+    return writes.peekFirst();
+  }
+
+  // Removes the oldest write once it has been replayed
+  public synchronized void remove() {
+    if (writes.pollFirst() == null) {
+      return;
+    }
+
+    removedSinceCompact++;
+    if (writes.isEmpty() || removedSinceCompact >= COMPACT_EVERY) {
+      try {
+        compact();
+      } catch (IOException ex) {
+        throw new UncheckedIOException("Couldn't update " + file, ex);
+      }
+    }
+  }
+
+  public synchronized int size() {
+    return writes.size();
+  }
+
+  public synchronized boolean isEmpty() {
+    return writes.isEmpty();
+  }
+
+  // Rewrites the file with the remaining writes, swapped in atomically
+  private void compact() throws IOException {
+    removedSinceCompact = 0;
+    if (writes.isEmpty()) {
+      Files.deleteIfExists(file);
+      return;
+    }
+
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      for (PendingWrite write : writes) {
+        writer.write(gson.toJson(write));
+        writer.newLine();
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -1,5 +1,10 @@
 package fr.fluffevent.fluffyteams.listeners;
 
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -7,9 +12,16 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.plugin.RegisteredServiceProvider;
 
+import fr.fluffevent.fluffyteams.Config;
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.controllers.PlayerResolver;
 import fr.fluffevent.fluffyteams.controllers.TeamController;
+import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.models.MembershipResult;
 import fr.fluffevent.fluffyteams.models.database.Member;
 import fr.fluffevent.fluffyteams.models.database.Team;
+import fr.fluffevent.fluffyteams.utils.HandlerEvent;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
 import net.luckperms.api.LuckPerms;
 import net.luckperms.api.model.user.User;
 
@@ -18,6 +30,11 @@ public class PlayerLoginListener implements Listener {
     LuckPerms luckperms = null;
     TeamController teamController = null;
 
+    // Bukkit's async pool, so lookups never run on the main thread. The
+    // lookups are still attributed to the listener in the slow operation log
+    private final Executor async = task -> Bukkit.getScheduler().runTaskAsynchronously(FluffyTeams.getInstance(),
+            MainThreadWatchdog.withHandler(task));
+
     public PlayerLoginListener() {
         teamController = new TeamController();
         if (Bukkit.getPluginManager().isPluginEnabled("LuckPerms")) {
@@ -36,27 +53,91 @@ public class PlayerLoginListener implements Listener {
     // Check if user is in a group that matches a team name, if so add it
     @EventHandler
     public void onPlayerLogin(PlayerLoginEvent event) {
-        if (luckperms == null) {
-            return;
+        HandlerEvent handler = MainThreadWatchdog.begin("PlayerLoginListener");
+        try {
+            login(event);
+        } finally {
+            MainThreadWatchdog.end(handler);
         }
+    }
 
-        Player player = event.getPlayer();
+    private void login(PlayerLoginEvent event) {
+        PlayerResolver.remember(event.getPlayer());
 
-        User user = luckperms.getUserManager().getUser(player.getUniqueId());
+        // Teams are still loading, checkOnlinePlayers() will catch up once ready
+        if (!DatabaseManager.isReady()) {
+            return;
+        }
 
-        if (user == null) {
+        // Don't put kicked, banned or non-whitelisted players in a team
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
             return;
         }
 
-        String primaryGroup = user.getPrimaryGroup();
+        checkPlayer(event.getPlayer());
+    }
 
-        Team luckPermsTeam = teamController.getTeam(primaryGroup);
+    // Runs the log-in check for players who joined before the database was ready
+    public void checkOnlinePlayers() {
+        HandlerEvent handler = MainThreadWatchdog.begin("PlayerLoginListener");
+        try {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                checkPlayer(player);
+            }
+        } finally {
+            MainThreadWatchdog.end(handler);
+        }
+    }
 
-        Member currentTeamMember = teamController.getMember(player);
+    // The membership and the LuckPerms user are loaded concurrently off the
+    // main thread, the LuckPerms user may not be loaded yet at log-in
+    private void checkPlayer(Player player) {
+        UUID uuid = player.getUniqueId();
 
-        if (luckPermsTeam != null && currentTeamMember == null) {
-            teamController.addMember(primaryGroup, player);
-            Bukkit.getLogger().info("Added " + player.getName() + " to team " + primaryGroup);
-        }
+        CompletableFuture<Member> membership = CompletableFuture
+                .supplyAsync(() -> teamController.getMember(uuid.toString()), async);
+        CompletableFuture<String> primaryGroup = luckperms == null
+                ? CompletableFuture.completedFuture(null)
+                : luckperms.getUserManager().loadUser(uuid).thenApply(User::getPrimaryGroup);
+
+        membership.thenAcceptBothAsync(primaryGroup, (member, group) -> {
+            if (member != null) {
+                return;
+            }
+
+            Team luckPermsTeam = group == null ? null : teamController.getTeam(group);
+            if (luckPermsTeam != null) {
+                teamController.addMemberAsync(luckPermsTeam.name, player).whenComplete((result, error) -> {
+                    if (error != null) {
+                        Bukkit.getLogger().log(Level.WARNING, "Failed to add " + player.getName() + " to team "
+                                + luckPermsTeam.name, error);
+                    } else if (result == MembershipResult.ADDED) {
+                        Bukkit.getLogger().info("Added " + player.getName() + " to team " + luckPermsTeam.name);
+                    }
+                });
+                return;
+            }
+
+            // No team from LuckPerms, balance the player into the smallest team
+            if (Config.autoAssign) {
+                autoAssign(player);
+            }
+        }, async).exceptionally(error -> {
+            Bukkit.getLogger().log(Level.WARNING, "Failed to check the team of " + player.getName(), error);
+            return null;
+        });
+    }
+
+    private void autoAssign(Player player) {
+        teamController.autoAssign(player).whenComplete((assignment, error) -> {
+            if (error != null) {
+                Bukkit.getLogger().log(Level.WARNING, "Failed to auto-assign " + player.getName(), error);
+            } else if (assignment.getResult() == MembershipResult.ADDED) {
+                Bukkit.getLogger().info("Auto-assigned " + player.getName() + " to team "
+                        + assignment.getTeam().name);
+            } else if (assignment.getResult() == MembershipResult.TEAM_FULL) {
+                Bukkit.getLogger().warning("Couldn't auto-assign " + player.getName() + ", every team is full");
+            }
+        });
     }
 }
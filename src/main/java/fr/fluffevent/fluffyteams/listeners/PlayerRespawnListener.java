@@ -8,7 +8,10 @@ import org.bukkit.event.player.PlayerRespawnEvent;
 
 import fr.fluffevent.fluffyteams.Config;
 import fr.fluffevent.fluffyteams.controllers.TeamController;
+import fr.fluffevent.fluffyteams.database.DatabaseManager;
 import fr.fluffevent.fluffyteams.models.database.Team;
+import fr.fluffevent.fluffyteams.utils.HandlerEvent;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
 
 public class PlayerRespawnListener implements Listener {
 
@@ -21,8 +24,22 @@ public class PlayerRespawnListener implements Listener {
     // Check if user is in a group that matches a team name, if so add it
     @EventHandler
     public void onPlayerRespawn(PlayerRespawnEvent event) {
+        HandlerEvent handler = MainThreadWatchdog.begin("PlayerRespawnListener");
+        try {
+            respawn(event);
+        } finally {
+            MainThreadWatchdog.end(handler);
+        }
+    }
+
+    private void respawn(PlayerRespawnEvent event) {
         Player player = event.getPlayer();
 
+        // Keep the vanilla respawn location until teams are loaded
+        if (!DatabaseManager.isReady()) {
+            return;
+        }
+
         if (event.isBedSpawn() && !Config.overrideBedRespawnLocation) {
             return;
         }
@@ -37,7 +54,14 @@ public class PlayerRespawnListener implements Listener {
             return;
         }
 
-        Location spawnLocation = teamController.getSpawnLocation(playerTeam.name);
+        Location spawnLocation;
+        if (Config.respawnAtNearestSpawn) {
+            Location deathLocation = player.getLastDeathLocation();
+            spawnLocation = teamController.getNearestSpawnLocation(playerTeam.name,
+                    deathLocation != null ? deathLocation : player.getLocation());
+        } else {
+            spawnLocation = teamController.getSpawnLocation(playerTeam.name);
+        }
 
         if (spawnLocation == null) {
             return;
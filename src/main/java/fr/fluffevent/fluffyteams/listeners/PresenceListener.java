@@ -0,0 +1,77 @@
+package fr.fluffevent.fluffyteams.listeners;
+
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.controllers.TeamController;
+import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.database.PresenceIndex;
+import fr.fluffevent.fluffyteams.database.RedisManager;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.utils.HandlerEvent;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+import io.lettuce.core.RedisException;
+
+public class PresenceListener implements Listener {
+
+    TeamController teamController = null;
+
+    public PresenceListener() {
+        teamController = new TeamController();
+    }
+
+    // Members who join without a team yet are picked up by the next heartbeat
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        update(event.getPlayer(), true);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        update(event.getPlayer(), false);
+    }
+
+    private void update(Player player, boolean online) {
+        HandlerEvent handler = MainThreadWatchdog.begin("PresenceListener");
+        try {
+            schedule(player, online);
+        } finally {
+            MainThreadWatchdog.end(handler);
+        }
+    }
+
+    private void schedule(Player player, boolean online) {
+        PresenceIndex presence = RedisManager.getPresence();
+        if (presence == null || !DatabaseManager.isReady()) {
+            return;
+        }
+
+        String uuid = player.getUniqueId().toString();
+        Bukkit.getScheduler().runTaskAsynchronously(FluffyTeams.getInstance(), () -> {
+            Member member = teamController.getMember(uuid);
+            if (member == null) {
+                return;
+            }
+
+            try {
+                if (online) {
+                    presence.online(member.teamId, uuid);
+                } else {
+                    presence.offline(member.teamId, uuid);
+                }
+            } catch (RedisException e) {
+                Metrics.increment("presence.failures");
+                Bukkit.getLogger().log(Level.FINE, "Failed to update the presence of " + player.getName(), e);
+            }
+        });
+    }
+}
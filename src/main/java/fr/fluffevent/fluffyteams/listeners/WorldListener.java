@@ -0,0 +1,37 @@
+package fr.fluffevent.fluffyteams.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.utils.HandlerEvent;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+
+public class WorldListener implements Listener {
+
+    // Spawns of a world that was missing can be resolved now
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        HandlerEvent handler = MainThreadWatchdog.begin("WorldListener");
+        try {
+            DatabaseManager.getCache().getSpawnLocations().invalidateWorld(event.getWorld().getName());
+        } finally {
+            MainThreadWatchdog.end(handler);
+        }
+    }
+
+    // Cached locations would keep the unloaded world alive and teleport
+    // players to it
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        HandlerEvent handler = MainThreadWatchdog.begin("WorldListener");
+        try {
+            DatabaseManager.getCache().getSpawnLocations().invalidateWorld(event.getWorld().getName());
+        } finally {
+            MainThreadWatchdog.end(handler);
+        }
+    }
+}
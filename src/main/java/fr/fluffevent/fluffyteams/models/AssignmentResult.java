@@ -0,0 +1,41 @@
+package fr.fluffevent.fluffyteams.models;
+
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Outcome of an automatic team assignment, along with the team that was
+ * picked, so callers don't have to look the membership up again.
+ */
+public class AssignmentResult {
+    private final MembershipResult result;
+    private final Team team;
+
+    /**
+     * Creates a new AssignmentResult object.
+     *
+     * @param result The outcome of the assignment
+     * @param team   The team the player was added to, null unless added
+     */
+    public AssignmentResult(MembershipResult result, Team team) {
+        this.result = result;
+        this.team = team;
+    }
+
+    /**
+     * Gets the outcome of the assignment.
+     *
+     * @return ADDED, ALREADY_IN_TEAM or TEAM_FULL
+     */
+    public MembershipResult getResult() {
+        return result;
+    }
+
+    /**
+     * Gets the team the player was added to.
+     *
+     * @return The team, null unless the result is ADDED
+     */
+    public Team getTeam() {
+        return team;
+    }
+}
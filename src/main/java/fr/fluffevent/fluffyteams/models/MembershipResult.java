@@ -0,0 +1,38 @@
+package fr.fluffevent.fluffyteams.models;
+
+/**
+ * Outcome of a membership change.
+ * Conflicts are reported through these values instead of exceptions so that
+ * callers (commands, listeners, batches) can handle them per player.
+ */
+public enum MembershipResult {
+    /**
+     * The player was added to the team.
+     */
+    ADDED,
+
+    /**
+     * The player already belongs to a team, nothing was changed.
+     */
+    ALREADY_IN_TEAM,
+
+    /**
+     * The team has reached its maximum size, nothing was changed.
+     */
+    TEAM_FULL,
+
+    /**
+     * The player couldn't be resolved to a Minecraft account.
+     */
+    PLAYER_NOT_FOUND,
+
+    /**
+     * The player was removed from their team.
+     */
+    REMOVED,
+
+    /**
+     * The player doesn't belong to any team, nothing was changed.
+     */
+    NOT_IN_TEAM
+}
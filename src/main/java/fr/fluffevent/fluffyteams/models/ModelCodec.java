@@ -0,0 +1,274 @@
+package fr.fluffevent.fluffyteams.models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Compact binary encoding of teams, members and spawns, for caches and
+ * snapshots where Gson JSON is too large and too slow.
+ * A stream starts with the format version, followed by tagged records and an
+ * end tag. IDs and sizes are variable-length integers, player UUIDs two
+ * longs, coordinates raw doubles and floats. World and server names are
+ * written once per stream and referenced by index afterwards.
+ */
+public class ModelCodec {
+
+  // Bump when the layout changes, readers reject other versions
+  public static final int VERSION = 1;
+
+  private static final int END = 0;
+  private static final int TEAM = 1;
+  private static final int MEMBER = 2;
+  private static final int SPAWN = 3;
+
+  // Player UUIDs are normally UUIDs, anything else is kept as a string
+  private static final int UUID_BINARY = 0;
+  private static final int UUID_STRING = 1;
+
+  // String table references: null, a new string, or index + 2
+  private static final int NULL_STRING = 0;
+  private static final int NEW_STRING = 1;
+
+  /**
+   * Writes records to a stream. Not thread-safe.
+   */
+  public static class Writer {
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    public Writer(OutputStream out) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+      writeVarLong(VERSION);
+    }
+
+    public void write(Team team) throws IOException {
+      out.writeByte(TEAM);
+      writeVarLong(team.id);
+      writeString(team.name);
+      writeString(team.displayName);
+      writeVarLong(team.maxSize);
+    }
+
+    public void write(Member member) throws IOException {
+      out.writeByte(MEMBER);
+      writeVarLong(member.id);
+      writeVarLong(member.teamId);
+
+      UUID uuid = parseUuid(member.playerUuid);
+      if (uuid != null) {
+        out.writeByte(UUID_BINARY);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+      } else {
+        out.writeByte(UUID_STRING);
+        writeString(member.playerUuid);
+      }
+    }
+
+    public void write(Spawn spawn) throws IOException {
+      out.writeByte(SPAWN);
+      writeVarLong(spawn.id);
+      writeVarLong(spawn.teamId);
+      writeShared(spawn.server);
+      writeShared(spawn.world);
+      out.writeDouble(spawn.x);
+      out.writeDouble(spawn.y);
+      out.writeDouble(spawn.z);
+      out.writeFloat(spawn.yaw);
+      out.writeFloat(spawn.pitch);
+    }
+
+    // Ends the stream and flushes it, the underlying stream is left open
+    public void finish() throws IOException {
+      out.writeByte(END);
+      out.flush();
+    }
+
+    // Zigzag, so that small negative values (temporary IDs) stay small
+    private void writeVarLong(long value) throws IOException {
+      long zigzag = (value << 1) ^ (value >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+        zigzag >>>= 7;
+      }
+      out.writeByte((int) zigzag);
+    }
+
+    private void writeString(String value) throws IOException {
+      if (value == null) {
+        writeVarLong(-1);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      out.write(bytes);
+    }
+
+    private void writeShared(String value) throws IOException {
+      if (value == null) {
+        writeVarLong(NULL_STRING);
+        return;
+      }
+
+      Integer index = strings.get(value);
+      if (index != null) {
+        writeVarLong(index + 2);
+        return;
+      }
+      strings.put(value, strings.size());
+      writeVarLong(NEW_STRING);
+      writeString(value);
+    }
+  }
+
+  /**
+   * Reads the records of a stream written by a Writer. Not thread-safe.
+   */
+  public static class Reader {
+
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+
+    // Throws IOException if the stream was written in another format version
+    public Reader(InputStream in) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(in));
+      long version = readVarLong();
+      if (version != VERSION) {
+        throw new IOException("Unsupported format version " + version + ", expected " + VERSION);
+      }
+    }
+
+    // Reads every record up to the end of the stream, in the written order
+    public void readAll(Consumer<Team> teams, Consumer<Member> members, Consumer<Spawn> spawns)
+        throws IOException {
+      while (true) {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+          case END:
+            return;
+          case TEAM:
+            teams.accept(readTeam());
+            break;
+          case MEMBER:
+            members.accept(readMember());
+            break;
+          case SPAWN:
+            spawns.accept(readSpawn());
+            break;
+          default:
+            throw new IOException("Unknown record tag " + tag);
+        }
+      }
+    }
+
+    private Team readTeam() throws IOException {
+      Team team = new Team();
+      team.id = readVarLong();
+      team.name = readString();
+      team.displayName = readString();
+      team.maxSize = (int) readVarLong();
+      return team;
+    }
+
+    private Member readMember() throws IOException {
+      Member member = new Member();
+      member.id = readVarLong();
+      member.teamId = readVarLong();
+
+      int kind = in.readUnsignedByte();
+      if (kind == UUID_BINARY) {
+        member.playerUuid = new UUID(in.readLong(), in.readLong()).toString();
+      } else if (kind == UUID_STRING) {
+        member.playerUuid = readString();
+      } else {
+        throw new IOException("Unknown player UUID encoding " + kind);
+      }
+      return member;
+    }
+
+    private Spawn readSpawn() throws IOException {
+      Spawn spawn = new Spawn();
+      spawn.id = readVarLong();
+      spawn.teamId = readVarLong();
+      spawn.server = readShared();
+      spawn.world = readShared();
+      spawn.x = in.readDouble();
+      spawn.y = in.readDouble();
+      spawn.z = in.readDouble();
+      spawn.yaw = in.readFloat();
+      spawn.pitch = in.readFloat();
+      return spawn;
+    }
+
+    private long readVarLong() throws IOException {
+      long zigzag = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = in.readUnsignedByte();
+        zigzag |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+      }
+      throw new IOException("Malformed variable-length integer");
+    }
+
+    private String readString() throws IOException {
+      long length = readVarLong();
+      if (length < 0) {
+        return null;
+      }
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("String too long: " + length);
+      }
+      byte[] bytes = new byte[(int) length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String readShared() throws IOException {
+      long ref = readVarLong();
+      if (ref == NULL_STRING) {
+        return null;
+      }
+      if (ref == NEW_STRING) {
+        String value = readString();
+        strings.add(value);
+        return value;
+      }
+      if (ref < 2 || ref - 2 >= strings.size()) {
+        throw new IOException("Unknown string reference " + ref);
+      }
+      return strings.get((int) (ref - 2));
+    }
+  }
+
+  // Only the canonical form, so that decoding gives back the same string
+  private static UUID parseUuid(String value) {
+    if (value == null || value.length() != 36) {
+      return null;
+    }
+    try {
+      UUID uuid = UUID.fromString(value);
+      return uuid.toString().equals(value) ? uuid : null;
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package fr.fluffevent.fluffyteams.models;
+
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+
+/**
+ * A write made while the database was unavailable, kept in the write queue
+ * until it can be replayed.
+ */
+public class PendingWrite extends SerializableModel {
+
+  public enum Type {
+    ADD_MEMBER, REMOVE_MEMBER, SET_SPAWN, ADD_SPAWN
+  }
+
+  public Type type;
+  public long teamId;
+
+  // Members
+  public String playerUuid;
+
+  // Spawns, the spawn is cached under a temporary negative ID until replayed
+  public long spawnId;
+  public String world;
+  public double x;
+  public double y;
+  public double z;
+  public float yaw;
+  public float pitch;
+
+  // Loaded from disk after a restart, the cache holds the database state
+  // instead of this write
+  public transient boolean restored;
+
+  public static PendingWrite addMember(Member member) {
+    PendingWrite write = new PendingWrite();
+    write.type = Type.ADD_MEMBER;
+    write.teamId = member.teamId;
+    write.playerUuid = member.playerUuid;
+    return write;
+  }
+
+  public static PendingWrite removeMember(Member member) {
+    PendingWrite write = new PendingWrite();
+    write.type = Type.REMOVE_MEMBER;
+    write.teamId = member.teamId;
+    write.playerUuid = member.playerUuid;
+    return write;
+  }
+
+  public static PendingWrite spawn(Type type, Spawn spawn) {
+    PendingWrite write = new PendingWrite();
+    write.type = type;
+    write.teamId = spawn.teamId;
+    write.spawnId = spawn.id;
+    write.world = spawn.world;
+    write.x = spawn.x;
+    write.y = spawn.y;
+    write.z = spawn.z;
+    write.yaw = spawn.yaw;
+    write.pitch = spawn.pitch;
+    return write;
+  }
+
+  // The spawn to write, without an ID
+  public Spawn toSpawn(String server) {
+    Spawn spawn = new Spawn();
+    spawn.teamId = teamId;
+    spawn.server = server;
+    spawn.world = world;
+    spawn.x = x;
+    spawn.y = y;
+    spawn.z = z;
+    spawn.yaw = yaw;
+    spawn.pitch = pitch;
+    return spawn;
+  }
+}
@@ -13,9 +13,10 @@ public class PlayerInfo {
     private final String username;
     private final UUID uuid;
     private final boolean hasConnectedBefore;
+    private final boolean online;
 
     /**
-     * Creates a new PlayerInfo object.
+     * Creates a new PlayerInfo object, online if the player is on this server.
      *
      * @param player             The Bukkit OfflinePlayer object
      * @param username           The player's username (from Bukkit or Mojang API)
@@ -24,10 +25,27 @@ public class PlayerInfo {
      *                           before
      */
     public PlayerInfo(OfflinePlayer player, String username, UUID uuid, boolean hasConnectedBefore) {
+        this(player, username, uuid, hasConnectedBefore, player != null && player.isOnline());
+    }
+
+    /**
+     * Creates a new PlayerInfo object.
+     *
+     * @param player             The Bukkit OfflinePlayer object
+     * @param username           The player's username (from Bukkit or Mojang API)
+     * @param uuid               The player's UUID
+     * @param hasConnectedBefore Whether the player has connected to the server
+     *                           before
+     * @param online             Whether the player is online, on any server of
+     *                           the network
+     */
+    public PlayerInfo(OfflinePlayer player, String username, UUID uuid, boolean hasConnectedBefore,
+            boolean online) {
         this.player = player;
         this.username = username;
         this.uuid = uuid;
         this.hasConnectedBefore = hasConnectedBefore;
+        this.online = online;
     }
 
     /**
@@ -68,4 +86,14 @@ public class PlayerInfo {
     public boolean hasConnectedBefore() {
         return hasConnectedBefore;
     }
+
+    /**
+     * Checks if the player is online. When Redis tracks presence, this covers
+     * every server of the network, otherwise only this server.
+     *
+     * @return true if the player is online, false otherwise
+     */
+    public boolean isOnline() {
+        return online;
+    }
 }
\ No newline at end of file
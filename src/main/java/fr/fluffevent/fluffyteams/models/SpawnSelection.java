@@ -0,0 +1,33 @@
+package fr.fluffevent.fluffyteams.models;
+
+/**
+ * How a spawn point is picked when a team has several spawns on a server.
+ */
+public enum SpawnSelection {
+    /**
+     * Spawns are used one after the other.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * A spawn is picked at random.
+     */
+    RANDOM,
+
+    /**
+     * The spawn that was used the longest time ago is picked, new spawns
+     * first.
+     */
+    LEAST_RECENTLY_USED;
+
+    /**
+     * Parses a selection policy from its config name (e.g. "round-robin").
+     *
+     * @param name The name of the policy
+     * @return The matching policy
+     * @throws IllegalArgumentException if the name doesn't match any policy
+     */
+    public static SpawnSelection fromConfig(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
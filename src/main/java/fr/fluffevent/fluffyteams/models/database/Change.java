@@ -0,0 +1,35 @@
+package fr.fluffevent.fluffyteams.models.database;
+
+import javax.persistence.Column;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+@Table(name = "fluffy_changes")
+public class Change extends DatabaseModel {
+  @Transient
+  public String sqlCreationQuery = "create table `fluffy_changes` (`version` bigint(20) NOT NULL AUTO_INCREMENT, `entity` varchar(16), `operation` varchar(16), `origin` varchar(36), `data` text, `created_at` bigint(20), PRIMARY KEY (`version`));";
+
+  @Transient
+  public String sqliteCreationQuery = "create table `fluffy_changes` (`version` integer PRIMARY KEY AUTOINCREMENT, `entity` varchar(16), `operation` varchar(16), `origin` varchar(36), `data` text, `created_at` bigint);";
+
+  @Id
+  @GeneratedValue
+  public long version;
+
+  @Column(name = "entity")
+  public String entity;
+
+  @Column(name = "operation")
+  public String operation;
+
+  @Column(name = "origin")
+  public String origin;
+
+  @Column(name = "data")
+  public String data;
+
+  @Column(name = "created_at")
+  public long createdAt;
+}
@@ -11,6 +11,9 @@ public class Member extends DatabaseModel {
   @Transient
   public String sqlCreationQuery = "create table `fluffy_members` (`id` bigint(20) NOT NULL AUTO_INCREMENT, `team_id` bigint(20), `player_uuid` varchar(255), PRIMARY KEY (`id`));";
 
+  @Transient
+  public String sqliteCreationQuery = "create table `fluffy_members` (`id` integer PRIMARY KEY AUTOINCREMENT, `team_id` bigint, `player_uuid` varchar(255));";
+
   @Id
   @GeneratedValue
   public long id;
@@ -11,6 +11,9 @@ public class Spawn extends DatabaseModel {
   @Transient
   public String sqlCreationQuery = "create table `fluffy_spawns` (`id` bigint(20) NOT NULL AUTO_INCREMENT, `team_id` bigint(20), `server` varchar(255), `world` varchar(255), `x` double, `y` double, `z` double, `yaw` float, `pitch` float, PRIMARY KEY (`id`));";
 
+  @Transient
+  public String sqliteCreationQuery = "create table `fluffy_spawns` (`id` integer PRIMARY KEY AUTOINCREMENT, `team_id` bigint, `server` varchar(255), `world` varchar(255), `x` double, `y` double, `z` double, `yaw` float, `pitch` float);";
+
   @Id
   @GeneratedValue
   public long id;
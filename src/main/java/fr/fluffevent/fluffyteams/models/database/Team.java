@@ -9,7 +9,10 @@ import javax.persistence.Transient;
 @Table(name = "fluffy_teams")
 public class Team extends DatabaseModel {
   @Transient
-  public String sqlCreationQuery = "create table `fluffy_teams` (`id` bigint(20) NOT NULL AUTO_INCREMENT, `name` varchar(255), `display_name` varchar(255), PRIMARY KEY (`id`));";
+  public String sqlCreationQuery = "create table `fluffy_teams` (`id` bigint(20) NOT NULL AUTO_INCREMENT, `name` varchar(255), `display_name` varchar(255), `max_size` int NOT NULL DEFAULT 0, PRIMARY KEY (`id`));";
+
+  @Transient
+  public String sqliteCreationQuery = "create table `fluffy_teams` (`id` integer PRIMARY KEY AUTOINCREMENT, `name` varchar(255), `display_name` varchar(255), `max_size` int NOT NULL DEFAULT 0);";
 
   @Id
   @GeneratedValue
@@ -20,4 +23,8 @@ public class Team extends DatabaseModel {
 
   @Column(name = "display_name")
   public String displayName;
+
+  // Maximum number of members, 0 for no limit
+  @Column(name = "max_size")
+  public int maxSize;
 }
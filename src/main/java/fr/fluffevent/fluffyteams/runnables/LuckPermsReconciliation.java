@@ -0,0 +1,179 @@
+package fr.fluffevent.fluffyteams.runnables;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Team;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.model.user.UserManager;
+import net.luckperms.api.node.matcher.NodeMatcher;
+import net.luckperms.api.node.types.InheritanceNode;
+
+/**
+ * Background job repairing the LuckPerms parent groups of team members.
+ * The members of every team and the LuckPerms users inheriting a team group
+ * are loaded in bulk, and only the differences are written back to
+ * LuckPerms, in small batches spaced out to spread the load. The database is
+ * the source of truth. Must run off the main thread.
+ */
+public class LuckPermsReconciliation implements Runnable {
+
+  private static final int BATCH_SIZE = 50;
+  private static final long BATCH_DELAY_MS = 500;
+
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  @Override
+  public void run() {
+    if (!DatabaseManager.isReady() || !running.compareAndSet(false, true)) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    try {
+      reconcile();
+      Metrics.increment("luckperms.reconcile.runs");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      Metrics.increment("luckperms.reconcile.failures");
+      FluffyTeams.getInstance().getLogger().log(Level.WARNING, "LuckPerms reconciliation failed", e);
+    } finally {
+      Metrics.set("luckperms.reconcile.last_duration_ms", (System.nanoTime() - start) / 1_000_000);
+      running.set(false);
+    }
+  }
+
+  private void reconcile() throws InterruptedException {
+    if (!Bukkit.getServer().getPluginManager().isPluginEnabled("LuckPerms")) {
+      return;
+    }
+    RegisteredServiceProvider<LuckPerms> provider = Bukkit.getServicesManager().getRegistration(LuckPerms.class);
+    if (provider == null) {
+      return;
+    }
+    UserManager userManager = provider.getProvider().getUserManager();
+
+    // Expected state, from the database (through the cache)
+    TeamCache cache = DatabaseManager.getCache();
+    Map<UUID, String> expected = new HashMap<>();
+    Set<String> groups = new HashSet<>();
+    for (Team team : cache.getTeams()) {
+      String group = team.name.toLowerCase();
+      groups.add(group);
+      for (Member member : cache.getMembers(team.id)) {
+        expected.put(UUID.fromString(member.playerUuid), group);
+      }
+    }
+
+    // Actual state, one LuckPerms search per team group
+    Map<UUID, Set<String>> actual = new HashMap<>();
+    List<CompletableFuture<Void>> searches = new ArrayList<>();
+    for (String group : groups) {
+      searches.add(userManager.<InheritanceNode>searchAll(NodeMatcher.key(InheritanceNode.builder(group).build()))
+          .thenAccept(users -> {
+            synchronized (actual) {
+              users.keySet().forEach(uuid -> actual.computeIfAbsent(uuid, key -> new HashSet<>()).add(group));
+            }
+          }));
+    }
+    CompletableFuture.allOf(searches.toArray(new CompletableFuture[0])).join();
+
+    // Users with a team group but no membership are counted, diff() removes
+    // their team groups
+    long unmatched = actual.keySet().stream().filter(uuid -> !expected.containsKey(uuid)).count();
+    Metrics.set("luckperms.reconcile.unmatched_users", unmatched);
+    List<Correction> corrections = diff(expected, actual);
+    // Players who joined a team while LuckPerms was searched keep their group
+    corrections.removeIf(correction -> !expected.containsKey(correction.uuid)
+        && cache.getMember(correction.uuid.toString()) != null);
+
+    int added = 0;
+    int removed = 0;
+    for (int i = 0; i < corrections.size(); i += BATCH_SIZE) {
+      if (i > 0) {
+        TimeUnit.MILLISECONDS.sleep(BATCH_DELAY_MS);
+      }
+
+      List<Correction> batch = corrections.subList(i, Math.min(i + BATCH_SIZE, corrections.size()));
+      CompletableFuture<?>[] updates = batch.stream()
+          .map(correction -> userManager.modifyUser(correction.uuid, user -> {
+            if (correction.add != null) {
+              user.data().add(InheritanceNode.builder(correction.add).build());
+            }
+            correction.remove.forEach(group -> user.data().remove(InheritanceNode.builder(group).build()));
+          }))
+          .toArray(CompletableFuture[]::new);
+      CompletableFuture.allOf(updates).join();
+
+      for (Correction correction : batch) {
+        added += correction.add != null ? 1 : 0;
+        removed += correction.remove.size();
+      }
+    }
+
+    Metrics.add("luckperms.reconcile.groups_added", added);
+    Metrics.add("luckperms.reconcile.groups_removed", removed);
+    if (added + removed > 0) {
+      FluffyTeams.getInstance().getLogger().info("LuckPerms reconciliation added " + added + " and removed "
+          + removed + " team groups");
+    }
+  }
+
+  // Changes bringing LuckPerms in line with the database: members get their
+  // team group and lose the groups of other teams, users who aren't a member
+  // lose every team group
+  public static List<Correction> diff(Map<UUID, String> expected, Map<UUID, Set<String>> actual) {
+    List<Correction> corrections = new ArrayList<>();
+    expected.forEach((uuid, group) -> {
+      Set<String> current = actual.getOrDefault(uuid, Collections.emptySet());
+      Set<String> extra = new HashSet<>(current);
+      extra.remove(group);
+      boolean missing = !current.contains(group);
+      if (missing || !extra.isEmpty()) {
+        corrections.add(new Correction(uuid, missing ? group : null, extra));
+      }
+    });
+    actual.forEach((uuid, groups) -> {
+      if (!expected.containsKey(uuid) && !groups.isEmpty()) {
+        corrections.add(new Correction(uuid, null, new HashSet<>(groups)));
+      }
+    });
+    return corrections;
+  }
+
+  /**
+   * Team groups to give to and remove from a LuckPerms user.
+   */
+  public static class Correction {
+    public final UUID uuid;
+    // Null if the user already has their team group
+    public final String add;
+    public final Collection<String> remove;
+
+    Correction(UUID uuid, String add, Collection<String> remove) {
+      this.uuid = uuid;
+      this.add = add;
+      this.remove = remove;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package fr.fluffevent.fluffyteams.runnables;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.database.PresenceIndex;
+import fr.fluffevent.fluffyteams.database.RedisManager;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.utils.HandlerEvent;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+import io.lettuce.core.RedisException;
+
+/**
+ * Keeps the team members online on this server in the network-wide presence
+ * index. Runs on the main thread to read the online players, the index is
+ * updated asynchronously.
+ */
+public class PresenceHeartbeat implements Runnable {
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private volatile boolean failing;
+
+  @Override
+  public void run() {
+    HandlerEvent handler = MainThreadWatchdog.begin("PresenceHeartbeat");
+    try {
+      beat();
+    } finally {
+      MainThreadWatchdog.end(handler);
+    }
+  }
+
+  private void beat() {
+    PresenceIndex presence = RedisManager.getPresence();
+    if (presence == null || !DatabaseManager.isReady() || !running.compareAndSet(false, true)) {
+      return;
+    }
+
+    Map<Long, List<String>> online = onlineMembers();
+    Bukkit.getScheduler().runTaskAsynchronously(FluffyTeams.getInstance(), () -> {
+      try {
+        presence.heartbeat(online);
+        Metrics.increment("presence.heartbeats");
+        Metrics.set("presence.local_online", online.values().stream().mapToInt(List::size).sum());
+        if (failing) {
+          failing = false;
+          FluffyTeams.getInstance().getLogger().info("Redis reachable again, presence index updated");
+        }
+      } catch (RedisException e) {
+        Metrics.increment("presence.failures");
+        // Logged once per outage, the players expire from the index meanwhile
+        if (!failing) {
+          failing = true;
+          FluffyTeams.getInstance().getLogger().log(Level.WARNING, "Failed to update the presence index", e);
+        }
+      } finally {
+        running.set(false);
+      }
+    });
+  }
+
+  /**
+   * Removes the players of this server from the presence index, so they
+   * don't show as online until they expire. Called when the plugin stops.
+   */
+  public static void clear() {
+    PresenceIndex presence = RedisManager.getPresence();
+    if (presence == null || !DatabaseManager.isReady()) {
+      return;
+    }
+
+    try {
+      presence.offline(onlineMembers());
+    } catch (RedisException e) {
+      FluffyTeams.getInstance().getLogger().warning("Couldn't remove the players of this server from the presence"
+          + " index, they will expire in " + PresenceIndex.TTL_MS / 1000 + " seconds");
+    }
+  }
+
+  // UUIDs of the online team members of this server, by team ID
+  private static Map<Long, List<String>> onlineMembers() {
+    TeamCache cache = DatabaseManager.getCache();
+    Map<Long, List<String>> online = new HashMap<>();
+    for (Player player : Bukkit.getOnlinePlayers()) {
+      Member member = cache.getMember(player.getUniqueId().toString());
+      if (member != null) {
+        online.computeIfAbsent(member.teamId, id -> new ArrayList<>()).add(member.playerUuid);
+      }
+    }
+    return online;
+  }
+}
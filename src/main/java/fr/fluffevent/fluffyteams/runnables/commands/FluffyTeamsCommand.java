@@ -4,8 +4,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.bukkit.Bukkit;
@@ -17,7 +22,16 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.controllers.PlayerResolver;
 import fr.fluffevent.fluffyteams.controllers.TeamController;
+import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.models.MembershipResult;
+import fr.fluffevent.fluffyteams.models.PlayerInfo;
+import fr.fluffevent.fluffyteams.models.database.Team;
+import fr.fluffevent.fluffyteams.utils.HandlerEvent;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import fr.fluffevent.fluffyteams.utils.Metrics;
 
 /**
  * Main command handler for the FluffyTeams plugin.
@@ -28,6 +42,7 @@ import fr.fluffevent.fluffyteams.controllers.TeamController;
 public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
 
   private final TeamController teamController;
+  private final PlayerResolver playerResolver = new PlayerResolver();
   private final Map<String, SubCommand> subCommands = new HashMap<>();
 
   /**
@@ -49,7 +64,11 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
     subCommands.put("remove", new RemoveCommand());
     subCommands.put("list", new ListCommand());
     subCommands.put("spawn", new SpawnCommand());
-    subCommands.put("setspawn", new SetSpawnCommand());
+    subCommands.put("setspawn", new SetSpawnCommand(false));
+    subCommands.put("addspawn", new SetSpawnCommand(true));
+    subCommands.put("setmaxsize", new SetMaxSizeCommand());
+    subCommands.put("shuffle", new ShuffleCommand());
+    subCommands.put("stats", new StatsCommand());
   }
 
   /**
@@ -74,15 +93,23 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
       return true;
     }
 
+    if (!DatabaseManager.isReady() && !args[0].equalsIgnoreCase("help")) {
+      sender.sendMessage("§cTeams are still loading from the database, please try again in a moment.");
+      return true;
+    }
+
     String subCommandName = args[0].toLowerCase();
     SubCommand subCommand = subCommands.get(subCommandName);
 
     if (subCommand != null) {
+      HandlerEvent handler = MainThreadWatchdog.begin("/ft " + subCommandName);
       try {
         String[] subArgs = Arrays.copyOfRange(args, 1, args.length);
         subCommand.execute(sender, subArgs);
-      } catch (IllegalArgumentException e) {
+      } catch (IllegalArgumentException | IllegalStateException e) {
         sender.sendMessage("§4Error: " + e.getMessage());
+      } finally {
+        MainThreadWatchdog.end(handler);
       }
     } else {
       subCommands.get("help").execute(sender, args);
@@ -114,12 +141,21 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
     }
 
     // Second level and beyond
+    if (!DatabaseManager.isReady()) {
+      return Collections.emptyList();
+    }
+
     String subCommandName = args[0].toLowerCase();
     SubCommand subCommand = subCommands.get(subCommandName);
 
     if (subCommand != null) {
-      String[] subArgs = Arrays.copyOfRange(args, 1, args.length);
-      return subCommand.tabComplete(sender, subArgs);
+      HandlerEvent handler = MainThreadWatchdog.begin("/ft " + subCommandName + " completion");
+      try {
+        String[] subArgs = Arrays.copyOfRange(args, 1, args.length);
+        return subCommand.tabComplete(sender, subArgs);
+      } finally {
+        MainThreadWatchdog.end(handler);
+      }
     }
 
     return Collections.emptyList();
@@ -154,17 +190,23 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
     @Override
     public void execute(CommandSender sender, String[] args) {
       sender.sendMessage("§e/fluffyteams help §7- §fShow this help message");
-      sender.sendMessage("§e/fluffyteams create <name> <display_name> §7- §fCreate a team");
+      sender.sendMessage("§e/fluffyteams create <name> <display_name> [max_size] §7- §fCreate a team");
       sender.sendMessage("§e/fluffyteams delete <name> §7- §fDelete a team");
       sender.sendMessage(
-          "§e/fluffyteams add <team> <player> §7- §fAdd a player to a team (works with offline players)");
+          "§e/fluffyteams add <team> <player...> §7- §fAdd players to a team (works with offline players)");
       sender.sendMessage(
-          "§e/fluffyteams remove <player> §7- §fRemove a player from their team (works with offline players)");
+          "§e/fluffyteams remove <player...> §7- §fRemove players from their team (works with offline players)");
       sender.sendMessage("§e/fluffyteams list §7- §fList all teams");
       sender.sendMessage("§e/fluffyteams list <team> §7- §fList all members of a team");
       sender.sendMessage("§e/fluffyteams spawn <team> §7- §fTeleport team to their spawn (* for all teams)");
       sender.sendMessage(
           "§e/fluffyteams setspawn <team> [world] [x] [y] [z] [yaw] [pitch] §7- §fSet a team spawn for the current world (* for all teams)");
+      sender.sendMessage(
+          "§e/fluffyteams addspawn <team> [world] [x] [y] [z] [yaw] [pitch] §7- §fAdd one more spawn to a team (* for all teams)");
+      sender.sendMessage("§e/fluffyteams setmaxsize <team> <size> §7- §fSet the maximum team size (0 for no limit)");
+      sender.sendMessage(
+          "§e/fluffyteams shuffle <team[:weight]...> §7- §fSpread online players without a team over teams (* for all teams)");
+      sender.sendMessage("§e/fluffyteams stats §7- §fShow plugin metrics");
     }
 
     @Override
@@ -180,11 +222,21 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
     @Override
     public void execute(CommandSender sender, String[] args) {
       if (args.length < 2) {
-        sender.sendMessage("§cUsage: /fluffyteams create <name> <display_name>");
+        sender.sendMessage("§cUsage: /fluffyteams create <name> <display_name> [max_size]");
         return;
       }
 
-      teamController.create(args[0], args[1]);
+      int maxSize = 0;
+      if (args.length >= 3) {
+        try {
+          maxSize = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+          sender.sendMessage("§cInvalid max size.");
+          return;
+        }
+      }
+
+      teamController.create(args[0], args[1], maxSize);
       sender.sendMessage("§aTeam created!");
     }
 
@@ -223,42 +275,120 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
   }
 
   /**
-   * Adds a player to a team. Works with both online and offline players.
-   * For offline players, validates their username with the Mojang API.
+   * Resolves the player names of a command and reports the names that don't
+   * match any Minecraft account. Names are looked up in parallel off the main
+   * thread, the callback runs in an async task, so its database writes don't
+   * hold up the lookups of other commands.
+   *
+   * @param sender   The sender of the command
+   * @param names    The player names given to the command
+   * @param callback Called with the UUID of each resolved player name
+   */
+  private void resolvePlayers(CommandSender sender, List<String> names, Consumer<Map<String, UUID>> callback) {
+    FluffyTeams plugin = FluffyTeams.getInstance();
+    Executor async = MainThreadWatchdog.withHandler(
+        task -> Bukkit.getScheduler().runTaskAsynchronously(plugin, task));
+    playerResolver.resolveAll(names).whenCompleteAsync((resolved, error) -> {
+      if (error != null) {
+        Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage("§4Error: " + error.getMessage()));
+        return;
+      }
+
+      List<String> unknown = new ArrayList<>();
+      Map<String, UUID> players = new LinkedHashMap<>();
+      resolved.forEach((name, uuid) -> {
+        if (uuid == null) {
+          unknown.add(name);
+        } else {
+          players.put(name, uuid);
+        }
+      });
+
+      if (!unknown.isEmpty()) {
+        Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage(
+            "§cCouldn't find a valid Minecraft account with name: " + String.join(", ", unknown)));
+      }
+      if (!players.isEmpty()) {
+        try {
+          callback.accept(players);
+        } catch (RuntimeException e) {
+          Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage("§4Error: " + e.getMessage()));
+        }
+      }
+    }, async);
+  }
+
+  /**
+   * Gets the distinct player names of a command, ignoring case.
+   *
+   * @param args The arguments holding the player names
+   * @return The player names, in the order they were given
+   */
+  private static List<String> distinctNames(String[] args) {
+    Map<String, String> names = new LinkedHashMap<>();
+    for (String arg : args) {
+      names.putIfAbsent(arg.toLowerCase(), arg);
+    }
+    return new ArrayList<>(names.values());
+  }
+
+  /**
+   * Suggests online players for the last argument, skipping the ones already
+   * given.
+   *
+   * @param args The arguments holding the player names so far
+   * @return The matching online player names
+   */
+  private static List<String> suggestPlayers(String[] args) {
+    String current = args[args.length - 1];
+    List<String> given = Arrays.asList(args).subList(0, args.length - 1);
+    return Bukkit.getOnlinePlayers().stream()
+        .map(Player::getName)
+        .filter(name -> name.startsWith(current) && !given.contains(name))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Adds one or more players to a team. Works with both online and offline
+   * players. Names are resolved in parallel (offline players through the
+   * Mojang API) and all players are then added in one batch.
    */
   private class AddCommand implements SubCommand {
     @Override
     public void execute(CommandSender sender, String[] args) {
       if (args.length < 2) {
-        sender.sendMessage("§cUsage: /fluffyteams add <team> <player>");
+        sender.sendMessage("§cUsage: /fluffyteams add <team> <player...>");
         return;
       }
 
-      String teamName = args[0];
-      String playerName = args[1];
-
-      // Try to get online player first
-      Player player = Bukkit.getPlayer(playerName);
+      Team team = teamController.getTeam(args[0]);
+      if (team == null) {
+        throw new IllegalArgumentException("Team " + args[0] + " not found");
+      }
 
-      try {
-        if (player != null) {
-          // Player is online, use normal method
-          teamController.addMember(teamName, player);
-          sender.sendMessage("§aPlayer " + playerName + " added to team " + teamName + "!");
-        } else {
-          // Player is offline, use offline method
-          boolean success = teamController.addOfflineMember(teamName, playerName);
-          if (success) {
-            sender.sendMessage("§aPlayer " + playerName + " added to team " + teamName + "!");
-            sender.sendMessage("§e(Mojang-validated player who has never connected to this server)");
-          } else {
-            sender.sendMessage("§cCouldn't find a valid Minecraft account with name: " + playerName);
-            sender.sendMessage("§cThe player name must be a valid Minecraft account registered with Mojang.");
+      List<String> names = distinctNames(Arrays.copyOfRange(args, 1, args.length));
+      FluffyTeams plugin = FluffyTeams.getInstance();
+      resolvePlayers(sender, names, players -> {
+        Map<String, Team> assignments = new LinkedHashMap<>();
+        players.values().forEach(uuid -> assignments.put(uuid.toString(), team));
+        Map<String, MembershipResult> results = teamController.addMembers(assignments);
+
+        Bukkit.getScheduler().runTask(plugin, () -> players.forEach((name, uuid) -> {
+          switch (results.get(uuid.toString())) {
+            case ADDED:
+              sender.sendMessage("§aPlayer " + name + " added to team " + team.name + "!");
+              break;
+            case ALREADY_IN_TEAM:
+              sender.sendMessage("§cPlayer " + name + " is already in a team");
+              break;
+            case TEAM_FULL:
+              sender.sendMessage("§cCouldn't add " + name + ", team " + team.name + " is full");
+              break;
+            default:
+              break;
           }
-        }
-      } catch (IllegalArgumentException e) {
-        sender.sendMessage("§c" + e.getMessage());
-      }
+        }));
+      });
     }
 
     @Override
@@ -269,65 +399,46 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
             .map(t -> t.name)
             .filter(name -> name.startsWith(args[0]))
             .collect(Collectors.toList());
-      } else if (args.length == 2) {
-        // Suggest online players
-        return Bukkit.getOnlinePlayers().stream()
-            .map(Player::getName)
-            .filter(name -> name.startsWith(args[1]))
-            .collect(Collectors.toList());
       }
-      return Collections.emptyList();
+      // Suggest online players
+      return suggestPlayers(Arrays.copyOfRange(args, 1, args.length));
     }
   }
 
   /**
-   * Removes a player from their team. Works with both online and offline players.
-   * For offline players, validates their username with the Mojang API.
+   * Removes one or more players from their team. Works with both online and
+   * offline players. Names are resolved in parallel (offline players through
+   * the Mojang API) and all players are then removed in one batch.
    */
   private class RemoveCommand implements SubCommand {
     @Override
     public void execute(CommandSender sender, String[] args) {
       if (args.length < 1) {
-        sender.sendMessage("§cUsage: /fluffyteams remove <player>");
+        sender.sendMessage("§cUsage: /fluffyteams remove <player...>");
         return;
       }
 
-      String playerName = args[0];
-
-      // Try to get online player first
-      Player playerToRemove = Bukkit.getPlayer(playerName);
+      List<String> names = distinctNames(args);
+      FluffyTeams plugin = FluffyTeams.getInstance();
+      resolvePlayers(sender, names, players -> {
+        List<String> uuids = new ArrayList<>();
+        players.values().forEach(uuid -> uuids.add(uuid.toString()));
+        Map<String, MembershipResult> results = teamController.removeMembers(uuids);
 
-      try {
-        if (playerToRemove != null) {
-          // Player is online, use normal method
-          teamController.removeMember(playerToRemove);
-          sender.sendMessage("§aPlayer " + playerName + " removed from team!");
-        } else {
-          // Player is offline, use offline method
-          boolean success = teamController.removeOfflineMember(playerName);
-          if (success) {
-            sender.sendMessage("§aPlayer " + playerName + " removed from team!");
-            sender.sendMessage("§e(Player is currently offline)");
+        Bukkit.getScheduler().runTask(plugin, () -> players.forEach((name, uuid) -> {
+          if (results.get(uuid.toString()) == MembershipResult.REMOVED) {
+            sender.sendMessage("§aPlayer " + name + " removed from team!");
           } else {
-            sender.sendMessage("§cCouldn't find a valid player with name: " + playerName);
-            sender.sendMessage("§cMake sure the player exists and is in a team.");
+            sender.sendMessage("§cPlayer " + name + " is not in a team");
           }
-        }
-      } catch (IllegalArgumentException e) {
-        sender.sendMessage("§c" + e.getMessage());
-      }
+        }));
+      });
     }
 
     @Override
     public List<String> tabComplete(CommandSender sender, String[] args) {
-      if (args.length == 1) {
-        // Suggest online players
-        return Bukkit.getOnlinePlayers().stream()
-            .map(Player::getName)
-            .filter(name -> name.startsWith(args[0]))
-            .collect(Collectors.toList());
-      }
-      return Collections.emptyList();
+      // Suggest online players
+      return suggestPlayers(args);
     }
   }
 
@@ -335,24 +446,66 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
    * Lists all teams or lists the members of a specific team.
    */
   private class ListCommand implements SubCommand {
+    // Online members are read from Redis and unknown names from Mojang, off
+    // the main thread, then the list is sent back on it
     @Override
     public void execute(CommandSender sender, String[] args) {
+      FluffyTeams plugin = FluffyTeams.getInstance();
       if (args.length == 0) {
-        sender.sendMessage("§eTeams:");
-        teamController.list().forEach(t -> sender.sendMessage("§f- " + t.name + " §r§f(" + t.displayName + "§r§f)"));
+        List<Team> teams = teamController.list();
+        Map<Long, Integer> sizes = new HashMap<>();
+        teams.forEach(t -> sizes.put(t.id, teamController.countMembers(t)));
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, MainThreadWatchdog.withHandler(() -> {
+          Map<Long, Long> online;
+          try {
+            online = teamController.countOnlineMembers(teams);
+          } catch (RuntimeException e) {
+            Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage("§4Error: " + e.getMessage()));
+            return;
+          }
+
+          Bukkit.getScheduler().runTask(plugin, () -> {
+            sender.sendMessage("§eTeams:");
+            teams.forEach(t -> {
+              String size = t.maxSize > 0
+                  ? " §7[" + sizes.get(t.id) + "/" + t.maxSize + "]"
+                  : "";
+              sender.sendMessage("§f- " + t.name + " §r§f(" + t.displayName + "§r§f)" + size
+                  + " §a" + online.getOrDefault(t.id, 0L) + " online");
+            });
+          });
+        }));
       } else {
-        sender.sendMessage("§eMembers of " + args[0] + ":");
-        teamController.listMembers(args[0]).forEach(playerInfo -> {
-          String displayName = playerInfo.getUsername();
-          String statusInfo = "";
-
-          // Add indicator for players who have never connected
-          if (!playerInfo.hasConnectedBefore()) {
-            statusInfo = " §7(never connected)";
+        if (teamController.getTeam(args[0]) == null) {
+          throw new IllegalArgumentException("Team " + args[0] + " not found");
+        }
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, MainThreadWatchdog.withHandler(() -> {
+          List<PlayerInfo> members;
+          try {
+            members = teamController.listMembers(args[0]);
+          } catch (RuntimeException e) {
+            Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage("§4Error: " + e.getMessage()));
+            return;
           }
 
-          sender.sendMessage("§f- " + displayName + statusInfo);
-        });
+          Bukkit.getScheduler().runTask(plugin, () -> {
+            sender.sendMessage("§eMembers of " + args[0] + ":");
+            members.forEach(playerInfo -> {
+              String displayName = playerInfo.getUsername();
+              String statusInfo = "";
+
+              // Add indicator for online players, and those who have never connected
+              if (playerInfo.isOnline()) {
+                statusInfo = " §a(online)";
+              } else if (!playerInfo.hasConnectedBefore()) {
+                statusInfo = " §7(never connected)";
+              }
+
+              sender.sendMessage("§f- " + displayName + statusInfo);
+            });
+          });
+        }));
       }
     }
 
@@ -404,16 +557,23 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
   }
 
   /**
-   * Sets the spawn location for a team.
+   * Sets the spawn location for a team, or adds one more spawn to it.
    * Can set spawn for all teams by using the "*" wildcard.
    * Supports either using the sender's current location or
    * specifying coordinates manually.
    */
   private class SetSpawnCommand implements SubCommand {
+    private final boolean add;
+
+    SetSpawnCommand(boolean add) {
+      this.add = add;
+    }
+
     @Override
     public void execute(CommandSender sender, String[] args) {
       if (args.length < 1) {
-        sender.sendMessage("§cUsage: /fluffyteams setspawn <team> [world] [x] [y] [z] [yaw] [pitch]");
+        sender.sendMessage("§cUsage: /fluffyteams " + (add ? "addspawn" : "setspawn")
+            + " <team> [world] [x] [y] [z] [yaw] [pitch]");
         return;
       }
 
@@ -455,8 +615,13 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
         return;
       }
 
-      teamController.setSpawn(teamName, location);
-      sender.sendMessage("§aSpawn set!");
+      if (add) {
+        teamController.addSpawn(teamName, location);
+        sender.sendMessage("§aSpawn added!");
+      } else {
+        teamController.setSpawn(teamName, location);
+        sender.sendMessage("§aSpawn set!");
+      }
     }
 
     @Override
@@ -500,4 +665,148 @@ public class FluffyTeamsCommand implements CommandExecutor, TabCompleter {
       return Collections.emptyList();
     }
   }
+
+  /**
+   * Sets the maximum number of members of a team.
+   * Players already in the team are kept, only new additions are rejected.
+   */
+  private class SetMaxSizeCommand implements SubCommand {
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+      if (args.length < 2) {
+        sender.sendMessage("§cUsage: /fluffyteams setmaxsize <team> <size>");
+        return;
+      }
+
+      int maxSize;
+      try {
+        maxSize = Integer.parseInt(args[1]);
+      } catch (NumberFormatException e) {
+        sender.sendMessage("§cInvalid max size.");
+        return;
+      }
+
+      teamController.setMaxSize(args[0], maxSize);
+      sender.sendMessage(maxSize > 0 ? "§aMax size set!" : "§aMax size removed!");
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String[] args) {
+      if (args.length == 1) {
+        return teamController.list().stream()
+            .map(t -> t.name)
+            .filter(name -> name.startsWith(args[0]))
+            .collect(Collectors.toList());
+      }
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Distributes every online player who isn't in a team yet over the given
+   * teams, evenly or by weight. The assignment is computed in memory and
+   * written in one batch off the main thread.
+   */
+  private class ShuffleCommand implements SubCommand {
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+      if (args.length < 1) {
+        sender.sendMessage("§cUsage: /fluffyteams shuffle <team[:weight]...>");
+        return;
+      }
+
+      Map<String, Integer> teamWeights = new LinkedHashMap<>();
+      if (args.length == 1 && args[0].equals("*")) {
+        teamController.list().forEach(t -> teamWeights.put(t.name, 1));
+      } else {
+        for (String arg : args) {
+          String[] parts = arg.split(":", 2);
+          try {
+            teamWeights.put(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+          } catch (NumberFormatException e) {
+            sender.sendMessage("§cInvalid weight: " + arg);
+            return;
+          }
+        }
+      }
+
+      Map<String, Team> assignments = teamController.planShuffle(teamWeights, Bukkit.getOnlinePlayers());
+      if (assignments.isEmpty()) {
+        sender.sendMessage("§eNo player to shuffle (everyone is in a team or the teams are full).");
+        return;
+      }
+
+      long unassigned = Bukkit.getOnlinePlayers().stream()
+          .filter(p -> teamController.getMember(p) == null)
+          .count() - assignments.size();
+
+      FluffyTeams plugin = FluffyTeams.getInstance();
+      Bukkit.getScheduler().runTaskAsynchronously(plugin, MainThreadWatchdog.withHandler(() -> {
+        Map<String, MembershipResult> results;
+        try {
+          results = teamController.addMembers(assignments);
+        } catch (RuntimeException e) {
+          Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage("§4Error: " + e.getMessage()));
+          return;
+        }
+
+        Map<String, Integer> addedByTeam = new TreeMap<>();
+        results.forEach((uuid, result) -> {
+          if (result == MembershipResult.ADDED) {
+            addedByTeam.merge(assignments.get(uuid).name, 1, Integer::sum);
+          }
+        });
+        int added = addedByTeam.values().stream().mapToInt(Integer::intValue).sum();
+
+        Bukkit.getScheduler().runTask(plugin, () -> {
+          sender.sendMessage("§aShuffled " + added + " players:");
+          addedByTeam.forEach((team, count) -> sender.sendMessage("§f- " + team + ": " + count));
+          if (added < assignments.size()) {
+            sender.sendMessage("§e" + (assignments.size() - added) + " players joined a team in the meantime.");
+          }
+          if (unassigned > 0) {
+            sender.sendMessage("§c" + unassigned + " players couldn't be placed, the teams are full.");
+          }
+        });
+      }));
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String[] args) {
+      String current = args[args.length - 1];
+      List<String> suggestions = new ArrayList<>(
+          teamController.list().stream()
+              .map(t -> t.name)
+              .collect(Collectors.toList()));
+
+      if (args.length == 1) {
+        // Add the wildcard option
+        suggestions.add("*");
+      }
+
+      return suggestions.stream()
+          .filter(name -> name.startsWith(current))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Shows the plugin metrics.
+   */
+  private class StatsCommand implements SubCommand {
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+      Map<String, Long> metrics = Metrics.snapshot();
+      sender.sendMessage("§eStats:");
+      if (metrics.isEmpty()) {
+        sender.sendMessage("§7No metrics yet");
+      }
+      metrics.forEach((name, value) -> sender.sendMessage("§f- " + name + ": " + value));
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String[] args) {
+      return Collections.emptyList();
+    }
+  }
 }
@@ -0,0 +1,112 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a failing dependency for a while instead of paying a timeout
+ * on every call.
+ * The breaker opens after a number of consecutive failures. Once the open
+ * period is over, a single trial call is let through (half-open): it closes
+ * the breaker if it succeeds and opens it again otherwise.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openMillis;
+  private final LongSupplier clock;
+
+  private State state = State.CLOSED;
+  private int failures;
+  private long openedAt;
+
+  /**
+   * Creates a circuit breaker.
+   *
+   * @param failureThreshold The number of consecutive failures that opens it
+   * @param openMillis       How long it stays open before a trial call
+   */
+  public CircuitBreaker(int failureThreshold, long openMillis) {
+    this(failureThreshold, openMillis, System::currentTimeMillis);
+  }
+
+  /**
+   * Creates a circuit breaker with its own clock.
+   *
+   * @param failureThreshold The number of consecutive failures that opens it
+   * @param openMillis       How long it stays open before a trial call
+   * @param clock            The current time in milliseconds
+   */
+  public CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openMillis = openMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Checks if a call may go through, and moves to half-open when the open
+   * period is over. A caller allowed through must report the outcome with
+   * recordSuccess() or recordFailure().
+   *
+   * @return true if the call may be made
+   */
+  public synchronized boolean allowRequest() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (clock.getAsLong() - openedAt >= openMillis) {
+          state = State.HALF_OPEN;
+          return true;
+        }
+        return false;
+      default:
+        // The trial call is still running
+        return false;
+    }
+  }
+
+  /**
+   * Reports a successful call, closing the breaker.
+   *
+   * @return true if the breaker was not closed before
+   */
+  public synchronized boolean recordSuccess() {
+    boolean recovered = state != State.CLOSED;
+    state = State.CLOSED;
+    failures = 0;
+    return recovered;
+  }
+
+  /**
+   * Reports a failed call.
+   *
+   * @return true if this failure opened the breaker
+   */
+  public synchronized boolean recordFailure() {
+    failures++;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+      boolean opened = state == State.CLOSED;
+      state = State.OPEN;
+      openedAt = clock.getAsLong();
+      return opened;
+    }
+    return false;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Checks if calls are currently being held back.
+   *
+   * @return true unless the breaker is closed
+   */
+  public synchronized boolean isOpen() {
+    return state != State.CLOSED;
+  }
+}
@@ -0,0 +1,29 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of a listener, command or task of the plugin,
+ * started and committed by MainThreadWatchdog.begin() and end().
+ */
+@Name("fluffyteams.Handler")
+@Label("Handler")
+@Category("FluffyTeams")
+@Description("A listener, command or task of FluffyTeams")
+@StackTrace(false)
+public class HandlerEvent extends Event {
+
+  @Label("Handler")
+  public String handler;
+
+  // When the watchdog started timing it, 0 if it doesn't. Not recorded
+  transient long watchdogStart;
+
+  // Whether it's the outermost handler of its thread. Not recorded
+  transient boolean outermost;
+}
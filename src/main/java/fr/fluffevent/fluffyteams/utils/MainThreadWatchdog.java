@@ -0,0 +1,227 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the time the plugin's listeners, commands and tasks spend on the
+ * server's main thread, and flags blocking calls (database queries, HTTP
+ * requests) made from it.
+ * Handlers are timed with begin() and end(), which also record them for Java
+ * Flight Recorder. tick() runs once per server tick and reports the ticks
+ * where the plugin used more than its budget. Blocking calls report
+ * themselves with checkBlocking(), a stack sample is logged once per call
+ * site. Everything is counted in /ft stats (watchdog.*).
+ */
+public class MainThreadWatchdog {
+
+  // Interval between two warnings about ticks over budget
+  private static final long WARNING_INTERVAL_NS = 60_000_000_000L;
+  // Call sites logged with a stack sample, later ones are only counted
+  private static final int MAX_CALL_SITES = 100;
+  private static final String PACKAGE = "fr.fluffevent.fluffyteams.";
+
+  private static volatile Thread mainThread;
+  private static volatile Logger logger;
+  private static long budgetNanos;
+
+  // Only touched from the main thread
+  private static final Map<String, Long> spent = new HashMap<>();
+  private static int depth;
+  private static long lastWarning;
+  private static long maxTickNanos;
+
+  private static final Set<String> reportedCallSites = ConcurrentHashMap.newKeySet();
+
+  // Outermost handler running on each thread, tasks it starts keep it
+  // through withHandler()
+  private static final ThreadLocal<String> currentHandler = new ThreadLocal<>();
+
+  // Starts watching the calling thread, which must be the main thread. A
+  // budget of 0 or less disables the watchdog
+  public static void enable(long budgetMillis, Logger log) {
+    if (budgetMillis <= 0) {
+      disable();
+      return;
+    }
+    budgetNanos = budgetMillis * 1_000_000;
+    logger = log;
+    lastWarning = System.nanoTime() - WARNING_INTERVAL_NS;
+    mainThread = Thread.currentThread();
+  }
+
+  public static void disable() {
+    mainThread = null;
+    spent.clear();
+    depth = 0;
+    maxTickNanos = 0;
+    reportedCallSites.clear();
+  }
+
+  // Whether the watchdog is on and the caller runs on the main thread
+  public static boolean isMainThread() {
+    Thread main = mainThread;
+    return main != null && Thread.currentThread() == main;
+  }
+
+  // Starts timing a handler, returns the event to give to end(). The handler
+  // is also recorded by Java Flight Recorder, on any thread. Nested handlers
+  // are counted in the outermost one by the watchdog
+  public static HandlerEvent begin(String name) {
+    HandlerEvent event = new HandlerEvent();
+    event.handler = name;
+    event.begin();
+    if (currentHandler.get() == null) {
+      currentHandler.set(name);
+      event.outermost = true;
+    }
+    if (isMainThread()) {
+      depth++;
+      event.watchdogStart = System.nanoTime();
+    }
+    return event;
+  }
+
+  // Stops timing a handler started with begin()
+  public static void end(HandlerEvent event) {
+    event.commit();
+    if (event.outermost) {
+      currentHandler.remove();
+    }
+    if (event.watchdogStart == 0 || !isMainThread()) {
+      return;
+    }
+    if (--depth > 0) {
+      return;
+    }
+    depth = 0;
+    spent.merge(event.handler, System.nanoTime() - event.watchdogStart, Long::sum);
+  }
+
+  // Name of the listener, command or task running on this thread, null if
+  // none
+  public static String currentHandler() {
+    return currentHandler.get();
+  }
+
+  // Makes a task run by another thread count as part of the current handler
+  public static Runnable withHandler(Runnable task) {
+    return withHandler(currentHandler.get(), task);
+  }
+
+  // Makes the tasks run by an executor count as part of the current handler,
+  // e.g. the stages of a CompletableFuture and the callbacks they complete
+  public static Executor withHandler(Executor executor) {
+    String name = currentHandler.get();
+    if (name == null) {
+      return executor;
+    }
+    return task -> executor.execute(withHandler(name, task));
+  }
+
+  private static Runnable withHandler(String name, Runnable task) {
+    if (name == null) {
+      return task;
+    }
+    return () -> {
+      boolean outermost = currentHandler.get() == null;
+      if (outermost) {
+        currentHandler.set(name);
+      }
+      try {
+        task.run();
+      } finally {
+        if (outermost) {
+          currentHandler.remove();
+        }
+      }
+    };
+  }
+
+  // Called before a blocking call of the given kind (jdbc, http). Counts and
+  // logs it when made from the main thread
+  public static void checkBlocking(String kind) {
+    if (!isMainThread()) {
+      return;
+    }
+    Metrics.increment("watchdog.blocking." + kind);
+
+    Throwable sample = new Throwable("Blocking " + kind + " call on the main thread");
+    String callSite = callSite(sample.getStackTrace());
+    if (reportedCallSites.size() < MAX_CALL_SITES && reportedCallSites.add(kind + " " + callSite)) {
+      logger.log(Level.WARNING, "Blocking " + kind + " call on the main thread from " + callSite
+          + ", it stalls every player until it returns", sample);
+    }
+  }
+
+  // Closes the current tick: compares the time spent in handlers since the
+  // previous tick with the budget. Runs on the main thread every tick
+  public static void tick() {
+    if (!isMainThread() || spent.isEmpty()) {
+      return;
+    }
+
+    long total = 0;
+    for (long nanos : spent.values()) {
+      total += nanos;
+    }
+    Metrics.add("watchdog.main_thread_us", total / 1000);
+    if (total > maxTickNanos) {
+      maxTickNanos = total;
+      Metrics.set("watchdog.max_tick_us", total / 1000);
+    }
+
+    if (total > budgetNanos) {
+      Metrics.increment("watchdog.overruns");
+      long now = System.nanoTime();
+      if (now - lastWarning >= WARNING_INTERVAL_NS) {
+        lastWarning = now;
+        logger.warning("Used " + total / 1_000_000 + " ms of the main thread in one tick, over the "
+            + budgetNanos / 1_000_000 + " ms budget: " + describe(spent));
+      }
+    }
+    spent.clear();
+  }
+
+  // The handlers of a tick, slowest first
+  private static String describe(Map<String, Long> handlers) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(handlers.entrySet());
+    entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+    StringBuilder description = new StringBuilder();
+    for (int i = 0; i < entries.size() && i < 5; i++) {
+      if (i > 0) {
+        description.append(", ");
+      }
+      Map.Entry<String, Long> entry = entries.get(i);
+      description.append(entry.getKey()).append(' ').append(entry.getValue() / 1000).append(" us");
+    }
+    return description.toString();
+  }
+
+  // First frame of the plugin outside the database layer and this class, the
+  // code that asked for the blocking call
+  private static String callSite(StackTraceElement[] stack) {
+    StackTraceElement fallback = null;
+    for (StackTraceElement frame : stack) {
+      String className = frame.getClassName();
+      if (!className.startsWith(PACKAGE) || className.equals(MainThreadWatchdog.class.getName())) {
+        continue;
+      }
+      if (fallback == null) {
+        fallback = frame;
+      }
+      if (!className.startsWith(PACKAGE + "database.") && !className.equals(MojangClient.class.getName())) {
+        return frame.toString();
+      }
+    }
+    return fallback != null ? fallback.toString() : stack[stack.length - 1].toString();
+  }
+}
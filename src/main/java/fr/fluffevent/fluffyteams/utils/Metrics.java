@@ -0,0 +1,56 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and gauges of the plugin, shown by /ft stats.
+ * Updating a metric is cheap and can be done from any thread.
+ */
+public class Metrics {
+
+  private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private static final Map<String, Long> gauges = new ConcurrentHashMap<>();
+
+  /**
+   * Adds one to a counter.
+   *
+   * @param name The name of the counter
+   */
+  public static void increment(String name) {
+    add(name, 1);
+  }
+
+  /**
+   * Adds a value to a counter.
+   *
+   * @param name  The name of the counter
+   * @param delta The value to add
+   */
+  public static void add(String name, long delta) {
+    counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+  }
+
+  /**
+   * Sets the current value of a gauge.
+   *
+   * @param name  The name of the gauge
+   * @param value The current value
+   */
+  public static void set(String name, long value) {
+    gauges.put(name, value);
+  }
+
+  /**
+   * Reads every counter and gauge.
+   *
+   * @return The value of each metric, ordered by name
+   */
+  public static Map<String, Long> snapshot() {
+    Map<String, Long> values = new TreeMap<>(gauges);
+    counters.forEach((name, counter) -> values.put(name, counter.sum()));
+    return values;
+  }
+}
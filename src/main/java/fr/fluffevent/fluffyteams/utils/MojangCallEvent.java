@@ -0,0 +1,26 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of a request to the Mojang API. Retries are
+ * recorded as separate events.
+ */
+@Name("fluffyteams.MojangCall")
+@Label("Mojang API Call")
+@Category("FluffyTeams")
+@Description("An HTTP request made by MojangClient")
+public class MojangCallEvent extends Event {
+
+  @Label("Endpoint")
+  @Description("URL of the request without the player name or UUID")
+  public String endpoint;
+
+  @Label("Status")
+  @Description("HTTP status, 0 if no response was received")
+  public int status;
+}
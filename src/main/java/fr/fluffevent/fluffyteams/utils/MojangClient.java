@@ -0,0 +1,233 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Client for the Mojang profile APIs, shared by every lookup.
+ * Connections are pooled (HTTP/2 when available), calls are rate limited,
+ * transient errors are retried with jittered backoff, and once the API keeps
+ * failing, calls fail fast until a trial call succeeds again.
+ */
+public class MojangClient {
+
+  public static final URI PROFILES_URI = URI.create("https://api.mojang.com/users/profiles/minecraft/");
+  public static final URI SESSION_URI = URI.create("https://sessionserver.mojang.com/session/minecraft/profile/");
+
+  // Mojang allows about 600 profile lookups per 10 minutes and IP
+  private static final double PERMITS_PER_SECOND = 1;
+  private static final int BURST = 20;
+  private static final long MAX_RATE_LIMIT_WAIT_MS = 2_000;
+
+  private static final int FAILURE_THRESHOLD = 5;
+  private static final long OPEN_MS = 30_000;
+
+  private static final int MAX_RETRIES = 2;
+  private static final long BASE_BACKOFF_MS = 250;
+  private static final long MAX_BACKOFF_MS = 5_000;
+
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(3);
+
+  private static final Gson gson = new Gson();
+
+  private final HttpClient http;
+  private final URI profilesUri;
+  private final URI sessionUri;
+  private final RateLimiter limiter;
+  private final CircuitBreaker breaker;
+  private final int maxRetries;
+  private final long baseBackoffMs;
+
+  public MojangClient() {
+    this(PROFILES_URI, SESSION_URI, new RateLimiter(PERMITS_PER_SECOND, BURST),
+        new CircuitBreaker(FAILURE_THRESHOLD, OPEN_MS), MAX_RETRIES, BASE_BACKOFF_MS);
+  }
+
+  /**
+   * Creates a client with its own endpoints and limits, e.g. to test against a
+   * local server.
+   *
+   * @param profilesUri   The base URI of the name to UUID lookups
+   * @param sessionUri    The base URI of the UUID to name lookups
+   * @param limiter       The rate limiter shared by all calls
+   * @param breaker       The circuit breaker shared by all calls
+   * @param maxRetries    The number of retries of a failed call
+   * @param baseBackoffMs The backoff before the first retry, doubled for each
+   *                      retry
+   */
+  public MojangClient(URI profilesUri, URI sessionUri, RateLimiter limiter, CircuitBreaker breaker,
+      int maxRetries, long baseBackoffMs) {
+    this.http = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .build();
+    this.profilesUri = profilesUri;
+    this.sessionUri = sessionUri;
+    this.limiter = limiter;
+    this.breaker = breaker;
+    this.maxRetries = maxRetries;
+    this.baseBackoffMs = baseBackoffMs;
+  }
+
+  /**
+   * Looks up the UUID of a player name.
+   *
+   * @param username The Minecraft username
+   * @return The UUID, or null if no account has this name
+   * @throws IOException if the API is unavailable
+   */
+  public UUID fetchUUID(String username) throws IOException {
+    JsonObject json = get(profilesUri.resolve(URLEncoder.encode(username, StandardCharsets.UTF_8)));
+    if (json == null) {
+      return null;
+    }
+
+    // Mojang API returns UUID without hyphens, we need to add them
+    String id = json.get("id").getAsString();
+    return UUID.fromString(id.replaceFirst(
+        "(\\p{XDigit}{8})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}{4})(\\p{XDigit}+)", "$1-$2-$3-$4-$5"));
+  }
+
+  /**
+   * Looks up the current name of a player UUID.
+   *
+   * @param uuid The UUID of the player
+   * @return The name, or null if no account has this UUID
+   * @throws IOException if the API is unavailable
+   */
+  public String fetchUsername(UUID uuid) throws IOException {
+    JsonObject json = get(sessionUri.resolve(uuid.toString().replace("-", "")));
+    return json == null ? null : json.get("name").getAsString();
+  }
+
+  public CircuitBreaker.State getState() {
+    return breaker.getState();
+  }
+
+  // Returns null when the profile doesn't exist (204, or 404/400 for names
+  // that can't exist)
+  private JsonObject get(URI uri) throws IOException {
+    if (!acquire()) {
+      Metrics.increment("mojang.rate_limited");
+      throw new IOException("Too many Mojang API lookups, try again in a moment");
+    }
+    if (!breaker.allowRequest()) {
+      Metrics.increment("mojang.rejected");
+      throw new IOException("Mojang API unavailable, skipping lookups for a moment");
+    }
+
+    HttpRequest request = HttpRequest.newBuilder(uri)
+        .timeout(REQUEST_TIMEOUT)
+        .header("Accept", "application/json")
+        .GET()
+        .build();
+
+    MainThreadWatchdog.checkBlocking("http");
+    IOException failure;
+    for (int attempt = 0;; attempt++) {
+      Metrics.increment("mojang.requests");
+      try {
+        HttpResponse<String> response = send(request);
+        int status = response.statusCode();
+        if (status == 200) {
+          breaker.recordSuccess();
+          return gson.fromJson(response.body(), JsonObject.class);
+        }
+        if (status != 429 && status < 500) {
+          breaker.recordSuccess();
+          return null;
+        }
+        failure = new StatusException(status, response.headers().firstValueAsLong("Retry-After").orElse(-1));
+      } catch (IOException ex) {
+        failure = ex;
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        breaker.recordFailure();
+        throw new IOException("Interrupted while calling the Mojang API", ex);
+      }
+
+      // Retries wait for their turn like any other call
+      if (attempt == maxRetries || !sleep(backoff(attempt + 1, failure)) || !acquire()) {
+        break;
+      }
+    }
+
+    Metrics.increment("mojang.failures");
+    breaker.recordFailure();
+    throw failure;
+  }
+
+  // Sends a request, recorded as a Java Flight Recorder event and in the
+  // slow operation log
+  private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+    MojangCallEvent event = new MojangCallEvent();
+    event.begin();
+    long start = System.nanoTime();
+    int status = 0;
+    try {
+      HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+      status = response.statusCode();
+      return response;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        // The last path segment is the player name or UUID
+        event.endpoint = request.uri().resolve(".").toString();
+        event.status = status;
+        event.commit();
+      }
+      SlowOperationLog.record("http", request.method() + " " + request.uri() + " -> " + status, null, -1,
+          System.nanoTime() - start);
+    }
+  }
+
+  private boolean acquire() {
+    try {
+      return limiter.tryAcquire(MAX_RATE_LIMIT_WAIT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  // Exponential backoff with jitter, or the delay asked by a 429
+  private long backoff(int attempt, IOException failure) {
+    if (failure instanceof StatusException && ((StatusException) failure).retryAfterSeconds >= 0) {
+      return Math.min(MAX_BACKOFF_MS, TimeUnit.SECONDS.toMillis(((StatusException) failure).retryAfterSeconds));
+    }
+    long cap = Math.min(MAX_BACKOFF_MS, baseBackoffMs << (attempt - 1));
+    return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+  }
+
+  private static boolean sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static class StatusException extends IOException {
+    private final long retryAfterSeconds;
+
+    StatusException(int status, long retryAfterSeconds) {
+      super("Mojang API answered with status " + status);
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+  }
+}
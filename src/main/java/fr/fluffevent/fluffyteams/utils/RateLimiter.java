@@ -0,0 +1,66 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter.
+ * Tokens are refilled at a steady rate up to a burst size, each call takes
+ * one. A caller that has to wait reserves its token up front, so concurrent
+ * callers are spaced out instead of all waking up at once.
+ */
+public class RateLimiter {
+
+  private final double tokensPerNano;
+  private final double burst;
+
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   * Creates a rate limiter, starting with a full bucket.
+   *
+   * @param permitsPerSecond The steady rate of calls
+   * @param burst            The number of calls that can be made at once
+   */
+  public RateLimiter(double permitsPerSecond, int burst) {
+    this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.burst = Math.max(1, burst);
+    this.tokens = this.burst;
+    this.lastRefill = System.nanoTime();
+  }
+
+  /**
+   * Takes a token, waiting for one if needed.
+   *
+   * @param timeout The maximum time to wait
+   * @param unit    The unit of the timeout
+   * @return true if a token was taken, false if none would be available in
+   *         time (nothing is taken then)
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+    long waitNanos;
+    synchronized (this) {
+      refill();
+      if (tokens >= 1) {
+        tokens -= 1;
+        return true;
+      }
+
+      waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+      if (waitNanos > unit.toNanos(timeout)) {
+        return false;
+      }
+      tokens -= 1;
+    }
+
+    TimeUnit.NANOSECONDS.sleep(waitNanos);
+    return true;
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+}
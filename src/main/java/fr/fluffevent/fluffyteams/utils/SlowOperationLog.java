@@ -0,0 +1,185 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Log of the database queries and external calls slower than a threshold,
+ * with what they ran (SQL and parameters, or the request), the rows, the
+ * duration, the TeamController method that made them and the command or
+ * listener behind it.
+ * Entries are written by a background thread to rotating files, a full queue
+ * drops entries (counted as slowlog.dropped) rather than slow down callers.
+ */
+public class SlowOperationLog {
+
+  // Rotation: slow-operations.0.log is the current file
+  private static final int FILE_SIZE = 5 * 1024 * 1024;
+  private static final int FILE_COUNT = 3;
+  private static final int QUEUE_SIZE = 1000;
+  private static final int MAX_SQL_LENGTH = 2000;
+  private static final int MAX_VALUE_LENGTH = 100;
+
+  private static final String CONTROLLER = "fr.fluffevent.fluffyteams.controllers.TeamController";
+
+  private static volatile long thresholdNanos;
+  private static volatile FileHandler file;
+  private static volatile ThreadPoolExecutor writer;
+
+  // Starts logging operations slower than thresholdMillis to files in the
+  // given directory. A threshold of 0 or less disables the log
+  public static synchronized void open(long thresholdMillis, Path directory, Logger logger) {
+    close();
+    if (thresholdMillis <= 0) {
+      return;
+    }
+
+    try {
+      FileHandler handler = new FileHandler(directory.resolve("slow-operations.%g.log").toString(), FILE_SIZE,
+          FILE_COUNT, true);
+      handler.setFormatter(new Formatter() {
+        @Override
+        public String format(LogRecord record) {
+          return Instant.ofEpochMilli(record.getMillis()) + " " + record.getMessage() + System.lineSeparator();
+        }
+      });
+      handler.setLevel(Level.ALL);
+      file = handler;
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Couldn't open the slow operation log, slow operations won't be logged", ex);
+      return;
+    }
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(QUEUE_SIZE), task -> {
+          Thread thread = new Thread(task, "FluffyTeams slow operation log");
+          thread.setDaemon(true);
+          return thread;
+        }, (task, pool) -> Metrics.increment("slowlog.dropped"));
+    writer = executor;
+    thresholdNanos = thresholdMillis * 1_000_000;
+  }
+
+  // Writes the queued entries and closes the file
+  public static synchronized void close() {
+    thresholdNanos = 0;
+    ThreadPoolExecutor executor = writer;
+    writer = null;
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    FileHandler handler = file;
+    file = null;
+    if (handler != null) {
+      handler.close();
+    }
+  }
+
+  public static boolean isEnabled() {
+    return thresholdNanos > 0;
+  }
+
+  // Logs an operation if it took longer than the threshold. kind is jdbc,
+  // redis or http, operation the SQL or the request. rows is -1 if unknown
+  public static void record(String kind, String operation, Object[] params, int rows, long nanos) {
+    long threshold = thresholdNanos;
+    if (threshold <= 0 || nanos < threshold) {
+      return;
+    }
+    Metrics.increment("slowlog.operations");
+
+    // Read on the calling thread, the writer only formats
+    String caller = caller();
+    String handler = MainThreadWatchdog.currentHandler();
+    String values = params == null ? null : describe(params);
+
+    ThreadPoolExecutor executor = writer;
+    if (executor == null) {
+      return;
+    }
+    long millis = System.currentTimeMillis();
+    executor.execute(() -> {
+      StringBuilder line = new StringBuilder();
+      line.append(nanos / 1_000_000).append(" ms ").append(kind);
+      line.append(" rows=").append(rows < 0 ? "?" : String.valueOf(rows));
+      line.append(" caller=").append(caller);
+      line.append(" handler=").append(handler == null ? "-" : handler);
+      line.append(" | ").append(truncate(operation.replaceAll("\\s+", " ").trim(), MAX_SQL_LENGTH));
+      if (values != null) {
+        line.append(" | params=").append(values);
+      }
+
+      LogRecord record = new LogRecord(Level.INFO, line.toString());
+      record.setMillis(millis);
+      FileHandler output = file;
+      if (output != null) {
+        output.publish(record);
+        output.flush();
+      }
+    });
+  }
+
+  // The TeamController method the operation was made for, the
+  // outermost one as it is what the command or listener called. Otherwise
+  // the first frame of the plugin outside the database layer and utilities
+  private static String caller() {
+    return StackWalker.getInstance().walk(frames -> {
+      String[] found = new String[2];
+      frames.forEach(frame -> {
+        String className = frame.getClassName();
+        if (className.equals(CONTROLLER)) {
+          found[0] = "TeamController." + methodName(frame.getMethodName());
+        } else if (found[1] == null && className.startsWith("fr.fluffevent.fluffyteams.")
+            && !className.startsWith("fr.fluffevent.fluffyteams.database.")
+            && !className.startsWith("fr.fluffevent.fluffyteams.utils.")) {
+          found[1] = className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+        }
+      });
+      return found[0] != null ? found[0] : found[1] != null ? found[1] : "-";
+    });
+  }
+
+  // lambda$insertMemberAsync$3 is insertMemberAsync
+  private static String methodName(String name) {
+    if (name.startsWith("lambda$")) {
+      int end = name.indexOf('$', 7);
+      return end > 7 ? name.substring(7, end) : name;
+    }
+    return name;
+  }
+
+  private static String describe(Object[] params) {
+    StringBuilder description = new StringBuilder("[");
+    for (int i = 0; i < params.length; i++) {
+      if (i > 0) {
+        description.append(", ");
+      }
+      Object value = params[i];
+      if (value instanceof String) {
+        description.append('\'').append(truncate((String) value, MAX_VALUE_LENGTH)).append('\'');
+      } else {
+        description.append(truncate(String.valueOf(value), MAX_VALUE_LENGTH));
+      }
+    }
+    return description.append(']').toString();
+  }
+
+  private static String truncate(String value, int length) {
+    return value.length() <= length ? value : value.substring(0, length) + "...";
+  }
+}
@@ -0,0 +1,67 @@
+package fr.fluffevent.fluffyteams.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared by keys hashing to the same stripe.
+ * Serializes work on the same key (e.g. a player UUID) without keeping one
+ * lock object per key around.
+ */
+public class StripedLock {
+
+  private final ReentrantLock[] stripes;
+
+  /**
+   * Creates a striped lock.
+   *
+   * @param stripes The number of stripes, rounded up to a power of two
+   */
+  public StripedLock(int stripes) {
+    int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+    this.stripes = new ReentrantLock[size];
+    for (int i = 0; i < size; i++) {
+      this.stripes[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Gets the lock guarding a key.
+   *
+   * @param key The key to lock
+   * @return The lock of the key's stripe
+   */
+  public ReentrantLock get(Object key) {
+    return stripes[indexOf(key)];
+  }
+
+  /**
+   * Gets the locks guarding several keys, without duplicates and always in
+   * the same order so that callers locking them one after the other can't
+   * deadlock each other.
+   *
+   * @param keys The keys to lock
+   * @return The locks of the keys' stripes, in stripe order
+   */
+  public List<ReentrantLock> getAll(Collection<?> keys) {
+    TreeSet<Integer> indexes = new TreeSet<>();
+    for (Object key : keys) {
+      indexes.add(indexOf(key));
+    }
+
+    List<ReentrantLock> locks = new ArrayList<>(indexes.size());
+    for (int index : indexes) {
+      locks.add(stripes[index]);
+    }
+    return locks;
+  }
+
+  private int indexOf(Object key) {
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return hash & (stripes.length - 1);
+  }
+}
@@ -0,0 +1,123 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.database.CacheSnapshot;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Unit tests for CacheSnapshot, the copy of the team cache loaded on restart
+ */
+public class CacheSnapshotTest {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private Path file;
+    private TeamCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempDirectory("fluffyteams").resolve("cache-snapshot.bin");
+
+        cache = new TeamCache();
+        Team team = new Team();
+        team.id = 7;
+        team.name = "red";
+        team.displayName = "Red";
+        team.maxSize = 4;
+        cache.putTeam(team);
+
+        Member member = new Member();
+        member.id = 3;
+        member.teamId = 7;
+        member.playerUuid = "11111111-1111-1111-1111-111111111111";
+        cache.putMember(member);
+
+        Spawn spawn = new Spawn();
+        spawn.id = 9;
+        spawn.teamId = 7;
+        spawn.server = "lobby";
+        spawn.world = "world";
+        spawn.x = 1.5;
+        spawn.y = 64;
+        spawn.z = -2.5;
+        spawn.yaw = 90;
+        cache.putSpawn(spawn);
+        cache.markReady();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        new CacheSnapshot(file, "jdbc:mysql://db/teams", "lobby").write(cache, 42);
+
+        TeamCache restored = new TeamCache();
+        CacheSnapshot.Info info = new CacheSnapshot(file, "jdbc:mysql://db/teams", "lobby").load(restored, DAY_MS);
+
+        assertNotNull(info);
+        assertEquals(42, info.changeVersion);
+        assertEquals("Red", restored.getTeam("red").displayName);
+        assertEquals(4, restored.getTeam(7).maxSize);
+        assertEquals(1, restored.getMemberCount(7));
+        assertEquals(7, restored.getMember("11111111-1111-1111-1111-111111111111").teamId);
+        assertEquals(1, restored.getSpawns(7).size());
+        assertEquals(-2.5, restored.getSpawns(7).get(0).z, 0);
+    }
+
+    @Test
+    public void testOtherServerOrDatabaseIsIgnored() throws IOException {
+        new CacheSnapshot(file, "jdbc:mysql://db/teams", "lobby").write(cache, 42);
+
+        TeamCache restored = new TeamCache();
+        assertNull("Spawns are cached per server",
+                new CacheSnapshot(file, "jdbc:mysql://db/teams", "survival").load(restored, DAY_MS));
+        assertNull(new CacheSnapshot(file, "jdbc:mysql://other/teams", "lobby").load(restored, DAY_MS));
+        assertNull("Cache should be left alone", restored.getTeam("red"));
+    }
+
+    @Test
+    public void testOldSnapshotIsIgnored() throws IOException {
+        CacheSnapshot snapshot = new CacheSnapshot(file, "jdbc:mysql://db/teams", "lobby");
+        snapshot.write(cache, 42);
+
+        assertNull(snapshot.load(new TeamCache(), -1));
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        assertNull(new CacheSnapshot(file, "jdbc:mysql://db/teams", "lobby").load(new TeamCache(), DAY_MS));
+    }
+
+    @Test
+    public void testCorruptionIsDetected() throws IOException {
+        CacheSnapshot snapshot = new CacheSnapshot(file, "jdbc:mysql://db/teams", "lobby");
+        snapshot.write(cache, 42);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 5] ^= 0x10;
+        Files.write(file, bytes);
+
+        IOException error = assertThrows(IOException.class, () -> snapshot.load(new TeamCache(), DAY_MS));
+        assertTrue(error.getMessage().contains("checksum"));
+    }
+
+    @Test
+    public void testWriteReplacesPreviousSnapshot() throws IOException {
+        CacheSnapshot snapshot = new CacheSnapshot(file, "jdbc:mysql://db/teams", "lobby");
+        snapshot.write(cache, 42);
+        cache.removeTeam(cache.getTeam("red"));
+        snapshot.write(cache, 43);
+
+        TeamCache restored = new TeamCache();
+        assertEquals(43, snapshot.load(restored, DAY_MS).changeVersion);
+        assertTrue(restored.getTeams().isEmpty());
+        assertEquals("No temporary file should be left behind", 1, Files.list(file.getParent()).count());
+    }
+}
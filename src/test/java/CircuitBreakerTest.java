@@ -0,0 +1,73 @@
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.utils.CircuitBreaker;
+
+/**
+ * Unit tests for CircuitBreaker, driven by a fake clock
+ */
+public class CircuitBreakerTest {
+
+    private long now;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        breaker = new CircuitBreaker(3, 1000, () -> now);
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        assertFalse(breaker.recordFailure());
+        assertFalse(breaker.recordFailure());
+        assertTrue("The third failure should open the breaker", breaker.recordFailure());
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse("Calls should be held back while open", breaker.allowRequest());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSingleTrialAfterOpenPeriod() {
+        openBreaker();
+
+        now = 1000;
+        assertTrue("A trial call should go through after the open period", breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse("Only one trial call should go through", breaker.allowRequest());
+
+        assertTrue("A successful trial should close the breaker", breaker.recordSuccess());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() {
+        openBreaker();
+
+        now = 1000;
+        breaker.allowRequest();
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        now = 1500;
+        assertFalse("The open period should start over", breaker.allowRequest());
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.database.LeaseLock;
+import fr.fluffevent.fluffyteams.database.LeaseLock.Lease;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+
+/**
+ * Unit tests for LeaseLock, run against an in-memory Redis stand-in whose
+ * clock is moved forward to expire leases
+ */
+public class LeaseLockTest {
+
+    private LocalRedis redis;
+    private LeaseLock locks;
+
+    @Before
+    public void setUp() {
+        redis = new LocalRedis();
+        locks = new LeaseLock(redis.connect());
+    }
+
+    @Test
+    public void testReleasedLeaseCanBeTakenAgain() {
+        Lease first = locks.acquire("player");
+        assertNotNull(first);
+        first.release();
+
+        Lease second = locks.acquire("player");
+        assertNotNull(second);
+        assertTrue(second.getToken() > first.getToken());
+        second.release();
+    }
+
+    @Test
+    public void testHeldLeaseTimesOut() {
+        long timeouts = metric("locks.timeouts");
+        Lease lease = locks.acquire("player");
+
+        try {
+            locks.acquire("player");
+            fail("The lease is held by another server");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(timeouts + 1, metric("locks.timeouts"));
+
+        assertNotNull("Other keys aren't blocked", locks.acquire("other"));
+        lease.release();
+    }
+
+    @Test
+    public void testExpiredLeaseIsCounted() {
+        long expired = metric("locks.expired");
+        Lease lease = locks.acquire("player");
+
+        redis.advance(LeaseLock.LEASE_MS + 1);
+        Lease newer = locks.acquire("player");
+        lease.release();
+
+        assertEquals(expired + 1, metric("locks.expired"));
+        newer.release();
+        assertEquals("The newer lease was still held", expired + 1, metric("locks.expired"));
+    }
+
+    @Test
+    public void testStaleHolderIsFencedOff() {
+        long fenced = metric("locks.fenced");
+        Lease stale = locks.acquire("player");
+
+        redis.advance(LeaseLock.LEASE_MS + 1);
+        Lease newer = locks.acquire("player");
+        assertTrue(newer.getToken() > stale.getToken());
+        newer.fence();
+
+        try {
+            stale.fence();
+            fail("A newer holder has fenced");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(fenced + 1, metric("locks.fenced"));
+        newer.fence();
+    }
+
+    private static long metric(String name) {
+        return Metrics.snapshot().getOrDefault(name, 0L);
+    }
+}
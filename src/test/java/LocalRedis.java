@@ -0,0 +1,521 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import fr.fluffevent.fluffyteams.database.LeaseLock;
+import fr.fluffevent.fluffyteams.database.RedisTeamRepository;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+/**
+ * In-memory stand-in for a Redis server, for tests. Implements the commands
+ * used by the plugin over maps, through both the sync and the async API.
+ * Published messages are kept so tests can deliver them, and keys with a TTL
+ * expire on a clock the tests move forward. There is no Lua here, the
+ * scripts of the plugin are run by Java versions of them.
+ */
+public class LocalRedis {
+
+    private final Map<String, Object> data = new HashMap<>();
+    private final Map<String, List<String>> published = new HashMap<>();
+    private final Map<String, Script> scripts = new HashMap<>();
+    // Scripts loaded in the server, by SHA1 digest
+    private final Map<String, String> loaded = new HashMap<>();
+    // Time at which keys with a TTL expire, moved forward by advance()
+    private final Map<String, Long> expiries = new HashMap<>();
+    private long elapsed;
+
+    public LocalRedis() {
+        script(RedisTeamRepository.class, "INSERT_TEAM", (keys, args) -> {
+            putAll(hash(keys[0]), args, 4);
+            hash(keys[1]).put(args[2], args[3]);
+            return publish(args);
+        });
+        script(RedisTeamRepository.class, "UPDATE_TEAM", (keys, args) -> {
+            putAll(hash(keys[0]), args, 2);
+            return publish(args);
+        });
+        script(RedisTeamRepository.class, "DELETE_TEAM", (keys, args) -> {
+            for (String player : existingSet(keys[3])) {
+                if (args[2].equals(existingHash(keys[0]).get(player))) {
+                    existingHash(keys[0]).remove(player);
+                }
+            }
+            for (String spawn : existingSet(keys[4])) {
+                data.remove(args[4] + spawn);
+            }
+            if (args[2].equals(existingHash(keys[1]).get(args[3]))) {
+                existingHash(keys[1]).remove(args[3]);
+            }
+            dropIfEmpty(keys[0]);
+            dropIfEmpty(keys[1]);
+            data.remove(keys[2]);
+            data.remove(keys[3]);
+            data.remove(keys[4]);
+            return publish(args);
+        });
+        script(RedisTeamRepository.class, "INSERT_MEMBER", (keys, args) -> {
+            if (hash(keys[0]).putIfAbsent(args[2], args[3]) != null) {
+                return 0L;
+            }
+            set(keys[1]).add(args[2]);
+            return publish(args);
+        });
+        script(RedisTeamRepository.class, "DELETE_MEMBER", (keys, args) -> {
+            if (args[3].equals(existingHash(keys[0]).get(args[2]))) {
+                existingHash(keys[0]).remove(args[2]);
+                dropIfEmpty(keys[0]);
+            }
+            existingSet(keys[1]).remove(args[2]);
+            dropIfEmpty(keys[1]);
+            return publish(args);
+        });
+        script(RedisTeamRepository.class, "SAVE_SPAWN", (keys, args) -> {
+            putAll(hash(keys[0]), args, 3);
+            set(keys[1]).add(args[2]);
+            return publish(args);
+        });
+        script(RedisTeamRepository.class, "DELETE_SPAWN", (keys, args) -> {
+            data.remove(keys[0]);
+            existingSet(keys[1]).remove(args[2]);
+            dropIfEmpty(keys[1]);
+            return publish(args);
+        });
+        script(LeaseLock.class, "ACQUIRE", (keys, args) -> {
+            if (data.containsKey(keys[0])) {
+                return 0L;
+            }
+            put(keys[0], args[0], Long.parseLong(args[1]));
+            return execute("incr", new Object[] { keys[1] });
+        });
+        script(LeaseLock.class, "RELEASE", (keys, args) -> {
+            if (!args[0].equals(data.get(keys[0]))) {
+                return 0L;
+            }
+            delete(keys[0]);
+            return 1L;
+        });
+        script(LeaseLock.class, "FENCE", (keys, args) -> {
+            if (Long.parseLong(args[0]) < Long.parseLong((String) data.getOrDefault(keys[0], "0"))) {
+                return false;
+            }
+            put(keys[0], args[0], Long.parseLong(args[1]));
+            return true;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public StatefulRedisConnection<String, String> connect() {
+        RedisCommands<String, String> sync = proxy(RedisCommands.class,
+                (proxy, method, args) -> execute(method.getName(), args));
+        RedisAsyncCommands<String, String> async = proxy(RedisAsyncCommands.class, (proxy, method, args) -> {
+            Completed<Object> future = new Completed<>();
+            try {
+                future.complete(execute(method.getName(), args));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        });
+
+        return proxy(StatefulRedisConnection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "sync":
+                    return sync;
+                case "async":
+                    return async;
+                case "getTimeout":
+                    return Duration.ofSeconds(1);
+                case "isOpen":
+                    return true;
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Forgets the loaded scripts, as a Redis restart or SCRIPT FLUSH does.
+     */
+    public synchronized void flushScripts() {
+        loaded.clear();
+    }
+
+    /**
+     * Moves the clock of the keys with a TTL forward.
+     *
+     * @param millis The time to skip
+     */
+    public synchronized void advance(long millis) {
+        elapsed += millis;
+    }
+
+    /**
+     * Lists the messages published on a channel so far.
+     *
+     * @param channel The channel
+     * @return The messages, oldest first
+     */
+    public synchronized List<String> published(String channel) {
+        return new ArrayList<>(published.getOrDefault(channel, List.of()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(LocalRedis.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        switch (method.getName()) {
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                return "LocalRedis " + type.getSimpleName();
+                        }
+                    }
+                    return handler.invoke(proxy, method, args);
+                });
+    }
+
+    private synchronized Object execute(String command, Object[] args) {
+        String key = args == null || args.length == 0 || !(args[0] instanceof String) ? null : (String) args[0];
+        expiries.entrySet().removeIf(expiry -> {
+            if (expiry.getValue() > now()) {
+                return false;
+            }
+            data.remove(expiry.getKey());
+            return true;
+        });
+        switch (command) {
+            case "ping":
+                return "PONG";
+            case "get":
+                return data.get(key);
+            case "set": {
+                SetArgs options = args.length > 2 ? (SetArgs) args[2] : null;
+                if (options != null && Boolean.TRUE.equals(option(options, "nx")) && data.containsKey(key)) {
+                    return null;
+                }
+                Long ttl = options == null ? null : (Long) option(options, "px");
+                put(key, (String) args[1], ttl == null ? 0 : ttl);
+                return "OK";
+            }
+            case "incr": {
+                long value = Long.parseLong((String) data.getOrDefault(key, "0")) + 1;
+                data.put(key, String.valueOf(value));
+                return value;
+            }
+            case "hset": {
+                if (args[1] instanceof Map) {
+                    long added = 0;
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) args[1]).entrySet()) {
+                        if (hash(key).put((String) entry.getKey(), (String) entry.getValue()) == null) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }
+                return hash(key).put((String) args[1], (String) args[2]) == null;
+            }
+            case "hsetnx":
+                return hash(key).putIfAbsent((String) args[1], (String) args[2]) == null;
+            case "hget":
+                return existingHash(key).get(args[1]);
+            case "hgetall":
+                return new LinkedHashMap<>(existingHash(key));
+            case "hdel": {
+                long removed = 0;
+                for (Object field : (Object[]) args[1]) {
+                    if (existingHash(key).remove(field) != null) {
+                        removed++;
+                    }
+                }
+                dropIfEmpty(key);
+                return removed;
+            }
+            case "sadd": {
+                long added = 0;
+                for (Object member : (Object[]) args[1]) {
+                    if (set(key).add((String) member)) {
+                        added++;
+                    }
+                }
+                return added;
+            }
+            case "srem": {
+                long removed = 0;
+                for (Object member : (Object[]) args[1]) {
+                    if (existingSet(key).remove(member)) {
+                        removed++;
+                    }
+                }
+                dropIfEmpty(key);
+                return removed;
+            }
+            case "zadd": {
+                Object[] scoresAndValues = args[1] instanceof Object[] ? (Object[]) args[1]
+                        : new Object[] { args[1], args[2] };
+                long added = 0;
+                for (int i = 0; i + 1 < scoresAndValues.length; i += 2) {
+                    double score = ((Number) scoresAndValues[i]).doubleValue();
+                    if (zset(key).put((String) scoresAndValues[i + 1], score) == null) {
+                        added++;
+                    }
+                }
+                return added;
+            }
+            case "zrem": {
+                long removed = 0;
+                for (Object member : (Object[]) args[1]) {
+                    if (existingZset(key).remove(member) != null) {
+                        removed++;
+                    }
+                }
+                dropIfEmpty(key);
+                return removed;
+            }
+            case "zrangebyscore": {
+                List<String> members = new ArrayList<>();
+                existingZset(key).entrySet().stream()
+                        .filter(entry -> inRange(entry.getValue(), (Range<?>) args[1]))
+                        .sorted(Map.Entry.comparingByValue())
+                        .forEach(entry -> members.add(entry.getKey()));
+                return members;
+            }
+            case "zcount":
+                return existingZset(key).values().stream().filter(score -> inRange(score, (Range<?>) args[1])).count();
+            case "zremrangebyscore": {
+                int before = existingZset(key).size();
+                existingZset(key).values().removeIf(score -> inRange(score, (Range<?>) args[1]));
+                long removed = before - existingZset(key).size();
+                dropIfEmpty(key);
+                return removed;
+            }
+            case "pexpire":
+                if (!data.containsKey(key)) {
+                    return false;
+                }
+                expiries.put(key, now() + (Long) args[1]);
+                return true;
+            case "smembers":
+                return new LinkedHashSet<>(existingSet(key));
+            case "scard":
+                return (long) existingSet(key).size();
+            case "del": {
+                long removed = 0;
+                for (Object deleted : (Object[]) args[0]) {
+                    if (delete((String) deleted)) {
+                        removed++;
+                    }
+                }
+                return removed;
+            }
+            case "publish":
+                published.computeIfAbsent(key, channel -> new ArrayList<>()).add((String) args[1]);
+                return 1L;
+            case "scriptLoad":
+                loaded.put(digest((String) args[0]), (String) args[0]);
+                return digest((String) args[0]);
+            case "evalsha": {
+                String source = loaded.get(args[0]);
+                if (source == null) {
+                    throw new RedisNoScriptException("NOSCRIPT No matching script. Please use EVAL.");
+                }
+                return execute("eval", new Object[] { source, args[1], args[2], args[3] });
+            }
+            case "eval": {
+                Script script = scripts.get(args[0]);
+                if (script == null) {
+                    throw new UnsupportedOperationException("Unknown script " + args[0]);
+                }
+                // Redis keeps the scripts run by EVAL too
+                loaded.put(digest((String) args[0]), (String) args[0]);
+                return script.run(strings(args[2]), strings(args[3]));
+            }
+            default:
+                throw new UnsupportedOperationException(command);
+        }
+    }
+
+    private static String digest(String script) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Registers the Java version of a script kept in a constant of a class
+    private void script(Class<?> owner, String constant, Script script) {
+        try {
+            Field field = owner.getDeclaredField(constant);
+            field.setAccessible(true);
+            scripts.put((String) field.get(null), script);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No script " + owner.getSimpleName() + "." + constant, e);
+        }
+    }
+
+    private long now() {
+        return System.currentTimeMillis() + elapsed;
+    }
+
+    // Sets a string, which expires after the given TTL unless it's 0
+    private void put(String key, String value, long ttlMillis) {
+        data.put(key, value);
+        if (ttlMillis > 0) {
+            expiries.put(key, now() + ttlMillis);
+        } else {
+            expiries.remove(key);
+        }
+    }
+
+    private boolean delete(String key) {
+        expiries.remove(key);
+        return data.remove(key) != null;
+    }
+
+    // SetArgs has no getters, read the options as Lettuce does when it sends
+    // them
+    private static Object option(SetArgs options, String name) {
+        try {
+            Field field = SetArgs.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(options);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No SetArgs option " + name, e);
+        }
+    }
+
+    // The write scripts of RedisTeamRepository get the channel and the change
+    // as their first arguments
+    private long publish(String[] args) {
+        return (long) execute("publish", new Object[] { args[0], args[1] });
+    }
+
+    private static void putAll(Map<String, String> hash, String[] fieldsAndValues, int from) {
+        for (int i = from; i + 1 < fieldsAndValues.length; i += 2) {
+            hash.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+    }
+
+    private static String[] strings(Object array) {
+        Object[] values = array == null ? new Object[0] : (Object[]) array;
+        return Arrays.copyOf(values, values.length, String[].class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key) {
+        return (Map<String, String>) data.computeIfAbsent(key, k -> new HashMap<String, String>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> existingHash(String key) {
+        return (Map<String, String>) data.getOrDefault(key, new HashMap<String, String>());
+    }
+
+    // Sorted sets, member to score
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> zset(String key) {
+        return (Map<String, Double>) data.computeIfAbsent(key, k -> new HashMap<String, Double>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> existingZset(String key) {
+        return (Map<String, Double>) data.getOrDefault(key, new HashMap<String, Double>());
+    }
+
+    private static boolean inRange(double score, Range<?> range) {
+        return !beyond(score, range.getLower(), 1) && !beyond(score, range.getUpper(), -1);
+    }
+
+    // Whether the score is past the boundary, below it for a lower boundary
+    // (direction 1) or above it for an upper one (-1)
+    private static boolean beyond(double score, Range.Boundary<?> boundary, int direction) {
+        if (boundary.isUnbounded()) {
+            return false;
+        }
+        int comparison = Double.compare(((Number) boundary.getValue()).doubleValue(), score) * direction;
+        return boundary.isIncluding() ? comparison > 0 : comparison >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(String key) {
+        return (Set<String>) data.computeIfAbsent(key, k -> new LinkedHashSet<String>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> existingSet(String key) {
+        return (Set<String>) data.getOrDefault(key, new LinkedHashSet<String>());
+    }
+
+    // Redis deletes hashes and sets once they are empty
+    private void dropIfEmpty(String key) {
+        Object value = data.get(key);
+        if ((value instanceof Map && ((Map<?, ?>) value).isEmpty())
+                || (value instanceof Set && ((Set<?>) value).isEmpty())) {
+            data.remove(key);
+        }
+    }
+
+    private interface Script {
+
+        Object run(String[] keys, String[] args);
+    }
+
+    private static class Completed<V> extends CompletableFuture<V> implements RedisFuture<V> {
+
+        @Override
+        public String getError() {
+            if (!isCompletedExceptionally()) {
+                return null;
+            }
+            try {
+                get();
+                return null;
+            } catch (InterruptedException | ExecutionException e) {
+                return e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+            }
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                get(timeout, unit);
+            } catch (ExecutionException e) {
+                // Completed, the error is reported by getError()
+            } catch (TimeoutException e) {
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.runnables.LuckPermsReconciliation;
+import fr.fluffevent.fluffyteams.runnables.LuckPermsReconciliation.Correction;
+
+/**
+ * Unit tests for LuckPermsReconciliation, which must bring the LuckPerms team
+ * groups in line with the team memberships both ways
+ */
+public class LuckPermsReconciliationTest {
+
+    private static final UUID MEMBER = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID OTHER = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @Test
+    public void testMatchingGroupsAreLeftAlone() {
+        List<Correction> corrections = LuckPermsReconciliation.diff(Map.of(MEMBER, "red"),
+                Map.of(MEMBER, Set.of("red")));
+
+        assertTrue(corrections.isEmpty());
+    }
+
+    @Test
+    public void testMemberGetsTheirGroupAndLosesOthers() {
+        List<Correction> corrections = LuckPermsReconciliation.diff(Map.of(MEMBER, "red"),
+                Map.of(MEMBER, Set.of("blue")));
+
+        assertEquals(1, corrections.size());
+        assertEquals("red", corrections.get(0).add);
+        assertEquals(Set.of("blue"), Set.copyOf(corrections.get(0).remove));
+    }
+
+    @Test
+    public void testMemberWithoutAnyGroupGetsTheirs() {
+        List<Correction> corrections = LuckPermsReconciliation.diff(Map.of(MEMBER, "red"), Map.of());
+
+        assertEquals(1, corrections.size());
+        assertEquals("red", corrections.get(0).add);
+        assertTrue(corrections.get(0).remove.isEmpty());
+    }
+
+    @Test
+    public void testUserWithoutMembershipLosesTeamGroups() {
+        Map<UUID, Set<String>> actual = new HashMap<>();
+        actual.put(MEMBER, Set.of("red"));
+        actual.put(OTHER, Set.of("red", "blue"));
+
+        List<Correction> corrections = LuckPermsReconciliation.diff(Map.of(MEMBER, "red"), actual);
+
+        assertEquals(1, corrections.size());
+        assertEquals(OTHER, corrections.get(0).uuid);
+        assertNull(corrections.get(0).add);
+        assertEquals(Set.of("red", "blue"), Set.copyOf(corrections.get(0).remove));
+    }
+}
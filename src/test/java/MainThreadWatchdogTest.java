@@ -0,0 +1,146 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.utils.HandlerEvent;
+import fr.fluffevent.fluffyteams.utils.MainThreadWatchdog;
+import fr.fluffevent.fluffyteams.utils.Metrics;
+
+/**
+ * Unit tests for MainThreadWatchdog, with the test thread as the main thread
+ */
+public class MainThreadWatchdogTest {
+
+    private final List<LogRecord> records = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        MainThreadWatchdog.enable(1, logger);
+    }
+
+    @After
+    public void tearDown() {
+        MainThreadWatchdog.disable();
+    }
+
+    @Test
+    public void testOverrunIsReported() throws InterruptedException {
+        long overruns = metric("watchdog.overruns");
+
+        HandlerEvent handler = MainThreadWatchdog.begin("/ft add");
+        Thread.sleep(5);
+        MainThreadWatchdog.end(handler);
+        MainThreadWatchdog.tick();
+
+        assertEquals(overruns + 1, metric("watchdog.overruns"));
+        assertEquals(1, records.size());
+        assertTrue(records.get(0).getMessage().contains("/ft add"));
+    }
+
+    @Test
+    public void testWithinBudgetIsNotReported() {
+        long overruns = metric("watchdog.overruns");
+
+        MainThreadWatchdog.end(MainThreadWatchdog.begin("WorldListener"));
+        MainThreadWatchdog.tick();
+
+        assertEquals(overruns, metric("watchdog.overruns"));
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void testNestedHandlersCountOnce() throws InterruptedException {
+        HandlerEvent outer = MainThreadWatchdog.begin("/ft add");
+        HandlerEvent inner = MainThreadWatchdog.begin("PlayerLoginListener");
+        Thread.sleep(5);
+        MainThreadWatchdog.end(inner);
+        MainThreadWatchdog.end(outer);
+        MainThreadWatchdog.tick();
+
+        String message = records.get(0).getMessage();
+        assertTrue(message.contains("/ft add"));
+        assertFalse("Time should go to the outermost handler", message.contains("PlayerLoginListener"));
+    }
+
+    @Test
+    public void testBlockingCallLoggedOncePerCallSite() {
+        long blocking = metric("watchdog.blocking.jdbc");
+
+        for (int i = 0; i < 3; i++) {
+            MainThreadWatchdog.checkBlocking("jdbc");
+        }
+
+        assertEquals(blocking + 3, metric("watchdog.blocking.jdbc"));
+        assertEquals(1, records.size());
+        assertNotNull("A stack sample should be logged", records.get(0).getThrown());
+    }
+
+    @Test
+    public void testOtherThreadsAreIgnored() throws InterruptedException {
+        long blocking = metric("watchdog.blocking.http");
+
+        Thread thread = new Thread(() -> {
+            MainThreadWatchdog.checkBlocking("http");
+            MainThreadWatchdog.end(MainThreadWatchdog.begin("async"));
+        });
+        thread.start();
+        thread.join();
+        MainThreadWatchdog.tick();
+
+        assertEquals(blocking, metric("watchdog.blocking.http"));
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void testFutureStagesKeepTheHandler() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            HandlerEvent handler = MainThreadWatchdog.begin("/ft add");
+            CompletableFuture<String> stages;
+            try {
+                Executor executor = MainThreadWatchdog.withHandler(pool);
+                stages = CompletableFuture.supplyAsync(MainThreadWatchdog::currentHandler, executor)
+                        .thenApplyAsync(first -> first + " " + MainThreadWatchdog.currentHandler(), executor);
+            } finally {
+                MainThreadWatchdog.end(handler);
+            }
+
+            assertEquals("/ft add /ft add", stages.join());
+            assertNull(CompletableFuture.supplyAsync(MainThreadWatchdog::currentHandler, pool).join());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long metric(String name) {
+        return Metrics.snapshot().getOrDefault(name, 0L);
+    }
+}
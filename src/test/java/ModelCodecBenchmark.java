@@ -0,0 +1,170 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Transient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import fr.fluffevent.fluffyteams.models.ModelCodec;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Compares ModelCodec with Gson JSON on an event-sized data set (encoding,
+ * decoding and size). Not a unit test, run it with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ModelCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelCodecBenchmark {
+
+    // Same fields as the binary encoding, without the table creation queries
+    private static final Gson gson = new GsonBuilder()
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getAnnotation(Transient.class) != null;
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return false;
+                }
+            })
+            .create();
+
+    @Param({ "20" })
+    public int teamCount;
+
+    @Param({ "25" })
+    public int membersPerTeam;
+
+    private List<Team> teams;
+    private List<Member> members;
+    private List<Spawn> spawns;
+    private byte[] binary;
+    private String[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        teams = new ArrayList<>();
+        members = new ArrayList<>();
+        spawns = new ArrayList<>();
+        for (int i = 1; i <= teamCount; i++) {
+            Team team = new Team();
+            team.id = i;
+            team.name = "team" + i;
+            team.displayName = "§aTeam " + i;
+            team.maxSize = membersPerTeam;
+            teams.add(team);
+
+            for (int j = 0; j < membersPerTeam; j++) {
+                Member member = new Member();
+                member.id = i * membersPerTeam + j;
+                member.teamId = i;
+                member.playerUuid = UUID.randomUUID().toString();
+                members.add(member);
+            }
+
+            for (int j = 0; j < 3; j++) {
+                Spawn spawn = new Spawn();
+                spawn.id = i * 3 + j;
+                spawn.teamId = i;
+                spawn.server = "lobby";
+                spawn.world = j == 0 ? "world" : "arena";
+                spawn.x = i * 16.5 + j;
+                spawn.y = 64;
+                spawn.z = -i * 8.25;
+                spawn.yaw = 90 * j;
+                spawn.pitch = 0;
+                spawns.add(spawn);
+            }
+        }
+
+        binary = encodeBinary();
+        json = encodeGson();
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelCodec.Writer writer = new ModelCodec.Writer(out);
+        for (Team team : teams) {
+            writer.write(team);
+        }
+        for (Member member : members) {
+            writer.write(member);
+        }
+        for (Spawn spawn : spawns) {
+            writer.write(spawn);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public String[] encodeGson() {
+        return new String[] { gson.toJson(teams), gson.toJson(members), gson.toJson(spawns) };
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole blackhole) throws IOException {
+        new ModelCodec.Reader(new ByteArrayInputStream(binary)).readAll(blackhole::consume, blackhole::consume,
+                blackhole::consume);
+    }
+
+    @Benchmark
+    public void decodeGson(Blackhole blackhole) {
+        blackhole.consume(gson.fromJson(json[0], new TypeToken<List<Team>>() {
+        }.getType()));
+        blackhole.consume(gson.fromJson(json[1], new TypeToken<List<Member>>() {
+        }.getType()));
+        blackhole.consume(gson.fromJson(json[2], new TypeToken<List<Spawn>>() {
+        }.getType()));
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        ModelCodecBenchmark sizes = new ModelCodecBenchmark();
+        sizes.teamCount = 20;
+        sizes.membersPerTeam = 25;
+        sizes.setUp();
+        int jsonBytes = 0;
+        for (String part : sizes.json) {
+            jsonBytes += part.getBytes(StandardCharsets.UTF_8).length;
+        }
+        System.out.println("Size: binary " + sizes.binary.length + " bytes, Gson " + jsonBytes + " bytes");
+
+        new Runner(new OptionsBuilder().include(ModelCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,215 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.Transient;
+
+import org.junit.Test;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import fr.fluffevent.fluffyteams.models.ModelCodec;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Unit tests for ModelCodec, the binary encoding of teams, members and spawns
+ */
+public class ModelCodecTest {
+
+    private final List<Team> teams = new ArrayList<>();
+    private final List<Member> members = new ArrayList<>();
+    private final List<Spawn> spawns = new ArrayList<>();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Team team = team(1, "red", "§cRed team", 5);
+        Team noDisplayName = team(2, "blue", null, 0);
+        Member member = member(3, 1, "11111111-2222-3333-4444-555555555555");
+        Member offline = member(4, 2, "not-a-uuid");
+        Spawn spawn = spawn(5, 1, "lobby", "world", -12.5, 64.0, 1e9, 90.5f, -45f);
+        Spawn temporary = spawn(-1, 2, "lobby", "world_nether", Double.NaN, Double.MAX_VALUE, -0.0, 0f, 0f);
+
+        byte[] bytes = encode(List.of(team, noDisplayName), List.of(member, offline), List.of(spawn, temporary));
+        decode(bytes);
+
+        assertEquals(2, teams.size());
+        assertTeamEquals(team, teams.get(0));
+        assertTeamEquals(noDisplayName, teams.get(1));
+        assertNull(teams.get(1).displayName);
+
+        assertEquals(2, members.size());
+        assertMemberEquals(member, members.get(0));
+        assertMemberEquals(offline, members.get(1));
+
+        assertEquals(2, spawns.size());
+        assertSpawnEquals(spawn, spawns.get(0));
+        assertSpawnEquals(temporary, spawns.get(1));
+    }
+
+    @Test
+    public void testNonCanonicalUuidIsKeptAsIs() throws IOException {
+        // Upper case UUIDs would come back lower case as two longs
+        String upper = "AAAAAAAA-BBBB-CCCC-DDDD-EEEEEEEEEEEE";
+        decode(encode(List.of(), List.of(member(1, 1, upper)), List.of()));
+
+        assertEquals(upper, members.get(0).playerUuid);
+    }
+
+    @Test
+    public void testWorldAndServerNamesAreWrittenOnce() throws IOException {
+        List<Spawn> many = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            many.add(spawn(i, i, "a-rather-long-server-name", "a-rather-long-world-name", i, 64, i, 0, 0));
+        }
+        byte[] bytes = encode(List.of(), List.of(), many);
+
+        // Tag, IDs, two references, 3 doubles and 2 floats per spawn
+        assertTrue("Names should be referenced after the first spawn, got " + bytes.length + " bytes",
+                bytes.length < 100 * (1 + 2 + 2 + 2 + 24 + 8) + 60);
+
+        decode(bytes);
+        assertEquals(100, spawns.size());
+        assertEquals("a-rather-long-world-name", spawns.get(99).world);
+        assertEquals("a-rather-long-server-name", spawns.get(99).server);
+    }
+
+    @Test
+    public void testSmallerThanGson() throws IOException {
+        List<Team> someTeams = new ArrayList<>();
+        List<Member> someMembers = new ArrayList<>();
+        List<Spawn> someSpawns = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            someTeams.add(team(i, "team" + i, "Team " + i, 10));
+            someSpawns.add(spawn(i, i, "lobby", "world", i * 10.5, 64, -i * 3.25, 180, 0));
+            for (int j = 0; j < 10; j++) {
+                someMembers.add(member(i * 10 + j, i, UUID.randomUUID().toString()));
+            }
+        }
+
+        byte[] bytes = encode(someTeams, someMembers, someSpawns);
+        // Without the table creation queries, which aren't data
+        Gson gson = new GsonBuilder()
+                .setExclusionStrategies(new ExclusionStrategy() {
+                    @Override
+                    public boolean shouldSkipField(FieldAttributes field) {
+                        return field.getAnnotation(Transient.class) != null;
+                    }
+
+                    @Override
+                    public boolean shouldSkipClass(Class<?> clazz) {
+                        return false;
+                    }
+                })
+                .create();
+        int json = gson.toJson(someTeams).length() + gson.toJson(someMembers).length()
+                + gson.toJson(someSpawns).length();
+        assertTrue("Binary " + bytes.length + " bytes, JSON " + json + " bytes", bytes.length * 3 < json);
+    }
+
+    @Test
+    public void testOtherVersionIsRejected() throws IOException {
+        byte[] bytes = encode(List.of(team(1, "red", "Red", 0)), List.of(), List.of());
+        // The version is the first byte, zigzag encoded
+        bytes[0] = (byte) ((ModelCodec.VERSION + 1) << 1);
+
+        IOException error = assertThrows(IOException.class, () -> decode(bytes));
+        assertTrue(error.getMessage().contains("version"));
+    }
+
+    @Test
+    public void testTruncatedStreamFails() throws IOException {
+        byte[] bytes = encode(List.of(team(1, "red", "Red", 0)), List.of(), List.of());
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+
+        assertThrows(EOFException.class, () -> decode(truncated));
+    }
+
+    private static byte[] encode(List<Team> teams, List<Member> members, List<Spawn> spawns) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelCodec.Writer writer = new ModelCodec.Writer(out);
+        for (Team team : teams) {
+            writer.write(team);
+        }
+        for (Member member : members) {
+            writer.write(member);
+        }
+        for (Spawn spawn : spawns) {
+            writer.write(spawn);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private void decode(byte[] bytes) throws IOException {
+        new ModelCodec.Reader(new ByteArrayInputStream(bytes)).readAll(teams::add, members::add, spawns::add);
+    }
+
+    private static void assertTeamEquals(Team expected, Team actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.displayName, actual.displayName);
+        assertEquals(expected.maxSize, actual.maxSize);
+    }
+
+    private static void assertMemberEquals(Member expected, Member actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.teamId, actual.teamId);
+        assertEquals(expected.playerUuid, actual.playerUuid);
+    }
+
+    private static void assertSpawnEquals(Spawn expected, Spawn actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.teamId, actual.teamId);
+        assertEquals(expected.server, actual.server);
+        assertEquals(expected.world, actual.world);
+        assertEquals(Double.doubleToLongBits(expected.x), Double.doubleToLongBits(actual.x));
+        assertEquals(Double.doubleToLongBits(expected.y), Double.doubleToLongBits(actual.y));
+        assertEquals(Double.doubleToLongBits(expected.z), Double.doubleToLongBits(actual.z));
+        assertEquals(Float.floatToIntBits(expected.yaw), Float.floatToIntBits(actual.yaw));
+        assertEquals(Float.floatToIntBits(expected.pitch), Float.floatToIntBits(actual.pitch));
+    }
+
+    private static Team team(long id, String name, String displayName, int maxSize) {
+        Team team = new Team();
+        team.id = id;
+        team.name = name;
+        team.displayName = displayName;
+        team.maxSize = maxSize;
+        return team;
+    }
+
+    private static Member member(long id, long teamId, String playerUuid) {
+        Member member = new Member();
+        member.id = id;
+        member.teamId = teamId;
+        member.playerUuid = playerUuid;
+        return member;
+    }
+
+    private static Spawn spawn(long id, long teamId, String server, String world, double x, double y, double z,
+            float yaw, float pitch) {
+        Spawn spawn = new Spawn();
+        spawn.id = id;
+        spawn.teamId = teamId;
+        spawn.server = server;
+        spawn.world = world;
+        spawn.x = x;
+        spawn.y = y;
+        spawn.z = z;
+        spawn.yaw = yaw;
+        spawn.pitch = pitch;
+        return spawn;
+    }
+}
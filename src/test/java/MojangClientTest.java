@@ -0,0 +1,129 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import fr.fluffevent.fluffyteams.utils.CircuitBreaker;
+import fr.fluffevent.fluffyteams.utils.MojangClient;
+import fr.fluffevent.fluffyteams.utils.RateLimiter;
+
+/**
+ * Unit tests for MojangClient, against a local stub of the Mojang API
+ */
+public class MojangClientTest {
+
+    private static final String NOTCH = "{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\"}";
+
+    private HttpServer server;
+    private URI baseUri;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // Status and body of the next responses, the last one is repeated
+    private final Deque<Object[]> responses = new ConcurrentLinkedDeque<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            Object[] response = responses.size() > 1 ? responses.poll() : responses.peek();
+            byte[] body = ((String) response[1]).getBytes(StandardCharsets.UTF_8);
+            int status = (Integer) response[0];
+            exchange.sendResponseHeaders(status, status == 204 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFetchUUID() throws IOException {
+        respond(200, NOTCH);
+
+        UUID uuid = client(new CircuitBreaker(5, 60_000), 0).fetchUUID("Notch");
+
+        assertEquals(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), uuid);
+    }
+
+    @Test
+    public void testUnknownNameIsNull() throws IOException {
+        respond(204, "");
+
+        assertNull(client(new CircuitBreaker(5, 60_000), 0).fetchUUID("NoSuchPlayer"));
+    }
+
+    @Test
+    public void testServerErrorIsRetried() throws IOException {
+        respond(503, "");
+        respond(200, NOTCH);
+
+        MojangClient client = client(new CircuitBreaker(5, 60_000), 2);
+
+        assertEquals("Notch", client.fetchUsername(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5")));
+        assertEquals("The failed call should have been retried once", 2, requests.get());
+    }
+
+    @Test
+    public void testBreakerFailsFast() {
+        respond(500, "");
+        MojangClient client = client(new CircuitBreaker(2, 60_000), 0);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.fetchUUID("Notch");
+                fail("A failing API should throw");
+            } catch (IOException expected) {
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, client.getState());
+        assertEquals("Calls should stop once the breaker is open", 2, requests.get());
+    }
+
+    @Test
+    public void testRateLimitFailsFast() throws IOException {
+        respond(200, NOTCH);
+        MojangClient client = new MojangClient(baseUri, baseUri, new RateLimiter(0.001, 1),
+                new CircuitBreaker(5, 60_000), 0, 0);
+
+        client.fetchUUID("Notch");
+        long start = System.nanoTime();
+        try {
+            client.fetchUUID("Notch");
+            fail("The second call should be rate limited");
+        } catch (IOException expected) {
+        }
+
+        assertEquals(1, requests.get());
+        assertTrue("A rate limited call shouldn't wait for a token that's too far away",
+                System.nanoTime() - start < 1_000_000_000L);
+    }
+
+    private void respond(int status, String body) {
+        responses.add(new Object[] { status, body });
+    }
+
+    private MojangClient client(CircuitBreaker breaker, int retries) {
+        return new MojangClient(baseUri, baseUri, new RateLimiter(1000, 100), breaker, retries, 0);
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.caching.PlayerNameIndex;
+
+/**
+ * Unit tests for PlayerNameIndex, the player names known to the server
+ */
+public class PlayerNameIndexTest {
+
+    private static final UUID NOTCH = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final UUID JEB = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+
+    private PlayerNameIndex index;
+
+    @Before
+    public void setUp() {
+        index = new PlayerNameIndex();
+    }
+
+    @Test
+    public void testLoadUserCache() throws IOException {
+        Path file = Files.createTempFile("usercache", ".json");
+        Files.writeString(file, "[{\"name\":\"Notch\",\"uuid\":\"" + NOTCH + "\",\"expiresOn\":\"2030-01-01 00:00:00 +0000\"},"
+                + "{\"name\":\"jeb_\",\"uuid\":\"" + JEB + "\"},"
+                + "{\"name\":\"Broken\",\"uuid\":\"not-a-uuid\"}]", StandardCharsets.UTF_8);
+
+        assertEquals("Malformed entries should be skipped", 2, index.load(file));
+        assertEquals("Names should be matched ignoring case", NOTCH, index.getUuid("notch"));
+        assertEquals("jeb_", index.getName(JEB));
+    }
+
+    @Test
+    public void testMissingUserCache() throws IOException {
+        assertEquals(0, index.load(Files.createTempDirectory("fluffyteams").resolve("usercache.json")));
+    }
+
+    @Test
+    public void testLoginWinsOverUserCache() throws IOException {
+        index.put("Notch", JEB);
+
+        Path file = Files.createTempFile("usercache", ".json");
+        Files.writeString(file, "[{\"name\":\"Notch\",\"uuid\":\"" + NOTCH + "\"}]", StandardCharsets.UTF_8);
+        index.load(file);
+
+        assertEquals("Names recorded at login should be kept", JEB, index.getUuid("Notch"));
+    }
+
+    @Test
+    public void testRename() {
+        index.put("Notch", NOTCH);
+        index.put("NotNotch", NOTCH);
+
+        assertNull("The old name should be forgotten", index.getUuid("Notch"));
+        assertEquals(NOTCH, index.getUuid("NotNotch"));
+        assertEquals("NotNotch", index.getName(NOTCH));
+    }
+
+    @Test
+    public void testNameTakenOver() {
+        index.put("Notch", NOTCH);
+        index.put("Notch", JEB);
+
+        assertEquals(JEB, index.getUuid("Notch"));
+        assertNull("The previous owner's name isn't known anymore", index.getName(NOTCH));
+    }
+}
@@ -0,0 +1,88 @@
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.database.PresenceIndex;
+
+/**
+ * Unit tests for PresenceIndex, run against an in-memory Redis stand-in with
+ * a clock moved by hand
+ */
+public class PresenceIndexTest {
+
+    private LocalRedis redis;
+    private long now = 1_000_000;
+    private PresenceIndex presence;
+
+    @Before
+    public void setUp() {
+        redis = new LocalRedis();
+        presence = new PresenceIndex(redis.connect(), () -> now);
+    }
+
+    @Test
+    public void testOnlineAndOffline() {
+        presence.online(1, "a");
+        presence.online(1, "b");
+        assertEquals(Set.of("a", "b"), presence.getOnline(1));
+        assertTrue(presence.getOnline(2).isEmpty());
+
+        presence.offline(1, "a");
+        assertEquals(Set.of("b"), presence.getOnline(1));
+
+        presence.offline(Map.of(1L, List.of("b")));
+        assertTrue(presence.getOnline(1).isEmpty());
+    }
+
+    @Test
+    public void testHeartbeatKeepsPlayersOnline() {
+        presence.online(1, "a");
+
+        now += PresenceIndex.TTL_MS - 1;
+        presence.heartbeat(Map.of(1L, List.of("a")));
+        now += PresenceIndex.HEARTBEAT_MS;
+
+        assertEquals(Set.of("a"), presence.getOnline(1));
+    }
+
+    @Test
+    public void testStalePlayersArePruned() {
+        long start = now;
+        presence.online(1, "a");
+
+        now += PresenceIndex.TTL_MS + 1;
+        assertTrue("Not seen lately", presence.getOnline(1).isEmpty());
+
+        presence.heartbeat(Map.of(1L, List.of("b")));
+        now = start;
+        assertEquals("Removed by the heartbeat", Set.of("b"), presence.getOnline(1));
+    }
+
+    @Test
+    public void testTeamWithoutHeartbeatExpires() {
+        presence.online(1, "a");
+
+        redis.advance(PresenceIndex.TTL_MS + 1);
+
+        assertTrue(presence.getOnline(1).isEmpty());
+    }
+
+    @Test
+    public void testCountOnline() {
+        presence.heartbeat(Map.of(1L, List.of("a", "b"), 2L, List.of("c")));
+        now += PresenceIndex.HEARTBEAT_MS;
+        presence.online(2, "d");
+        now += PresenceIndex.TTL_MS - PresenceIndex.HEARTBEAT_MS + 1;
+
+        Map<Long, Long> counts = presence.countOnline(List.of(1L, 2L, 3L));
+
+        assertEquals(Long.valueOf(0), counts.get(1L));
+        assertEquals(Long.valueOf(1), counts.get(2L));
+        assertEquals(Long.valueOf(0), counts.get(3L));
+    }
+}
@@ -0,0 +1,66 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.database.ChangeFeed;
+import fr.fluffevent.fluffyteams.database.ProfiledTeamRepository;
+import fr.fluffevent.fluffyteams.database.RedisTeamRepository;
+import fr.fluffevent.fluffyteams.database.TeamRepository;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Team;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Unit tests for ProfiledTeamRepository, which must behave like the store it
+ * wraps and record its calls for Java Flight Recorder
+ */
+public class ProfiledTeamRepositoryTest extends TeamRepositoryContract {
+
+    @Override
+    protected TeamRepository createRepository() {
+        return new ProfiledTeamRepository(
+                new RedisTeamRepository(new LocalRedis().connect(), new ChangeFeed(new TeamCache())), "redis");
+    }
+
+    @Test
+    public void testCallsAreRecorded() throws IOException {
+        Path file = Files.createTempFile("fluffyteams", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("fluffyteams.DatabaseCall");
+            recording.start();
+
+            Team team = new Team();
+            team.name = "red";
+            repository.insertTeam(team);
+            Member member = new Member();
+            member.teamId = team.id;
+            member.playerUuid = "player";
+            repository.insertMember(member);
+            repository.findMembers(team.id);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("fluffyteams.DatabaseCall"))
+                .collect(Collectors.toList());
+        Files.delete(file);
+
+        assertEquals(3, events.size());
+        assertEquals("insertTeam", events.get(0).getString("operation"));
+        assertEquals("fluffy_teams", events.get(0).getString("table"));
+        assertEquals("fluffy_members", events.get(2).getString("table"));
+        assertEquals(1, events.get(2).getInt("rows"));
+        assertFalse(events.get(2).getBoolean("failed"));
+    }
+}
@@ -0,0 +1,129 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.database.ChangeFeed;
+import fr.fluffevent.fluffyteams.database.RedisTeamRepository;
+import fr.fluffevent.fluffyteams.database.TeamRepository;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Unit tests for RedisTeamRepository, run against an in-memory Redis
+ * stand-in
+ */
+public class RedisTeamRepositoryTest extends TeamRepositoryContract {
+
+    private LocalRedis redis;
+    private ChangeFeed changes;
+
+    @Override
+    protected TeamRepository createRepository() {
+        redis = new LocalRedis();
+        changes = new ChangeFeed(new TeamCache());
+        return new RedisTeamRepository(redis.connect(), changes);
+    }
+
+    @Test
+    public void testWritesArePublishedToOtherServers() {
+        Team team = new Team();
+        team.name = "red";
+        team.displayName = "Reds";
+        repository.insertTeam(team);
+
+        Member member = new Member();
+        member.teamId = team.id;
+        member.playerUuid = "player";
+        repository.insertMember(member);
+
+        TeamCache otherCache = new TeamCache();
+        ChangeFeed other = new ChangeFeed(otherCache);
+        for (String message : redis.published(RedisTeamRepository.CHANGES_CHANNEL)) {
+            assertFalse("Own changes are already cached", changes.apply(message));
+            assertTrue(other.apply(message));
+        }
+
+        assertEquals("Reds", otherCache.getTeam("red").displayName);
+        assertEquals(team.id, otherCache.getMember("player").teamId);
+
+        repository.deleteTeam(team);
+        redis.published(RedisTeamRepository.CHANGES_CHANNEL).stream().skip(2).forEach(other::apply);
+        assertNull(otherCache.getTeam("red"));
+        assertNull("Members go away with their team", otherCache.getMember("player"));
+    }
+
+    @Test
+    public void testRejectedMemberIsNotPublished() {
+        Team team = new Team();
+        team.name = "red";
+        repository.insertTeam(team);
+        Team other = new Team();
+        other.name = "blue";
+        repository.insertTeam(other);
+
+        Member member = new Member();
+        member.teamId = team.id;
+        member.playerUuid = "player";
+        assertTrue(repository.insertMember(member));
+        Member duplicate = new Member();
+        duplicate.teamId = other.id;
+        duplicate.playerUuid = "player";
+        assertFalse(repository.insertMember(duplicate));
+
+        assertEquals(3, redis.published(RedisTeamRepository.CHANGES_CHANNEL).size());
+        assertEquals(0, repository.countMembers(other.id));
+    }
+
+    @Test
+    public void testScriptsAreSentAgainAfterRedisForgetsThem() {
+        Team team = new Team();
+        team.name = "red";
+        repository.insertTeam(team);
+
+        redis.flushScripts();
+        Team other = new Team();
+        other.name = "blue";
+        repository.insertTeam(other);
+        team.displayName = "Reds";
+        repository.updateTeam(team);
+
+        assertEquals(other.id, repository.findTeam("blue").id);
+        assertEquals("Reds", repository.findTeam("red").displayName);
+    }
+
+    @Test
+    public void testLoadReadsEveryTeamWithItsMembersAndSpawns() {
+        Team red = new Team();
+        red.name = "red";
+        repository.insertTeam(red);
+        Team blue = new Team();
+        blue.name = "blue";
+        repository.insertTeam(blue);
+
+        Member member = new Member();
+        member.teamId = blue.id;
+        member.playerUuid = "player";
+        repository.insertMember(member);
+
+        Spawn here = new Spawn();
+        here.teamId = red.id;
+        here.server = "lobby";
+        here.world = "world";
+        repository.saveSpawn(here);
+        Spawn there = new Spawn();
+        there.teamId = red.id;
+        there.server = "survival";
+        there.world = "world";
+        repository.saveSpawn(there);
+
+        TeamCache cache = new TeamCache();
+        ((RedisTeamRepository) repository).load("lobby", cache::putTeam, cache::putMember, cache::putSpawn);
+
+        assertEquals(2, cache.getTeams().size());
+        assertEquals(blue.id, cache.getMember("player").teamId);
+        assertEquals(1, cache.getSpawns(red.id).size());
+        assertEquals(here.id, cache.getSpawns(red.id).get(0).id);
+    }
+}
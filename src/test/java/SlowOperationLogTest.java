@@ -0,0 +1,135 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.database.TimedConnection;
+import fr.fluffevent.fluffyteams.utils.SlowOperationLog;
+
+/**
+ * Unit tests for SlowOperationLog and TimedConnection, with a fake JDBC
+ * connection whose queries take 20 ms and return 3 rows
+ */
+public class SlowOperationLogTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fluffyteams");
+    }
+
+    @After
+    public void tearDown() {
+        SlowOperationLog.close();
+    }
+
+    @Test
+    public void testSlowQueryIsLogged() throws Exception {
+        SlowOperationLog.open(10, directory, Logger.getAnonymousLogger());
+
+        Connection connection = TimedConnection.wrap(fakeConnection());
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM fluffy_members\n"
+                + "WHERE team_id = ?")) {
+            statement.setLong(1, 7);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    // Fetching counts in the duration
+                }
+            }
+        }
+
+        String line = readLog().get(0);
+        assertTrue(line, line.contains("jdbc rows=3"));
+        assertTrue(line, line.contains("SELECT * FROM fluffy_members WHERE team_id = ?"));
+        assertTrue(line, line.contains("params=[7]"));
+        assertTrue(line, line.contains("caller=-"));
+    }
+
+    @Test
+    public void testFastOperationIsNotLogged() throws Exception {
+        SlowOperationLog.open(1000, directory, Logger.getAnonymousLogger());
+
+        SlowOperationLog.record("http", "GET https://api.mojang.com/", null, -1, 5_000_000);
+        Connection connection = TimedConnection.wrap(fakeConnection());
+        connection.prepareStatement("DELETE FROM fluffy_members WHERE id = ?").executeUpdate();
+
+        assertTrue(readLog().isEmpty());
+    }
+
+    @Test
+    public void testDisabledLogLeavesConnectionsAlone() throws SQLException {
+        SlowOperationLog.open(0, directory, Logger.getAnonymousLogger());
+
+        Connection connection = fakeConnection();
+        assertSame(connection, TimedConnection.wrap(connection));
+        assertFalse(SlowOperationLog.isEnabled());
+    }
+
+    @Test
+    public void testParametersAreQuotedAndTruncated() throws IOException {
+        SlowOperationLog.open(1, directory, Logger.getAnonymousLogger());
+
+        SlowOperationLog.record("redis", "findMember fluffy_members", new Object[] { "a".repeat(150), null }, 0,
+                2_000_000);
+
+        String line = readLog().get(0);
+        assertTrue(line, line.contains("redis rows=0"));
+        assertTrue(line, line.contains("params=['" + "a".repeat(100) + "...', null]"));
+    }
+
+    // Closes the log to flush it
+    private List<String> readLog() throws IOException {
+        SlowOperationLog.close();
+        return Files.readAllLines(directory.resolve("slow-operations.0.log"), StandardCharsets.UTF_8);
+    }
+
+    private static Connection fakeConnection() {
+        return (Connection) Proxy.newProxyInstance(SlowOperationLogTest.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement")) {
+                        return fakeStatement();
+                    }
+                    return null;
+                });
+    }
+
+    private static PreparedStatement fakeStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(SlowOperationLogTest.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "executeQuery":
+                            Thread.sleep(20);
+                            return fakeResults();
+                        case "executeUpdate":
+                            return 1;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static ResultSet fakeResults() {
+        int[] remaining = { 3 };
+        return (ResultSet) Proxy.newProxyInstance(SlowOperationLogTest.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("next")) {
+                        return remaining[0]-- > 0;
+                    }
+                    return null;
+                });
+    }
+}
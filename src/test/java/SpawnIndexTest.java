@@ -0,0 +1,104 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.caching.SpawnIndex;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+
+/**
+ * Unit tests for SpawnIndex, the grid used to find the closest team spawn
+ */
+public class SpawnIndexTest {
+
+    private SpawnIndex index;
+
+    @Before
+    public void setUp() {
+        index = new SpawnIndex();
+    }
+
+    @Test
+    public void testNearestMatchesLinearScan() {
+        Random random = new Random(42);
+        List<Spawn> spawns = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            Spawn spawn = spawn(i, 1, "world", random.nextInt(20000) - 10000, random.nextInt(256),
+                    random.nextInt(20000) - 10000);
+            spawns.add(spawn);
+            index.put(spawn);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            double x = random.nextInt(30000) - 15000;
+            double y = random.nextInt(256);
+            double z = random.nextInt(30000) - 15000;
+
+            Spawn expected = null;
+            double bestDistance = Double.MAX_VALUE;
+            for (Spawn spawn : spawns) {
+                double distance = Math.pow(spawn.x - x, 2) + Math.pow(spawn.y - y, 2) + Math.pow(spawn.z - z, 2);
+                if (distance < bestDistance) {
+                    expected = spawn;
+                    bestDistance = distance;
+                }
+            }
+
+            assertEquals("Index should find the same spawn as a linear scan", expected.id,
+                    index.nearest(1, "world", x, y, z).id);
+        }
+    }
+
+    @Test
+    public void testNearestIgnoresOtherTeamsAndWorlds() {
+        index.put(spawn(1, 1, "world", 1000, 64, 1000));
+        index.put(spawn(2, 2, "world", 0, 64, 0));
+        index.put(spawn(3, 1, "nether", 0, 64, 0));
+
+        assertEquals(1, index.nearest(1, "world", 0, 64, 0).id);
+        assertNull("Team without spawn in the world should get nothing", index.nearest(2, "nether", 0, 64, 0));
+    }
+
+    @Test
+    public void testMovedSpawnIsReindexed() {
+        Spawn spawn = spawn(1, 1, "world", 0, 64, 0);
+        index.put(spawn);
+        index.put(spawn(2, 1, "world", 500, 64, 500));
+
+        // Spawns are updated in place by setSpawn
+        spawn.x = 1000;
+        spawn.z = 1000;
+        index.put(spawn);
+
+        assertEquals(2, index.nearest(1, "world", 0, 64, 0).id);
+        assertEquals(1, index.nearest(1, "world", 990, 64, 990).id);
+    }
+
+    @Test
+    public void testRemove() {
+        Spawn spawn = spawn(1, 1, "world", 0, 64, 0);
+        index.put(spawn);
+        index.put(spawn(2, 2, "world", 0, 64, 0));
+
+        index.remove(spawn);
+        assertNull("Removed spawn shouldn't be found", index.nearest(1, "world", 0, 64, 0));
+
+        index.removeTeam(2);
+        assertNull("Spawns of a removed team shouldn't be found", index.nearest(2, "world", 0, 64, 0));
+    }
+
+    private static Spawn spawn(long id, long teamId, String world, double x, double y, double z) {
+        Spawn spawn = new Spawn();
+        spawn.id = id;
+        spawn.teamId = teamId;
+        spawn.world = world;
+        spawn.x = x;
+        spawn.y = y;
+        spawn.z = z;
+        return spawn;
+    }
+}
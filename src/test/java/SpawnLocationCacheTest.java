@@ -0,0 +1,84 @@
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import fr.fluffevent.fluffyteams.caching.SpawnLocationCache;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+
+/**
+ * Unit tests for SpawnLocationCache, the resolved spawn locations
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class SpawnLocationCacheTest {
+
+    @Mock
+    private World mockWorld;
+
+    private SpawnLocationCache locations;
+    private Spawn spawn;
+
+    @Before
+    public void setUp() {
+        locations = new SpawnLocationCache();
+
+        spawn = new Spawn();
+        spawn.id = 1;
+        spawn.teamId = 1;
+        spawn.world = "testworld";
+        spawn.x = 100.0;
+        spawn.y = 64.0;
+        spawn.z = 200.0;
+    }
+
+    @Test
+    public void testWorldIsResolvedOnce() {
+        try (var bukkitMock = mockStatic(Bukkit.class)) {
+            bukkitMock.when(() -> Bukkit.getWorld("testworld")).thenReturn(mockWorld);
+
+            Location first = locations.get(spawn);
+            Location second = locations.get(spawn);
+
+            assertEquals(mockWorld, first.getWorld());
+            assertEquals(200.0, second.getZ(), 0.0);
+            assertNotSame("Each caller should get its own copy", first, second);
+            bukkitMock.verify(() -> Bukkit.getWorld("testworld"), times(1));
+        }
+    }
+
+    @Test
+    public void testUnloadedWorld() {
+        try (var bukkitMock = mockStatic(Bukkit.class)) {
+            bukkitMock.when(() -> Bukkit.getWorld("testworld")).thenReturn(null);
+
+            assertNull("Spawn in an unloaded world shouldn't resolve", locations.get(spawn));
+
+            // The world gets loaded
+            bukkitMock.when(() -> Bukkit.getWorld("testworld")).thenReturn(mockWorld);
+            assertNull("Unloaded world should be cached until invalidated", locations.get(spawn));
+
+            locations.invalidateWorld("testworld");
+            assertEquals(mockWorld, locations.get(spawn).getWorld());
+        }
+    }
+
+    @Test
+    public void testMovedSpawnIsResolvedAgain() {
+        try (var bukkitMock = mockStatic(Bukkit.class)) {
+            bukkitMock.when(() -> Bukkit.getWorld("testworld")).thenReturn(mockWorld);
+            locations.get(spawn);
+
+            spawn.x = 300.0;
+            locations.invalidate(spawn);
+
+            assertEquals(300.0, locations.get(spawn).getX(), 0.0);
+        }
+    }
+}
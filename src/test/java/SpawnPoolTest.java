@@ -0,0 +1,87 @@
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.caching.SpawnPool;
+import fr.fluffevent.fluffyteams.models.SpawnSelection;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+
+/**
+ * Unit tests for SpawnPool, the in-memory spawn points of a team
+ */
+public class SpawnPoolTest {
+
+    private SpawnPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new SpawnPool();
+        pool.put(spawn(1));
+        pool.put(spawn(2));
+        pool.put(spawn(3));
+    }
+
+    @Test
+    public void testRoundRobinUsesEverySpawn() {
+        Set<Long> picked = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            picked.add(pool.select(SpawnSelection.ROUND_ROBIN).id);
+        }
+
+        assertEquals("Three respawns should use the three spawns", 3, picked.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPicksNewSpawnFirst() {
+        pool.select(SpawnSelection.LEAST_RECENTLY_USED);
+        pool.select(SpawnSelection.LEAST_RECENTLY_USED);
+        pool.put(spawn(4));
+
+        assertEquals("A new spawn should be used first", 4, pool.select(SpawnSelection.LEAST_RECENTLY_USED).id);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedCyclesThroughSpawns() {
+        Set<Long> picked = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            picked.add(pool.select(SpawnSelection.LEAST_RECENTLY_USED).id);
+        }
+
+        assertEquals("Three respawns should use the three spawns", 3, picked.size());
+    }
+
+    @Test
+    public void testRemovedSpawnIsNeverPicked() {
+        pool.remove(spawn(2));
+
+        for (SpawnSelection selection : SpawnSelection.values()) {
+            for (int i = 0; i < 10; i++) {
+                assertNotEquals("Removed spawn shouldn't be picked", 2, pool.select(selection).id);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyPool() {
+        SpawnPool empty = new SpawnPool();
+
+        assertNull("Empty pool should have no spawn", empty.select(SpawnSelection.RANDOM));
+    }
+
+    @Test
+    public void testSelectionFromConfig() {
+        assertEquals(SpawnSelection.LEAST_RECENTLY_USED, SpawnSelection.fromConfig("least-recently-used"));
+        assertEquals(SpawnSelection.ROUND_ROBIN, SpawnSelection.fromConfig(" Round-Robin "));
+    }
+
+    private static Spawn spawn(long id) {
+        Spawn spawn = new Spawn();
+        spawn.id = id;
+        spawn.teamId = 1;
+        return spawn;
+    }
+}
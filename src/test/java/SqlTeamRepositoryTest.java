@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+
+import fr.fluffevent.fluffyteams.Config;
+import fr.fluffevent.fluffyteams.caching.TeamCache;
+import fr.fluffevent.fluffyteams.database.ChangeFeed;
+import fr.fluffevent.fluffyteams.database.SqlTeamRepository;
+import fr.fluffevent.fluffyteams.database.SqliteDatabase;
+import fr.fluffevent.fluffyteams.database.TeamRepository;
+import fr.fluffevent.fluffyteams.models.database.Change;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Unit tests for SqlTeamRepository, run against a SQLite database in a
+ * temporary file with the change feed enabled
+ */
+public class SqlTeamRepositoryTest extends TeamRepositoryContract {
+
+    private final String previousUri = Config.databaseUri;
+    private Path file;
+    private SqliteDatabase database;
+
+    @Override
+    protected TeamRepository createRepository() {
+        try {
+            file = Files.createTempFile("fluffyteams", ".db");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Config.databaseUri = "jdbc:sqlite:" + file;
+        database = new SqliteDatabase();
+        database.setJdbcUrl(SqliteDatabase.withPragmas(Config.databaseUri));
+
+        ChangeFeed changes = new ChangeFeed(new TeamCache());
+        try (Connection connection = database.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.execute(new Team().sqliteCreationQuery);
+            statement.execute(new Member().sqliteCreationQuery);
+            statement.execute(new Spawn().sqliteCreationQuery);
+            statement.execute(new Change().sqliteCreationQuery);
+            // Added by DatabaseManager.migrate()
+            statement.execute("create unique index `fluffy_members_player_uuid` on `fluffy_members` (`player_uuid`)");
+            changes.start(database);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return new SqlTeamRepository(database, changes);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        database.shutdown();
+        Config.databaseUri = previousUri;
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + "-wal"));
+        Files.deleteIfExists(Path.of(file + "-shm"));
+    }
+}
@@ -3,8 +3,13 @@ import static org.mockito.Mockito.*;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -13,20 +18,32 @@ import org.bukkit.Server;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import com.dieselpoint.norm.Database;
+import com.dieselpoint.norm.DbException;
 import com.dieselpoint.norm.Query;
 
+import fr.fluffevent.fluffyteams.Config;
+import fr.fluffevent.fluffyteams.FluffyTeams;
+import fr.fluffevent.fluffyteams.caching.TeamCache;
 import fr.fluffevent.fluffyteams.controllers.TeamController;
+import fr.fluffevent.fluffyteams.database.ChangeFeed;
 import fr.fluffevent.fluffyteams.database.DatabaseManager;
+import fr.fluffevent.fluffyteams.database.RedisManager;
+import fr.fluffevent.fluffyteams.database.RedisTeamRepository;
+import fr.fluffevent.fluffyteams.database.SqlTeamRepository;
+import fr.fluffevent.fluffyteams.models.MembershipResult;
 import fr.fluffevent.fluffyteams.models.database.Member;
 import fr.fluffevent.fluffyteams.models.database.Spawn;
 import fr.fluffevent.fluffyteams.models.database.Team;
+import io.lettuce.core.api.StatefulRedisConnection;
 
 /**
  * Unit tests for TeamController, using simplified database mocking
@@ -86,10 +103,10 @@ public class TeamControllerTest {
         // Create controller with our mocked components
         teamController = new TeamController();
 
-        // Replace the database in controller via reflection
-        Field dbField = TeamController.class.getDeclaredField("db");
-        dbField.setAccessible(true);
-        dbField.set(teamController, mockDb);
+        // Replace the store in controller via reflection, backed by the mocked database
+        Field storeField = TeamController.class.getDeclaredField("store");
+        storeField.setAccessible(true);
+        storeField.set(teamController, new SqlTeamRepository(mockDb, new ChangeFeed(new TeamCache())));
     }
 
     @Test
@@ -183,6 +200,116 @@ public class TeamControllerTest {
         }
     }
 
+    @Test
+    public void testAddMemberAlreadyInTeam() {
+        // Setup test data
+        Team team = new Team();
+        team.id = 1;
+        team.name = "TestTeam";
+
+        List<Team> teamList = new ArrayList<>();
+        teamList.add(team);
+
+        Member existingMember = new Member();
+        existingMember.teamId = 2;
+        existingMember.playerUuid = playerUUID.toString();
+
+        List<Member> memberList = new ArrayList<>();
+        memberList.add(existingMember);
+
+        // Setup mock behavior
+        when(mockQuery.results(Team.class)).thenReturn(teamList);
+        when(mockQuery.results(Member.class)).thenReturn(memberList);
+        when(mockPluginManager.isPluginEnabled("LuckPerms")).thenReturn(true);
+
+        // Mock the static methods
+        try (var bukkitMock = mockStatic(Bukkit.class);
+                var dbManagerMock = mockStatic(DatabaseManager.class)) {
+
+            // Setup the static mocks
+            bukkitMock.when(Bukkit::getServer).thenReturn(mockServer);
+            when(mockServer.getPluginManager()).thenReturn(mockPluginManager);
+            dbManagerMock.when(DatabaseManager::getDatabase).thenReturn(mockDb);
+
+            // Execute
+            MembershipResult result = teamController.addMember("TestTeam", mockPlayer);
+
+            // Verify the conflict is reported and nothing was written
+            assertEquals("Player should already be in a team", MembershipResult.ALREADY_IN_TEAM, result);
+            verify(mockDb, never()).insert(any());
+            verify(mockServer, never()).dispatchCommand(any(), anyString());
+        }
+    }
+
+    @Test
+    public void testAddMemberConstraintViolation() {
+        // Setup test data
+        Team team = new Team();
+        team.id = 1;
+        team.name = "TestTeam";
+
+        List<Team> teamList = new ArrayList<>();
+        teamList.add(team);
+
+        // Setup mock behavior, another server inserted the player in the meantime
+        when(mockQuery.results(Team.class)).thenReturn(teamList);
+        when(mockQuery.results(Member.class)).thenReturn(new ArrayList<>());
+        when(mockDb.insert(any())).thenThrow(new DbException("Duplicate entry"));
+        when(mockPluginManager.isPluginEnabled("LuckPerms")).thenReturn(true);
+
+        // Mock the static methods
+        try (var bukkitMock = mockStatic(Bukkit.class);
+                var dbManagerMock = mockStatic(DatabaseManager.class)) {
+
+            // Setup the static mocks
+            bukkitMock.when(Bukkit::getServer).thenReturn(mockServer);
+            when(mockServer.getPluginManager()).thenReturn(mockPluginManager);
+            dbManagerMock.when(DatabaseManager::getDatabase).thenReturn(mockDb);
+            dbManagerMock.when(() -> DatabaseManager.isConstraintViolation(any())).thenReturn(true);
+
+            // Execute
+            MembershipResult result = teamController.addMember("TestTeam", mockPlayer);
+
+            // Verify the conflict is reported and LuckPerms wasn't touched
+            assertEquals("Player should already be in a team", MembershipResult.ALREADY_IN_TEAM, result);
+            verify(mockServer, never()).dispatchCommand(any(), anyString());
+        }
+    }
+
+    @Test
+    public void testAddMembers() {
+        // Setup test data
+        Team team = new Team();
+        team.id = 1;
+        team.name = "TestTeam";
+
+        String otherUUID = "22222222-2222-2222-2222-222222222222";
+        Map<String, Team> assignments = new LinkedHashMap<>();
+        assignments.put(playerUUID.toString(), team);
+        assignments.put(otherUUID, team);
+
+        // Setup mock behavior
+        when(mockQuery.results(Member.class)).thenReturn(new ArrayList<>());
+
+        // Mock the static methods
+        try (var bukkitMock = mockStatic(Bukkit.class);
+                var dbManagerMock = mockStatic(DatabaseManager.class)) {
+
+            // Setup the static mocks
+            bukkitMock.when(Bukkit::getServer).thenReturn(mockServer);
+            when(mockServer.getPluginManager()).thenReturn(mockPluginManager);
+            dbManagerMock.when(DatabaseManager::getDatabase).thenReturn(mockDb);
+
+            // Execute
+            Map<String, MembershipResult> results = teamController.addMembers(assignments);
+
+            // Verify both members were written
+            assertEquals(MembershipResult.ADDED, results.get(playerUUID.toString()));
+            assertEquals(MembershipResult.ADDED, results.get(otherUUID));
+            verify(mockDb, times(2)).insert(argThat(member -> ((Member) member).teamId == 1));
+        }
+    }
+
     @Test
     public void testSetSpawn() {
         // Setup test data
@@ -223,4 +350,54 @@ public class TeamControllerTest {
             }));
         }
     }
+
+    @Test
+    public void testRedisStorageBeforeReady() {
+        String storage = Config.storage;
+        int writeQueueSize = Config.writeQueueSize;
+        Config.storage = "redis";
+        Config.writeQueueSize = 0;
+
+        FluffyTeams plugin = mock(FluffyTeams.class);
+        BukkitScheduler scheduler = mock(BukkitScheduler.class);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("FluffyTeams"));
+        LocalRedis redis = new LocalRedis();
+        AtomicReference<StatefulRedisConnection<String, String>> connection = new AtomicReference<>();
+
+        try (var bukkitMock = mockStatic(Bukkit.class);
+                var pluginMock = mockStatic(FluffyTeams.class);
+                var redisMock = mockStatic(RedisManager.class)) {
+
+            // Setup the static mocks, Redis is connected by the async task
+            bukkitMock.when(Bukkit::getScheduler).thenReturn(scheduler);
+            pluginMock.when(FluffyTeams::getInstance).thenReturn(plugin);
+            redisMock.when(RedisManager::connect).thenAnswer(invocation -> {
+                connection.set(redis.connect());
+                return true;
+            });
+            redisMock.when(RedisManager::getConnection).thenAnswer(invocation -> connection.get());
+
+            // Execute, the controller is created as the listeners and commands
+            // are, before the connection is made
+            CompletableFuture<Void> ready = DatabaseManager.connect();
+            TeamController controller = new TeamController();
+            assertFalse("Redis isn't connected yet", ready.isDone());
+
+            ArgumentCaptor<Runnable> connect = ArgumentCaptor.forClass(Runnable.class);
+            verify(scheduler).runTaskAsynchronously(eq(plugin), connect.capture());
+            connect.getValue().run();
+            ready.join();
+
+            controller.create("red", "Reds");
+
+            // Verify
+            Team team = new RedisTeamRepository(redis.connect(), new ChangeFeed(new TeamCache())).findTeam("red");
+            assertNotNull("The team should be written to Redis", team);
+            assertEquals("Reds", team.displayName);
+        } finally {
+            Config.storage = storage;
+            Config.writeQueueSize = writeQueueSize;
+            DatabaseManager.getCache().clear();
+        }
+    }
 }
@@ -0,0 +1,219 @@
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.database.TeamRepository;
+import fr.fluffevent.fluffyteams.models.database.Member;
+import fr.fluffevent.fluffyteams.models.database.Spawn;
+import fr.fluffevent.fluffyteams.models.database.Team;
+
+/**
+ * Conformance tests shared by every TeamRepository implementation, each
+ * implementation's test extends it and provides an empty store
+ */
+public abstract class TeamRepositoryContract {
+
+    protected TeamRepository repository;
+
+    /**
+     * Creates a repository over an empty store.
+     *
+     * @return The repository under test
+     */
+    protected abstract TeamRepository createRepository();
+
+    @Before
+    public void setUpRepository() {
+        repository = createRepository();
+    }
+
+    @Test
+    public void testInsertedTeamsAreFoundByNameAndId() {
+        Team red = insertTeam("red");
+        Team blue = insertTeam("blue");
+
+        assertTrue("Insert should assign an ID", red.id > 0);
+        assertTrue("IDs should be assigned in order", blue.id > red.id);
+
+        Team byName = repository.findTeam("blue");
+        assertNotNull(byName);
+        assertEquals(blue.id, byName.id);
+        assertEquals("Team blue", byName.displayName);
+
+        Team byId = repository.findTeam(red.id);
+        assertNotNull(byId);
+        assertEquals("red", byId.name);
+
+        List<Team> teams = repository.findTeams();
+        assertEquals(2, teams.size());
+        assertEquals("Teams should be listed by ID", "red", teams.get(0).name);
+        assertEquals("blue", teams.get(1).name);
+    }
+
+    @Test
+    public void testMissingRecordsAreNull() {
+        assertNull(repository.findTeam("missing"));
+        assertNull(repository.findTeam(42));
+        assertNull(repository.findMember("missing"));
+        assertTrue(repository.findTeams().isEmpty());
+        assertTrue(repository.findMembers(42).isEmpty());
+        assertEquals(0, repository.countMembers(42));
+    }
+
+    @Test
+    public void testUpdateTeam() {
+        Team team = insertTeam("red");
+        team.displayName = "Reds";
+        team.maxSize = 5;
+        repository.updateTeam(team);
+
+        Team updated = repository.findTeam("red");
+        assertEquals("Reds", updated.displayName);
+        assertEquals(5, updated.maxSize);
+        assertEquals("Update shouldn't add a team", 1, repository.findTeams().size());
+    }
+
+    @Test
+    public void testPlayerIsInOneTeamAtMost() {
+        Team red = insertTeam("red");
+        Team blue = insertTeam("blue");
+
+        assertTrue(repository.insertMember(member(red, "player")));
+        assertFalse("Player is already in a team", repository.insertMember(member(blue, "player")));
+
+        assertEquals(red.id, repository.findMember("player").teamId);
+        assertEquals(1, repository.countMembers(red.id));
+        assertEquals("Rejected insert shouldn't write anything", 0, repository.countMembers(blue.id));
+        assertTrue(repository.findMembers(blue.id).isEmpty());
+    }
+
+    @Test
+    public void testRemovedPlayerCanJoinAnotherTeam() {
+        Team red = insertTeam("red");
+        Team blue = insertTeam("blue");
+        repository.insertMember(member(red, "a"));
+        repository.insertMember(member(red, "b"));
+        assertEquals(2, repository.findMembers(red.id).size());
+
+        repository.deleteMember(repository.findMember("a"));
+
+        assertNull(repository.findMember("a"));
+        assertEquals(1, repository.countMembers(red.id));
+        assertEquals("b", repository.findMembers(red.id).get(0).playerUuid);
+        assertTrue(repository.insertMember(member(blue, "a")));
+        assertEquals(blue.id, repository.findMember("a").teamId);
+    }
+
+    @Test
+    public void testSpawnsAreListedPerServer() {
+        Team team = insertTeam("red");
+        Spawn here = spawn(team, "lobby", 1);
+        Spawn there = spawn(team, "survival", 2);
+        repository.saveSpawn(here);
+        repository.saveSpawn(there);
+
+        assertTrue("Insert should assign an ID", here.id > 0);
+        assertNotEquals(here.id, there.id);
+
+        List<Spawn> spawns = repository.findSpawns(team.id, "lobby");
+        assertEquals(1, spawns.size());
+        Spawn found = spawns.get(0);
+        assertEquals(here.id, found.id);
+        assertEquals("world", found.world);
+        assertEquals(1.0, found.x, 0);
+        assertEquals(64.0, found.y, 0);
+        assertEquals(90.0f, found.yaw, 0);
+    }
+
+    @Test
+    public void testSaveSpawnUpdatesExistingSpawn() {
+        Team team = insertTeam("red");
+        Spawn spawn = spawn(team, "lobby", 1);
+        repository.saveSpawn(spawn);
+        long id = spawn.id;
+
+        spawn.x = 10;
+        repository.saveSpawn(spawn);
+
+        List<Spawn> spawns = repository.findSpawns(team.id, "lobby");
+        assertEquals("Update shouldn't add a spawn", 1, spawns.size());
+        assertEquals(id, spawns.get(0).id);
+        assertEquals(10.0, spawns.get(0).x, 0);
+
+        repository.deleteSpawn(spawn);
+        assertTrue(repository.findSpawns(team.id, "lobby").isEmpty());
+    }
+
+    @Test
+    public void testDeleteTeamDeletesMembersAndSpawns() {
+        Team red = insertTeam("red");
+        Team blue = insertTeam("blue");
+        repository.insertMember(member(red, "a"));
+        repository.insertMember(member(blue, "b"));
+        repository.saveSpawn(spawn(red, "lobby", 1));
+        repository.saveSpawn(spawn(red, "survival", 2));
+        repository.saveSpawn(spawn(blue, "lobby", 3));
+
+        repository.deleteTeam(red);
+
+        assertNull(repository.findTeam("red"));
+        assertNull(repository.findTeam(red.id));
+        assertNull(repository.findMember("a"));
+        assertEquals(0, repository.countMembers(red.id));
+        assertTrue(repository.findSpawns(red.id, "lobby").isEmpty());
+        assertTrue("Spawns on other servers should be deleted too",
+                repository.findSpawns(red.id, "survival").isEmpty());
+
+        assertEquals("Other teams should be untouched", blue.id, repository.findMember("b").teamId);
+        assertEquals(1, repository.findSpawns(blue.id, "lobby").size());
+
+        Team recreated = insertTeam("red");
+        assertNotEquals("IDs shouldn't be reused", red.id, recreated.id);
+        assertTrue("Player of the deleted team should be free to join",
+                repository.insertMember(member(recreated, "a")));
+    }
+
+    @Test
+    public void testTransactionAndPrimaryReads() {
+        Team team = insertTeam("red");
+
+        repository.inTransaction(() -> {
+            repository.insertMember(member(team, "a"));
+            repository.insertMember(member(team, "b"));
+        });
+
+        assertEquals(Integer.valueOf(2), repository.onPrimary(() -> repository.countMembers(team.id)));
+        repository.ping();
+    }
+
+    private Team insertTeam(String name) {
+        Team team = new Team();
+        team.name = name;
+        team.displayName = "Team " + name;
+        repository.insertTeam(team);
+        return team;
+    }
+
+    private static Member member(Team team, String playerUuid) {
+        Member member = new Member();
+        member.teamId = team.id;
+        member.playerUuid = playerUuid;
+        return member;
+    }
+
+    private static Spawn spawn(Team team, String server, double x) {
+        Spawn spawn = new Spawn();
+        spawn.teamId = team.id;
+        spawn.server = server;
+        spawn.world = "world";
+        spawn.x = x;
+        spawn.y = 64;
+        spawn.z = 0;
+        spawn.yaw = 90;
+        spawn.pitch = 0;
+        return spawn;
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.caching.TeamSizeIndex;
+
+/**
+ * Unit tests for TeamSizeIndex, the size-ordered team index used by
+ * auto-assignment
+ */
+public class TeamSizeIndexTest {
+
+    private TeamSizeIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TeamSizeIndex();
+        index.putTeam(1, 0);
+        index.putTeam(2, 0);
+        index.putTeam(3, 0);
+    }
+
+    @Test
+    public void testReserveSmallest() {
+        index.adjust(1, 3);
+        index.adjust(2, 1);
+        index.adjust(3, 2);
+
+        assertEquals("Smallest team should be picked", Long.valueOf(2), index.reserveSmallest());
+    }
+
+    @Test
+    public void testReservationsSpreadConcurrentJoins() {
+        // Three joins before any insert completes should land in three teams
+        Long first = index.reserveSmallest();
+        Long second = index.reserveSmallest();
+        Long third = index.reserveSmallest();
+
+        assertNotEquals(first, second);
+        assertNotEquals(second, third);
+        assertNotEquals(first, third);
+    }
+
+    @Test
+    public void testReleaseAfterInsert() {
+        Long teamId = index.reserveSmallest();
+        assertEquals(Long.valueOf(1), teamId);
+
+        // The member is now counted, the reservation goes away
+        index.adjust(teamId, 1);
+        index.release(teamId);
+
+        assertEquals("Team 1 now has a member, team 2 should be next", Long.valueOf(2), index.reserveSmallest());
+    }
+
+    @Test
+    public void testFullTeamsAreSkipped() {
+        index.putTeam(1, 1);
+        index.adjust(1, 1);
+        index.adjust(2, 5);
+        index.adjust(3, 5);
+
+        assertEquals("Full team should be skipped", Long.valueOf(2), index.reserveSmallest());
+
+        index.removeTeam(2);
+        index.removeTeam(3);
+
+        assertNull("Every team is full", index.reserveSmallest());
+
+        // A member leaving frees a slot
+        index.adjust(1, -1);
+        assertEquals(Long.valueOf(1), index.reserveSmallest());
+    }
+}
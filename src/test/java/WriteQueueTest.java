@@ -0,0 +1,82 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.fluffevent.fluffyteams.database.WriteQueue;
+import fr.fluffevent.fluffyteams.models.PendingWrite;
+import fr.fluffevent.fluffyteams.models.database.Member;
+
+/**
+ * Unit tests for WriteQueue, the writes kept on disk during a database outage
+ */
+public class WriteQueueTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempDirectory("fluffyteams").resolve("pending-writes.log");
+    }
+
+    @Test
+    public void testWritesSurviveRestartInOrder() throws IOException {
+        WriteQueue queue = new WriteQueue(file, 10);
+        queue.offer(PendingWrite.addMember(member("a")));
+        queue.offer(PendingWrite.removeMember(member("b")));
+
+        WriteQueue restarted = new WriteQueue(file, 10);
+        assertEquals(2, restarted.load());
+
+        PendingWrite first = restarted.peek();
+        assertEquals(PendingWrite.Type.ADD_MEMBER, first.type);
+        assertEquals("a", first.playerUuid);
+        assertTrue("Loaded writes should be marked as restored", first.restored);
+
+        restarted.remove();
+        assertEquals(PendingWrite.Type.REMOVE_MEMBER, restarted.peek().type);
+    }
+
+    @Test
+    public void testReplayedWritesAreRemovedFromDisk() throws IOException {
+        WriteQueue queue = new WriteQueue(file, 10);
+        queue.offer(PendingWrite.addMember(member("a")));
+        queue.remove();
+
+        assertTrue(queue.isEmpty());
+        assertEquals("Nothing should be left to replay", 0, new WriteQueue(file, 10).load());
+    }
+
+    @Test
+    public void testBatchIsRejectedWhenFull() {
+        WriteQueue queue = new WriteQueue(file, 2);
+        queue.offer(PendingWrite.addMember(member("a")));
+
+        assertFalse("A batch that doesn't fit should be rejected",
+                queue.offerAll(List.of(PendingWrite.addMember(member("b")), PendingWrite.addMember(member("c")))));
+        assertEquals("A rejected batch shouldn't be partially queued", 1, queue.size());
+    }
+
+    @Test
+    public void testTruncatedLineIsSkipped() throws IOException {
+        WriteQueue queue = new WriteQueue(file, 10);
+        queue.offer(PendingWrite.addMember(member("a")));
+        Files.writeString(file, "{\"type\":\"ADD_MEM", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        assertEquals(1, new WriteQueue(file, 10).load());
+    }
+
+    private static Member member(String uuid) {
+        Member member = new Member();
+        member.teamId = 1;
+        member.playerUuid = uuid;
+        return member;
+    }
+}